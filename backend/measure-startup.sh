@@ -0,0 +1,55 @@
+#!/usr/bin/env bash
+# Measure startup and first-request latency of the backend, plain vs fast start.
+#
+#   ./gradlew bootJar                            # plain jar in build/libs
+#   ./gradlew fastStartArchive -PfastStart       # AOT + AppCDS in build/fast-start
+#   ./measure-startup.sh plain 5
+#   ./measure-startup.sh fast 5
+#
+# For each run it prints the "Started Application in" time Spring logs and the
+# wall time from launching the JVM until GET /api/properties first answers 200
+# (startup plus the first request). Needs the database to be reachable.
+set -euo pipefail
+
+MODE=${1:-plain}
+RUNS=${2:-3}
+PORT=${PORT:-8080}
+URL="http://localhost:${PORT}/api/properties"
+
+case "$MODE" in
+    plain)
+        DIR=build/libs
+        JAR=$(cd "$DIR" && ls *.jar | grep -v -- '-plain.jar' | head -n 1)
+        CMD=(java -jar "$JAR")
+        ;;
+    fast)
+        DIR=build/fast-start
+        CMD=(java -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true -jar dreamstay.jar)
+        ;;
+    *)
+        echo "usage: $0 plain|fast [runs]" >&2
+        exit 1
+        ;;
+esac
+
+now_ms() { date +%s%3N; }
+
+for run in $(seq 1 "$RUNS"); do
+    log=$(mktemp)
+    start=$(now_ms)
+    (cd "$DIR" && exec "${CMD[@]}" --server.port="$PORT") >"$log" 2>&1 &
+    pid=$!
+    until curl -fs -o /dev/null "$URL"; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "run $run: backend exited, see $log" >&2
+            exit 1
+        fi
+        sleep 0.05
+    done
+    first_request=$(( $(now_ms) - start ))
+    started=$(grep -o 'Started Application in [0-9.]* seconds' "$log" | grep -o '[0-9.]*' | head -n 1)
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    rm -f "$log"
+    echo "$MODE run $run: started in ${started}s, first request answered after ${first_request} ms"
+done
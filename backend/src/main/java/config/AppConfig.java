@@ -1,19 +1,51 @@
 package config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
 
 import repositories.UserRepository;
+import services.AccessTokenCodec;
 import services.AuthService;
+import services.BlockChangeChannel;
+import services.BlockIndex;
+import services.ConversationSequencer;
+import services.EmailOutbox;
+import services.EmailTransport;
 import services.EmailVerificationService;
 import services.FileUploadService;
 import services.IDUploadService;
+import services.InMemorySessionStore;
+import services.InMemoryVerificationCodeStore;
+import services.InboxNotifier;
+import services.JdbcSessionStore;
+import services.JdbcVerificationCodeStore;
+import services.LeaderboardService;
+import services.LocalSmtpServer;
+import services.LoggingEmailTransport;
+import services.LoginThrottle;
 import services.MailService;
+import services.MessageArchive;
+import services.MessageArchiver;
+import services.MessageIngestionPipeline;
 import services.MessageRepository;
+import services.PasswordHasher;
 import services.PropertyManager;
+import services.RatingBackfillJob;
 import services.ReportService;
 import services.ReviewService;
 import services.SecurityService;
+import services.SessionStore;
+import services.SmtpEmailTransport;
+import services.UserCache;
+import services.VerificationCodeStore;
 import services.VerificationService;
 import repositories.PropertyRepository;
 
@@ -21,14 +53,63 @@ import repositories.PropertyRepository;
 public class AppConfig {
 
     @Bean
-    public SecurityService securityService() {
-        return new SecurityService();
+    public SecurityService securityService(SessionStore sessionStore, PasswordHasher passwordHasher,
+            @Value("${dreamstay.tokens.signing-keys:}") String signingKeys,
+            @Value("${dreamstay.tokens.active-key-id:1}") int activeKeyId,
+            @Value("${dreamstay.tokens.access-ttl-minutes:15}") long accessTtlMinutes) {
+        AccessTokenCodec codec = new AccessTokenCodec();
+        codec.configure(signingKeys, activeKeyId);
+        return new SecurityService(sessionStore, passwordHasher, codec, accessTtlMinutes * 60_000L);
+    }
+
+    @Bean
+    public LoginThrottle loginThrottle(@Value("${dreamstay.login-throttle.enabled:true}") boolean enabled,
+            @Value("${dreamstay.login-throttle.window-ms:900000}") long windowMillis,
+            @Value("${dreamstay.login-throttle.buckets:5}") int buckets,
+            @Value("${dreamstay.login-throttle.sketch-width:4096}") int sketchWidth,
+            @Value("${dreamstay.login-throttle.max-failures-per-email:10}") int maxFailuresPerEmail,
+            @Value("${dreamstay.login-throttle.max-failures-per-ip:100}") int maxFailuresPerIp) {
+        return new LoginThrottle(enabled, windowMillis, buckets, sketchWidth, maxFailuresPerEmail, maxFailuresPerIp);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public PasswordHasher passwordHasher(
+            @Value("${dreamstay.passwords.pbkdf2-iterations:600000}") int iterations,
+            @Value("${dreamstay.passwords.hash-threads:0}") int threads,
+            @Value("${dreamstay.passwords.hash-queue-capacity:64}") int queueCapacity,
+            @Value("${dreamstay.passwords.hash-timeout-ms:5000}") long timeoutMillis) {
+        return new PasswordHasher(iterations, threads, queueCapacity, timeoutMillis);
+    }
+
+    // "memory": sessions local to this node; "jdbc": shared table with a near-cache per node
+    @Bean
+    public SessionStore sessionStore(JdbcTemplate jdbcTemplate,
+            @Value("${dreamstay.sessions.store:memory}") String store,
+            @Value("${dreamstay.sessions.expiry-tick-ms:1000}") long expiryTickMillis,
+            @Value("${dreamstay.sessions.near-cache-ttl-ms:5000}") long nearCacheTtlMillis,
+            @Value("${dreamstay.sessions.near-cache-max-entries:10000}") int nearCacheMaxEntries) {
+        if ("jdbc".equalsIgnoreCase(store)) {
+            return new JdbcSessionStore(jdbcTemplate, nearCacheTtlMillis, nearCacheMaxEntries);
+        }
+        return new InMemorySessionStore(expiryTickMillis);
+    }
+
+    @Bean
+    public UserCache userCache(@Value("${dreamstay.users.cache.max-entries:10000}") int maxEntries,
+            @Value("${dreamstay.users.cache.ttl-ms:60000}") long ttlMillis) {
+        return new UserCache(maxEntries, ttlMillis);
     }
 
     @Bean
-    public AuthService authService(UserRepository userRepository, SecurityService securityService) {
+    public AuthService authService(UserRepository userRepository, SecurityService securityService,
+            UserCache userCache) {
         // AuthService now uses the database via UserRepository instead of JSON files
-        return new AuthService(userRepository, securityService);
+        return new AuthService(userRepository, securityService, userCache);
+    }
+
+    @Bean
+    public ApplicationRunner defaultUserSeeder(AuthService authService) {
+        return args -> authService.seedDefaultUsers();
     }
 
     @Bean
@@ -36,21 +117,100 @@ public class AppConfig {
         return new PropertyManager(propertyRepository, messageManager);
     }
 
+    @Bean(initMethod = "load")
+    public MessageArchive messageArchive(
+            @Value("${dreamstay.messages.archive.dir:archive/messages}") String archiveDir) {
+        return new MessageArchive(archiveDir);
+    }
+
     @Bean
-    public MessageRepository messageManager(repositories.MessageRepository jpaMessageRepository) {
-        return new MessageRepository(jpaMessageRepository);
+    public MessageArchiver messageArchiver(repositories.MessageRepository jpaMessageRepository,
+            MessageArchive messageArchive,
+            @Value("${dreamstay.messages.archive.enabled:false}") boolean enabled,
+            @Value("${dreamstay.messages.archive.idle-months:6}") int idleMonths,
+            @Value("${dreamstay.messages.archive.batch-size:500}") int batchSize) {
+        return new MessageArchiver(jpaMessageRepository, messageArchive, enabled, idleMonths, batchSize);
+    }
+
+    // Backfill uses plain JDBC, so wait for Hibernate to add the seq column first
+    @Bean(initMethod = "backfill")
+    @DependsOn("entityManagerFactory")
+    public ConversationSequencer conversationSequencer(JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager) {
+        return new ConversationSequencer(jdbcTemplate, new TransactionTemplate(transactionManager));
+    }
+
+    @Bean
+    public MessageRepository messageManager(repositories.MessageRepository jpaMessageRepository,
+            MessageArchive messageArchive, ConversationSequencer conversationSequencer,
+            repositories.ConversationSequenceRepository conversationSequenceRepository,
+            PlatformTransactionManager transactionManager) {
+        return new MessageRepository(jpaMessageRepository, messageArchive, conversationSequencer,
+                conversationSequenceRepository, new TransactionTemplate(transactionManager));
+    }
+
+    @Bean
+    public InboxNotifier inboxNotifier() {
+        return new InboxNotifier();
+    }
+
+    // Loaded with plain JDBC, so wait for Hibernate to create/update the tables first
+    @Bean(initMethod = "load")
+    @DependsOn("entityManagerFactory")
+    public BlockIndex blockIndex(JdbcTemplate jdbcTemplate,
+            @Value("${dreamstay.blocks.bloom-bits:1048576}") int bloomBits) {
+        return new BlockIndex(jdbcTemplate, bloomBits);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public BlockChangeChannel blockChangeChannel(DataSource dataSource, JdbcTemplate jdbcTemplate,
+            BlockIndex blockIndex, @Value("${dreamstay.blocks.cluster-sync.enabled:false}") boolean enabled) {
+        return new BlockChangeChannel(dataSource, jdbcTemplate, blockIndex, enabled);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public MessageIngestionPipeline messageIngestionPipeline(JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager, BlockIndex blockIndex,
+            ConversationSequencer conversationSequencer,
+            @Value("${dreamstay.messages.ingestion.enabled:false}") boolean enabled,
+            @Value("${dreamstay.messages.ingestion.batch-size:64}") int batchSize,
+            @Value("${dreamstay.messages.ingestion.linger-ms:5}") long lingerMs,
+            @Value("${dreamstay.messages.ingestion.queue-capacity:10000}") int queueCapacity) {
+        return new MessageIngestionPipeline(jdbcTemplate, new TransactionTemplate(transactionManager), blockIndex,
+                conversationSequencer, enabled,
+                batchSize, lingerMs, queueCapacity);
     }
 
     @Bean
     public MailService mailService(AuthService authService, MessageRepository messageRepository,
-            repositories.BlockRepository blockRepository) {
-        return new MailService(authService, messageRepository, blockRepository);
+            repositories.BlockRepository blockRepository, InboxNotifier inboxNotifier,
+            MessageIngestionPipeline messageIngestionPipeline, BlockIndex blockIndex,
+            BlockChangeChannel blockChangeChannel, PropertyManager propertyManager) {
+        return new MailService(authService, messageRepository, blockRepository, inboxNotifier,
+                messageIngestionPipeline, blockIndex, blockChangeChannel, propertyManager);
     }
 
     @Bean
     public ReviewService reviewService(AuthService authService, MessageRepository messageManager,
-            repositories.ReviewRepository reviewRepository) {
-        return new ReviewService(authService, messageManager, reviewRepository);
+            repositories.ReviewRepository reviewRepository, PropertyManager propertyManager,
+            LeaderboardService leaderboardService, PlatformTransactionManager transactionManager) {
+        return new ReviewService(authService, messageManager, reviewRepository, propertyManager,
+                leaderboardService, new TransactionTemplate(transactionManager));
+    }
+
+    // Initial build reads the rating columns with plain JDBC, so wait for Hibernate
+    @Bean(initMethod = "rebuild")
+    @DependsOn("entityManagerFactory")
+    public LeaderboardService leaderboardService(JdbcTemplate jdbcTemplate,
+            @Value("${dreamstay.leaderboard.top-k:100}") int topK,
+            @Value("${dreamstay.leaderboard.prior-weight:5}") double priorWeight) {
+        return new LeaderboardService(jdbcTemplate, topK, priorWeight);
+    }
+
+    @Bean
+    public RatingBackfillJob ratingBackfillJob(DataSource dataSource, JdbcTemplate jdbcTemplate,
+            @Value("${dreamstay.ratings.backfill.batch-size:500}") int batchSize) {
+        return new RatingBackfillJob(dataSource, jdbcTemplate, batchSize);
     }
 
     @Bean
@@ -58,9 +218,75 @@ public class AppConfig {
         return new VerificationService(authService, propertyManager);
     }
 
+    // Embedded SMTP server, only started for dreamstay.mail.transport=local
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public LocalSmtpServer localSmtpServer(@Value("${dreamstay.mail.transport:log}") String transport,
+            @Value("${dreamstay.mail.local.port:2525}") int port,
+            @Value("${dreamstay.mail.local.max-kept:1000}") int maxKept) {
+        return new LocalSmtpServer("local".equalsIgnoreCase(transport), port, maxKept);
+    }
+
+    // "log": write emails to the log; "smtp": real server; "local": the embedded LocalSmtpServer
+    @Bean(destroyMethod = "close")
+    public EmailTransport emailTransport(LocalSmtpServer localSmtpServer,
+            @Value("${dreamstay.mail.transport:log}") String transport,
+            @Value("${dreamstay.mail.from:no-reply@dreamstay.local}") String from,
+            @Value("${dreamstay.mail.smtp.host:localhost}") String host,
+            @Value("${dreamstay.mail.smtp.port:587}") int port,
+            @Value("${dreamstay.mail.smtp.username:}") String username,
+            @Value("${dreamstay.mail.smtp.password:}") String password,
+            @Value("${dreamstay.mail.smtp.starttls:true}") boolean startTls,
+            @Value("${dreamstay.mail.smtp.timeout-ms:10000}") long timeoutMillis,
+            @Value("${dreamstay.mail.workers:2}") int workers) throws jakarta.mail.MessagingException {
+        if ("smtp".equalsIgnoreCase(transport)) {
+            return new SmtpEmailTransport(host, port, username, password, startTls, from, workers, timeoutMillis);
+        }
+        if ("local".equalsIgnoreCase(transport)) {
+            return new SmtpEmailTransport("localhost", localSmtpServer.getPort(), null, null, false, from, workers,
+                    timeoutMillis);
+        }
+        return new LoggingEmailTransport();
+    }
+
+    // Claims rows with plain JDBC, so wait for schema.sql to create outbound_emails.
+    // The lease is renewed before each email once half of it has passed, so half
+    // a lease must cover one email: connect, EHLO, MAIL, RCPT, DATA and the
+    // message, each allowed smtp.timeout-ms.
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    @DependsOn("entityManagerFactory")
+    public EmailOutbox emailOutbox(JdbcTemplate jdbcTemplate, EmailTransport emailTransport,
+            @Value("${dreamstay.mail.workers:2}") int workers,
+            @Value("${dreamstay.mail.batch-size:20}") int batchSize,
+            @Value("${dreamstay.mail.poll-interval-ms:1000}") long pollIntervalMillis,
+            @Value("${dreamstay.mail.max-attempts:8}") int maxAttempts,
+            @Value("${dreamstay.mail.backoff-base-ms:5000}") long backoffBaseMillis,
+            @Value("${dreamstay.mail.backoff-max-ms:3600000}") long backoffMaxMillis,
+            @Value("${dreamstay.mail.lease-ms:120000}") long leaseMillis,
+            @Value("${dreamstay.mail.smtp.timeout-ms:10000}") long smtpTimeoutMillis,
+            @Value("${dreamstay.mail.retention-days:7}") long retentionDays) {
+        return new EmailOutbox(jdbcTemplate, emailTransport, workers, batchSize, pollIntervalMillis, maxAttempts,
+                backoffBaseMillis, backoffMaxMillis, Math.max(leaseMillis, 2 * 6 * smtpTimeoutMillis),
+                retentionDays * 24 * 60 * 60 * 1000L);
+    }
+
+    // "memory": codes local to this node; "jdbc": verification_codes table shared by all nodes
+    @Bean
+    @DependsOn("entityManagerFactory")
+    public VerificationCodeStore verificationCodeStore(JdbcTemplate jdbcTemplate,
+            @Value("${dreamstay.verification.store:memory}") String store,
+            @Value("${dreamstay.verification.expiry-tick-ms:1000}") long expiryTickMillis,
+            @Value("${dreamstay.verification.max-pending-codes:100000}") int maxPendingCodes) {
+        if ("jdbc".equalsIgnoreCase(store)) {
+            return new JdbcVerificationCodeStore(jdbcTemplate);
+        }
+        return new InMemoryVerificationCodeStore(expiryTickMillis, maxPendingCodes);
+    }
+
     @Bean
-    public EmailVerificationService emailVerificationService(SecurityService securityService) {
-        return new EmailVerificationService(securityService);
+    public EmailVerificationService emailVerificationService(SecurityService securityService,
+            EmailOutbox emailOutbox, VerificationCodeStore verificationCodeStore,
+            @Value("${dreamstay.verification.max-attempts:5}") int maxAttempts) {
+        return new EmailVerificationService(securityService, emailOutbox, verificationCodeStore, maxAttempts);
     }
 
     @Bean
@@ -0,0 +1,198 @@
+package config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logback appender that hands events to a bounded ring buffer and writes
+ * them to the attached appenders (normally the console) on one background
+ * thread, so request threads never wait on the console lock.
+ *
+ * It never blocks the caller. When the buffer is more than 80% full, events
+ * below WARN are dropped; when it is full, everything is. Dropped events are
+ * counted (see getStats).
+ *
+ * Chatty categories can be sampled with samples="category=rate,...", e.g.
+ * "services.MailService=0.1" keeps every 10th event below WARN from that
+ * logger and its children. WARN and ERROR are never sampled.
+ *
+ * Configured in logback-spring.xml.
+ */
+public class AsyncRingAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    private static final LongAdder APPENDED = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final LongAdder SAMPLED_OUT = new LongAdder();
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    private final List<SampleRule> sampleRules = new ArrayList<>();
+    private int queueSize = 8192;
+    private ArrayBlockingQueue<ILoggingEvent> queue;
+    private int discardThreshold;
+    private Thread worker;
+
+    /**
+     * Logging counters since startup (all AsyncRingAppenders together)
+     */
+    public record Stats(long appended, long dropped, long sampledOut) {
+    }
+
+    // Keep one event in every `every` below WARN for loggers under `category`
+    private record SampleRule(String category, long every, AtomicLong seen) {
+    }
+
+    public static Stats getStats() {
+        return new Stats(APPENDED.sum(), DROPPED.sum(), SAMPLED_OUT.sum());
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = Math.max(16, queueSize);
+    }
+
+    public void setSamples(String samples) {
+        sampleRules.clear();
+        if (samples == null || samples.isBlank()) {
+            return;
+        }
+        for (String rule : samples.split(",")) {
+            String[] parts = rule.trim().split("=", 2);
+            if (parts.length != 2) {
+                addWarn("Ignoring log sample rule '" + rule + "', expected category=rate");
+                continue;
+            }
+            double rate = Double.parseDouble(parts[1].trim());
+            long every = rate >= 1.0 ? 1 : rate <= 0.0 ? Long.MAX_VALUE : Math.round(1.0 / rate);
+            sampleRules.add(new SampleRule(parts[0].trim(), every, new AtomicLong()));
+        }
+    }
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueSize);
+        discardThreshold = queueSize / 5;
+        worker = new Thread(this::drain, "async-log-writer");
+        worker.setDaemon(true);
+        // Mark started first: drain() runs only while isStarted() is true
+        super.start();
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        boolean important = event.getLevel().isGreaterOrEqual(Level.WARN);
+        if (!important && sampledOut(event)) {
+            SAMPLED_OUT.increment();
+            return;
+        }
+        if (!important && queue.remainingCapacity() < discardThreshold) {
+            DROPPED.increment();
+            return;
+        }
+        // Capture thread-bound data (MDC, formatted message) before switching threads
+        event.prepareForDeferredProcessing();
+        if (queue.offer(event)) {
+            APPENDED.increment();
+        } else {
+            DROPPED.increment();
+        }
+    }
+
+    private boolean sampledOut(ILoggingEvent event) {
+        String logger = event.getLoggerName();
+        for (SampleRule rule : sampleRules) {
+            if (logger.equals(rule.category()) || logger.startsWith(rule.category() + ".")) {
+                return rule.seen().getAndIncrement() % rule.every() != 0;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+        List<ILoggingEvent> batch = new ArrayList<>(256);
+        while (isStarted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, 255);
+            write(batch);
+        }
+        // Flush whatever is left on shutdown
+        queue.drainTo(batch);
+        write(batch);
+    }
+
+    private void write(List<ILoggingEvent> batch) {
+        for (ILoggingEvent event : batch) {
+            appenders.appendLoopOnAppenders(event);
+        }
+        batch.clear();
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> appender) {
+        appenders.addAppender(appender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
@@ -0,0 +1,94 @@
+package config;
+
+import models.User;
+import services.AuthService;
+
+/**
+ * The caller of the current request, resolved once by AuthenticationFilter.
+ *
+ * With an access token the id and role come from the token itself, so role
+ * checks need no database access. With a session token or the X-User-Id
+ * header only the id is known; the user is loaded on first use and reused for
+ * the rest of the request.
+ */
+public final class AuthenticatedUser {
+
+    static final String REQUEST_ATTRIBUTE = AuthenticatedUser.class.getName();
+
+    private final Long userId;
+    private final String tokenRole;
+    private final AuthService authService;
+
+    private User user;
+    private boolean loaded;
+
+    AuthenticatedUser(Long userId, String tokenRole, AuthService authService) {
+        this.userId = userId;
+        this.tokenRole = tokenRole;
+        this.authService = authService;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * The caller's user record (loaded at most once per request), or null if
+     * the user does not exist
+     */
+    public User getUser() {
+        if (!loaded) {
+            user = authService.getUserById(userId);
+            loaded = true;
+        }
+        return user;
+    }
+
+    /**
+     * Whether the caller is a known user. Trusted without a lookup for access
+     * tokens, which are only issued to existing users.
+     */
+    public boolean exists() {
+        return tokenRole != null || getUser() != null;
+    }
+
+    public String getRole() {
+        if (tokenRole != null) {
+            return tokenRole;
+        }
+        User u = getUser();
+        return u != null ? u.getRole() : null;
+    }
+
+    public boolean hasRole(String... roles) {
+        String role = getRole();
+        if (role == null) {
+            return false;
+        }
+        for (String r : roles) {
+            if (role.equalsIgnoreCase(r)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isAdmin() {
+        return hasRole("admin");
+    }
+
+    public boolean isEmailVerified() {
+        User u = getUser();
+        return u != null && u.isEmailVerified();
+    }
+
+    public boolean isIdVerified() {
+        User u = getUser();
+        return u != null && u.isIdVerified();
+    }
+
+    public boolean isApproved() {
+        User u = getUser();
+        return u != null && u.isApproved();
+    }
+}
@@ -0,0 +1,67 @@
+package config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import services.AccessTokenCodec;
+import services.AuthService;
+import services.SecurityService;
+
+import java.io.IOException;
+
+/**
+ * Works out who is calling, once per request, and stores it as a request
+ * attribute for CurrentUserArgumentResolver.
+ *
+ * Credentials are tried in order: X-Access-Token (verified locally, no
+ * lookup), X-Session-Token, then the legacy X-User-Id header. A token that
+ * is present but invalid is not silently replaced by the header.
+ */
+@Component
+public class AuthenticationFilter extends OncePerRequestFilter {
+
+    private final AuthService authService;
+    private final SecurityService securityService;
+
+    public AuthenticationFilter(AuthService authService, SecurityService securityService) {
+        this.authService = authService;
+        this.securityService = securityService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        AuthenticatedUser caller = resolve(request);
+        if (caller != null) {
+            request.setAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE, caller);
+        }
+        chain.doFilter(request, response);
+    }
+
+    private AuthenticatedUser resolve(HttpServletRequest request) {
+        String accessToken = request.getHeader("X-Access-Token");
+        if (accessToken != null) {
+            AccessTokenCodec.Claims claims = securityService.verifyAccessToken(accessToken);
+            return claims != null ? new AuthenticatedUser(claims.userId(), claims.role(), authService) : null;
+        }
+
+        String sessionToken = request.getHeader("X-Session-Token");
+        if (sessionToken != null) {
+            Long userId = securityService.getUserIdFromToken(sessionToken);
+            return userId != null ? new AuthenticatedUser(userId, null, authService) : null;
+        }
+
+        String header = request.getHeader("X-User-Id");
+        if (header != null) {
+            try {
+                return new AuthenticatedUser(Long.valueOf(header.trim()), null, authService);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
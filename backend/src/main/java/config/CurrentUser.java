@@ -0,0 +1,19 @@
+package config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Injects the caller of the request into a controller method, either as an
+ * AuthenticatedUser or just its id (Long).
+ *
+ * A required parameter without a caller answers 401.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CurrentUser {
+
+    boolean required() default true;
+}
@@ -0,0 +1,37 @@
+package config;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Resolves @CurrentUser parameters from what AuthenticationFilter stored
+ */
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        Class<?> type = parameter.getParameterType();
+        return parameter.hasParameterAnnotation(CurrentUser.class)
+                && (type == AuthenticatedUser.class || type == Long.class);
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+            NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        AuthenticatedUser caller = (AuthenticatedUser) webRequest.getAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE,
+                RequestAttributes.SCOPE_REQUEST);
+        if (caller == null) {
+            if (parameter.getParameterAnnotation(CurrentUser.class).required()) {
+                throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Not authenticated");
+            }
+            return null;
+        }
+        return parameter.getParameterType() == Long.class ? caller.getUserId() : caller;
+    }
+}
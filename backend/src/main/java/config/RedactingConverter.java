@@ -0,0 +1,34 @@
+package config;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.pattern.CompositeConverter;
+
+import java.util.regex.Pattern;
+
+/**
+ * %redact(...) in logback-spring.xml: masks secrets in the wrapped output.
+ *
+ * Values of password / hash / token / secret style keys ("password=x",
+ * "token: x", passwordHash="x") and anything shaped like an access token are
+ * replaced with ***, so a careless log statement cannot leak them.
+ */
+public class RedactingConverter extends CompositeConverter<ILoggingEvent> {
+
+    private static final Pattern SECRET_VALUE = Pattern.compile(
+            "(?i)([\\w.-]*(?:password|passwd|hash|token|secret|api[_-]?key)[\\w.-]*[\"']?\\s*[=:]\\s*[\"']?)"
+                    + "[^\\s,;\"'}]+");
+    private static final Pattern ACCESS_TOKEN = Pattern.compile("[A-Za-z0-9_-]{36}\\.[A-Za-z0-9_-]{22}");
+
+    @Override
+    protected String transform(ILoggingEvent event, String in) {
+        return redact(in);
+    }
+
+    static String redact(String text) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        String masked = SECRET_VALUE.matcher(text).replaceAll("$1***");
+        return ACCESS_TOKEN.matcher(masked).replaceAll("***");
+    }
+}
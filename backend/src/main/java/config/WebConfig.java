@@ -1,9 +1,12 @@
 package config;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.List;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
@@ -22,4 +25,10 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedHeaders("*");
         // .allowCredentials(true) -> REMOVED to allow wildcard origin
     }
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        // @CurrentUser parameters
+        resolvers.add(new CurrentUserArgumentResolver());
+    }
 }
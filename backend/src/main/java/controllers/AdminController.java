@@ -1,12 +1,19 @@
 package controllers;
 
+import config.AuthenticatedUser;
+import config.CurrentUser;
 import dtos.*;
 import models.User;
 import models.Report;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import services.AuthService;
+import services.EmailOutbox;
+import services.KeysetPage;
+import services.RatingBackfillJob;
+import services.SecurityService;
 import services.ReportService;
 import services.VerificationService;
 
@@ -23,31 +30,42 @@ public class AdminController {
     private final VerificationService verificationService;
     private final services.PropertyManager propertyManager;
     private final DtoMapper dtoMapper;
+    private final RatingBackfillJob ratingBackfillJob;
+    private final SecurityService securityService;
+    private final EmailOutbox emailOutbox;
 
     // ReportService and VerificationService injected
     public AdminController(AuthService authService, ReportService reportService,
-            VerificationService verificationService, services.PropertyManager propertyManager, DtoMapper dtoMapper) {
+            VerificationService verificationService, services.PropertyManager propertyManager, DtoMapper dtoMapper,
+            RatingBackfillJob ratingBackfillJob, SecurityService securityService, EmailOutbox emailOutbox) {
         this.authService = authService;
         this.reportService = reportService;
         this.verificationService = verificationService;
         this.propertyManager = propertyManager;
         this.dtoMapper = dtoMapper;
+        this.ratingBackfillJob = ratingBackfillJob;
+        this.securityService = securityService;
+        this.emailOutbox = emailOutbox;
     }
 
-    private boolean isAdmin(Long userId) {
-        if (userId == null)
-            return false;
-        User user = authService.getUserById(userId);
-        return user != null && user.getRole().equalsIgnoreCase("admin");
-    }
+    /*
+     * Admin listings are keyset-paged: ?sort=newest|oldest&cursor=<id>&limit=
+     * (limit 1..100, default 50). The response is an AdminPageDTO; pass its
+     * nextCursor back as cursor with the same sort for the next page.
+     */
 
     @GetMapping("/users/pending")
-    public ResponseEntity<?> getPendingUsers(@RequestHeader("X-User-Id") Long userId) {
-        if (!isAdmin(userId))
+    public ResponseEntity<?> getPendingUsers(
+            @CurrentUser AuthenticatedUser caller,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "newest") String sort,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
 
-        List<User> pending = authService.getPendingApprovalUsers();
-        return ResponseEntity.ok(pending.stream().map(dtoMapper::toUserDTO).collect(Collectors.toList()));
+        KeysetPage page = page(cursor, sort, limit);
+        List<User> pending = authService.getPendingApprovalUsers(page);
+        return ResponseEntity.ok(dtoMapper.toAdminPageDTO(pending, page.limit(), User::getId, dtoMapper::toUserDTO));
     }
 
     // Retain old approve-user for generic approval, or assume verify covers it on
@@ -55,14 +73,14 @@ public class AdminController {
     // However, strict requirement asks for verify on user ID.
     @PostMapping("/users/{id}/verify")
     public ResponseEntity<?> verifyUser(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
 
-        if (!isAdmin(userId))
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
 
         // This endpoint maps to the ID verification approval
-        User target = authService.getUserById(id);
+        User target = authService.getUserForUpdate(id);
         if (target != null) {
             target.setIdVerified(true);
             target.setApproved(true);
@@ -76,30 +94,37 @@ public class AdminController {
     // START NEW ADMIN ENDPOINTS
 
     @GetMapping("/users")
-    public ResponseEntity<?> getAllUsers(@RequestHeader("X-User-Id") Long userId) {
-        if (!isAdmin(userId))
+    public ResponseEntity<?> getAllUsers(
+            @CurrentUser AuthenticatedUser caller,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "newest") String sort,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        List<User> users = authService.getAllUsers();
-        return ResponseEntity.ok(users.stream().map(dtoMapper::toUserDTO).collect(Collectors.toList()));
+        KeysetPage page = page(cursor, sort, limit);
+        List<User> users = authService.getUsersPage(page);
+        return ResponseEntity.ok(dtoMapper.toAdminPageDTO(users, page.limit(), User::getId, dtoMapper::toUserDTO));
     }
 
     @GetMapping("/users/id-pending")
-    public ResponseEntity<?> getPendingIdUsers(@RequestHeader("X-User-Id") Long userId) {
-        if (!isAdmin(userId))
+    public ResponseEntity<?> getPendingIdUsers(
+            @CurrentUser AuthenticatedUser caller,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "newest") String sort,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
 
-        List<User> users = authService.getAllUsers().stream()
-                .filter(u -> u.getIdDocumentPath() != null && !u.isIdVerified())
-                .collect(Collectors.toList());
-
-        return ResponseEntity.ok(users.stream().map(dtoMapper::toUserDTO).collect(Collectors.toList()));
+        KeysetPage page = page(cursor, sort, limit);
+        List<User> users = authService.getIdPendingUsers(page);
+        return ResponseEntity.ok(dtoMapper.toAdminPageDTO(users, page.limit(), User::getId, dtoMapper::toUserDTO));
     }
 
     @GetMapping("/users/{id}")
     public ResponseEntity<?> getUserDetails(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
-        if (!isAdmin(userId))
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
 
         User user = authService.getUserById(id);
@@ -110,18 +135,23 @@ public class AdminController {
     }
 
     @GetMapping("/users/unverified")
-    public ResponseEntity<?> getUnverifiedUsers(@RequestHeader("X-User-Id") Long userId) {
-        if (!isAdmin(userId))
+    public ResponseEntity<?> getUnverifiedUsers(
+            @CurrentUser AuthenticatedUser caller,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "newest") String sort,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        List<User> users = verificationService.getUnverifiedUsers();
-        return ResponseEntity.ok(users.stream().map(dtoMapper::toUserDTO).collect(Collectors.toList()));
+        KeysetPage page = page(cursor, sort, limit);
+        List<User> users = verificationService.getUnverifiedUsers(page);
+        return ResponseEntity.ok(dtoMapper.toAdminPageDTO(users, page.limit(), User::getId, dtoMapper::toUserDTO));
     }
 
     @PostMapping("/users/{id}/reject")
     public ResponseEntity<?> rejectUser(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
-        if (!isAdmin(userId))
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
 
         User target = authService.getUserById(id);
@@ -137,52 +167,68 @@ public class AdminController {
     }
 
     @GetMapping("/admins/unverified")
-    public ResponseEntity<?> getUnverifiedAdmins(@RequestHeader("X-User-Id") Long userId) {
-        if (!isAdmin(userId))
+    public ResponseEntity<?> getUnverifiedAdmins(
+            @CurrentUser AuthenticatedUser caller,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "newest") String sort,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        List<User> admins = verificationService.getUnverifiedAdmins();
-        return ResponseEntity.ok(admins.stream().map(dtoMapper::toUserDTO).collect(Collectors.toList()));
+        KeysetPage page = page(cursor, sort, limit);
+        List<User> admins = verificationService.getUnverifiedAdmins(page);
+        return ResponseEntity.ok(dtoMapper.toAdminPageDTO(admins, page.limit(), User::getId, dtoMapper::toUserDTO));
     }
 
     @PostMapping("/admins/{id}/verify")
     public ResponseEntity<?> verifyAdmin(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
-        if (!isAdmin(userId))
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         verificationService.verifyAdmin(id);
         return ResponseEntity.ok("Admin verified");
     }
 
     @GetMapping("/properties")
-    public ResponseEntity<?> getAllProperties(@RequestHeader("X-User-Id") Long userId) {
-        if (!isAdmin(userId))
+    public ResponseEntity<?> getAllProperties(
+            @CurrentUser AuthenticatedUser caller,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "newest") String sort,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        List<models.Property> properties = propertyManager.getProperties();
-        return ResponseEntity.ok(properties.stream().map(dtoMapper::toPropertyDTO).collect(Collectors.toList()));
+        KeysetPage page = page(cursor, sort, limit);
+        List<models.Property> properties = propertyManager.getPropertiesPage(page);
+        return ResponseEntity.ok(dtoMapper.toAdminPageDTO(properties, page.limit(), models.Property::getId,
+                dtoMapper::toPropertyDTO));
     }
 
     @GetMapping("/properties/unverified")
-    public ResponseEntity<?> getUnverifiedProperties(@RequestHeader("X-User-Id") Long userId) {
-        if (!isAdmin(userId))
+    public ResponseEntity<?> getUnverifiedProperties(
+            @CurrentUser AuthenticatedUser caller,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "newest") String sort,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
 
-        List<models.Property> properties = propertyManager.getUnverifiedProperties();
+        KeysetPage page = page(cursor, sort, limit);
+        List<models.Property> properties = propertyManager.getUnverifiedProperties(page);
 
-        List<AdminUnverifiedPropertyDTO> dtos = properties.stream().map(p -> {
-            User owner = authService.getUserById(p.getOwnerId());
-            return dtoMapper.toAdminUnverifiedPropertyDTO(p, owner);
-        }).collect(Collectors.toList());
+        // Resolve all owners in one query instead of one lookup per property
+        java.util.Map<Long, User> owners = authService.getUsersMapByIds(
+                properties.stream().map(models.Property::getOwnerId).collect(Collectors.toList()));
 
-        return ResponseEntity.ok(dtos);
+        return ResponseEntity.ok(dtoMapper.toAdminPageDTO(properties, page.limit(), models.Property::getId,
+                p -> dtoMapper.toAdminUnverifiedPropertyDTO(p, owners.get(p.getOwnerId()))));
     }
 
     @GetMapping("/users/{id}/id-document")
     public ResponseEntity<?> getUserIdDocument(
-            @RequestHeader("X-User-Id") Long adminId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
 
-        if (!isAdmin(adminId))
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
 
         User user = authService.getUserById(id);
@@ -209,10 +255,10 @@ public class AdminController {
 
     @GetMapping("/properties/{id}")
     public ResponseEntity<?> getPropertyDetails(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
 
-        if (!isAdmin(userId))
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
 
         java.util.Optional<models.Property> propertyOpt = propertyManager.getPropertyById(id);
@@ -227,9 +273,9 @@ public class AdminController {
 
     @PostMapping("/properties/{id}/verify")
     public ResponseEntity<?> verifyProperty(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
-        if (!isAdmin(userId))
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         propertyManager.verifyProperty(id);
         return ResponseEntity.ok("Property verified");
@@ -237,17 +283,17 @@ public class AdminController {
 
     @DeleteMapping("/properties/{id}")
     public ResponseEntity<?> deleteProperty(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
-        if (!isAdmin(userId))
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         propertyManager.deleteProperty(id);
         return ResponseEntity.ok("Property deleted");
     }
 
     @GetMapping("/reports/pending")
-    public ResponseEntity<?> getPendingReports(@RequestHeader("X-User-Id") Long userId) {
-        if (!isAdmin(userId))
+    public ResponseEntity<?> getPendingReports(@CurrentUser AuthenticatedUser caller) {
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         List<Report> reports = reportService.getPendingReports();
         return ResponseEntity.ok(reports.stream().map(dtoMapper::toReportDTO).collect(Collectors.toList()));
@@ -255,9 +301,9 @@ public class AdminController {
 
     @PostMapping("/reports/{id}/resolve")
     public ResponseEntity<?> resolveReport(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
-        if (!isAdmin(userId))
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         reportService.resolveReport(id, "Resolved via API");
         return ResponseEntity.ok("Report resolved");
@@ -265,11 +311,72 @@ public class AdminController {
 
     @PostMapping("/reports/{id}/dismiss")
     public ResponseEntity<?> dismissReport(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
-        if (!isAdmin(userId))
+        if (!caller.isAdmin())
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         reportService.dismissReport(id, "Dismissed via API");
         return ResponseEntity.ok("Report dismissed");
     }
+
+    // Recompute listing rating aggregates from the reviews table
+    @PostMapping("/ratings/backfill")
+    public ResponseEntity<?> backfillRatings(@CurrentUser AuthenticatedUser caller) {
+        if (!caller.isAdmin())
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+
+        try {
+            int updated = ratingBackfillJob.run();
+            return ResponseEntity.ok("Rating aggregates recomputed for " + updated + " properties");
+        } catch (java.sql.SQLException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Backfill failed: " + e.getMessage());
+        }
+    }
+
+    // Active sessions and how many expire / are logged out
+    @GetMapping("/sessions/stats")
+    public ResponseEntity<?> getSessionStats(@CurrentUser AuthenticatedUser caller) {
+        if (!caller.isAdmin())
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        return ResponseEntity.ok(securityService.getSessionStats());
+    }
+
+    // Password hashing pool: queue depth, rejections, average cost per hash
+    @GetMapping("/security/hashing/stats")
+    public ResponseEntity<?> getHashingStats(@CurrentUser AuthenticatedUser caller) {
+        if (!caller.isAdmin())
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        return ResponseEntity.ok(securityService.getHashingStats());
+    }
+
+    // Log events written, dropped under backpressure and sampled out
+    @GetMapping("/logging/stats")
+    public ResponseEntity<?> getLoggingStats(@CurrentUser AuthenticatedUser caller) {
+        if (!caller.isAdmin())
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        return ResponseEntity.ok(config.AsyncRingAppender.getStats());
+    }
+
+    // User cache size and hit ratios (by id and by email)
+    @GetMapping("/cache/users/stats")
+    public ResponseEntity<?> getUserCacheStats(@CurrentUser AuthenticatedUser caller) {
+        if (!caller.isAdmin())
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        return ResponseEntity.ok(authService.getUserCacheStats());
+    }
+
+    // Outbound email queue depth by status and delivery counters
+    @GetMapping("/mail/stats")
+    public ResponseEntity<?> getMailStats(@CurrentUser AuthenticatedUser caller) {
+        if (!caller.isAdmin())
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        return ResponseEntity.ok(emailOutbox.getStats());
+    }
+
+    private static KeysetPage page(Long cursor, String sort, int limit) {
+        if (!"newest".equalsIgnoreCase(sort) && !"oldest".equalsIgnoreCase(sort)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "sort must be newest or oldest");
+        }
+        return KeysetPage.of(cursor, "oldest".equalsIgnoreCase(sort), limit);
+    }
 }
@@ -1,48 +1,93 @@
 package controllers;
 
 import dtos.*;
+import jakarta.servlet.http.HttpServletRequest;
+import models.SessionToken;
 import models.User;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import services.AuthService;
 import services.EmailVerificationService;
+import services.LoginThrottle;
+import services.SecurityService;
+import services.VerificationCodeStore;
 
 @RestController
 @RequestMapping("/api/auth")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = { "X-Session-Token", "X-Access-Token" })
 public class AuthController {
 
     private final AuthService authService;
     private final EmailVerificationService emailVerificationService;
     private final DtoMapper dtoMapper;
     private final services.FileUploadService fileUploadService;
+    private final SecurityService securityService;
+    private final LoginThrottle loginThrottle;
+
+    // Password reset requests share the login throttle's sketches under these keys
+    private static final String RESET_KEY_PREFIX = "reset:";
 
     public AuthController(AuthService authService, EmailVerificationService emailVerificationService,
-            DtoMapper dtoMapper, services.FileUploadService fileUploadService) {
+            DtoMapper dtoMapper, services.FileUploadService fileUploadService, SecurityService securityService,
+            LoginThrottle loginThrottle) {
         this.authService = authService;
         this.emailVerificationService = emailVerificationService;
         this.dtoMapper = dtoMapper;
         this.fileUploadService = fileUploadService;
+        this.securityService = securityService;
+        this.loginThrottle = loginThrottle;
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody LoginRequest request) {
+    public ResponseEntity<?> login(@RequestBody LoginRequest request, HttpServletRequest httpRequest) {
+        // Refuse keys with too many recent failures before any lookup or hashing
+        String email = User.normalizeEmail(request.email());
+        String ip = httpRequest.getRemoteAddr();
+        if (!loginThrottle.allow(email, ip)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header("Retry-After", String.valueOf(loginThrottle.getRetryAfterSeconds()))
+                    .body("Too many failed login attempts, please try again later");
+        }
         try {
             User user = authService.login(request.email(), request.password());
-            return ResponseEntity.ok(dtoMapper.toUserDTO(user));
+            // Session token (revocable, server-side) and signed access token (stateless)
+            SessionToken session = securityService.generateSessionToken(user.getId());
+            return ResponseEntity.ok()
+                    .header("X-Session-Token", session.getToken())
+                    .header("X-Access-Token", securityService.issueAccessToken(user.getId(), user.getRole()))
+                    .body(dtoMapper.toUserDTO(user));
         } catch (exceptions.InvalidCredentialsException e) {
+            loginThrottle.recordFailure(email, ip);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
-        } catch (exceptions.EmailNotVerifiedException e) {
+        } catch (exceptions.EmailNotVerifiedException | exceptions.PasswordResetRequiredException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
         } catch (exceptions.IdNotVerifiedException | exceptions.AccountPendingApprovalException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (exceptions.ServiceOverloadedException e) {
+            return overloaded(e);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("An unexpected error occurred: " + e.getMessage());
         }
     }
 
+    // Password hashing pool is full: ask the client to retry shortly
+    private static ResponseEntity<?> overloaded(exceptions.ServiceOverloadedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").body(e.getMessage());
+    }
+
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(
+            @RequestHeader(value = "X-Session-Token", required = false) String sessionToken,
+            @RequestHeader(value = "X-Access-Token", required = false) String accessToken) {
+        securityService.invalidateToken(sessionToken);
+        if (accessToken != null) {
+            securityService.revokeAccessToken(accessToken);
+        }
+        return ResponseEntity.ok("Logged out");
+    }
+
     @PostMapping(value = "/register", consumes = "multipart/form-data")
     public ResponseEntity<?> register(
             @RequestParam("name") String name,
@@ -52,6 +97,9 @@ public class AuthController {
             @RequestParam("governmentId") String governmentId,
             @RequestParam(value = "file", required = false) org.springframework.web.multipart.MultipartFile file) {
         try {
+            // Refuse up front when no code could be issued, before an account exists
+            emailVerificationService.ensureCapacity();
+
             User newUser = authService.register(
                     name,
                     email,
@@ -60,31 +108,42 @@ public class AuthController {
                     governmentId);
 
             if (newUser != null) {
-                // If ID file is provided, save it
-                if (file != null && !file.isEmpty()) {
-                    String path = fileUploadService.saveIdDocument(newUser.getId(), file.getBytes(),
-                            file.getOriginalFilename());
-                    newUser.setIdDocumentPath(path);
-
-                    // Reset status to ensure it's pending review
-                    newUser.setIdVerified(false);
-                    newUser.setApproved(false);
-
-                    authService.updateUser(newUser);
-                } else if (role.equalsIgnoreCase("seller") || role.equalsIgnoreCase("agent")) {
-                    // If no file but required role, strictly mark unverified (handled by defaults,
-                    // but good to be explicit)
-                    // Ideally frontend forces file, but backend should handle missing file
-                    // appropriately
-                }
+                String path = null;
+                try {
+                    // If ID file is provided, save it
+                    if (file != null && !file.isEmpty()) {
+                        path = fileUploadService.saveIdDocument(newUser.getId(), file);
+                        newUser.setIdDocumentPath(path);
+
+                        // Reset status to ensure it's pending review
+                        newUser.setIdVerified(false);
+                        newUser.setApproved(false);
 
-                emailVerificationService.sendVerificationCode(newUser);
-                // CRITICAL FIX: Save verification code to user file
-                authService.updateUser(newUser);
+                        authService.updateUser(newUser);
+                    } else if (role.equalsIgnoreCase("seller") || role.equalsIgnoreCase("agent")) {
+                        // If no file but required role, strictly mark unverified (handled by defaults,
+                        // but good to be explicit)
+                        // Ideally frontend forces file, but backend should handle missing file
+                        // appropriately
+                    }
+
+                    // Code goes to the code store and the email to the outbox; the user row is untouched
+                    emailVerificationService.sendVerificationCode(newUser);
+                } catch (Exception e) {
+                    // Without a code the account could never be verified, and a retry
+                    // would fail with "email already exists": undo the registration
+                    authService.discardRegistration(newUser);
+                    if (path != null) {
+                        fileUploadService.deleteFile(path);
+                    }
+                    throw e;
+                }
                 return ResponseEntity.ok("User registered successfully. check email for verification code.");
             } else {
                 return ResponseEntity.badRequest().body("Registration failed. Email might be in use or invalid data.");
             }
+        } catch (exceptions.ServiceOverloadedException e) {
+            return overloaded(e);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Error: " + e.getMessage());
         }
@@ -96,14 +155,79 @@ public class AuthController {
         if (user == null) {
             return ResponseEntity.notFound().build();
         }
+        // verifyCode marks the user verified; change the row itself, not a cached copy
+        user = authService.getUserForUpdate(user.getId());
+        if (user == null) {
+            return ResponseEntity.notFound().build();
+        }
 
-        boolean verified = emailVerificationService.verifyCode(user, request.code());
-        if (verified) {
+        VerificationCodeStore.Result result = emailVerificationService.verifyCode(user, request.code());
+        if (result == VerificationCodeStore.Result.VERIFIED) {
             // CRITICAL FIX: Save user changes to persist email verification
             authService.updateUser(user);
             return ResponseEntity.ok("Email verified successfully");
+        } else if (result == VerificationCodeStore.Result.TOO_MANY_ATTEMPTS) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body("Too many wrong codes; this code is no longer valid");
         } else {
             return ResponseEntity.badRequest().body("Invalid or expired verification code");
         }
     }
+
+    /**
+     * Email a password reset code. Answers the same whether or not the email
+     * is registered, so it cannot be used to probe for accounts.
+     */
+    @PostMapping("/password-reset/request")
+    public ResponseEntity<?> requestPasswordReset(@RequestBody PasswordResetRequest request,
+            HttpServletRequest httpRequest) {
+        // Each code allows a few guesses; count requests so codes can't be re-issued
+        // without limit. Counted under their own keys: a reset request is not a failed
+        // login, and must not let anyone lock the owner of an email out of login.
+        String email = User.normalizeEmail(request.email());
+        String emailKey = email != null ? RESET_KEY_PREFIX + email : null;
+        String ipKey = RESET_KEY_PREFIX + httpRequest.getRemoteAddr();
+        if (!loginThrottle.allow(emailKey, ipKey)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header("Retry-After", String.valueOf(loginThrottle.getRetryAfterSeconds()))
+                    .body("Too many attempts, please try again later");
+        }
+        loginThrottle.recordFailure(emailKey, ipKey);
+        User user = authService.getUserByEmail(request.email());
+        if (user != null) {
+            try {
+                emailVerificationService.sendPasswordResetCode(user);
+            } catch (exceptions.ServiceOverloadedException e) {
+                return overloaded(e);
+            }
+        }
+        return ResponseEntity.ok("If the account exists, a reset code was sent by email.");
+    }
+
+    @PostMapping("/password-reset/confirm")
+    public ResponseEntity<?> confirmPasswordReset(@RequestBody PasswordResetConfirmRequest request) {
+        if (!securityService.validatePassword(request.newPassword())) {
+            return ResponseEntity.badRequest().body(securityService.getPasswordRequirements());
+        }
+        User user = authService.getUserByEmail(request.email());
+        if (user == null) {
+            return ResponseEntity.badRequest().body("Invalid or expired reset code");
+        }
+
+        VerificationCodeStore.Result result = emailVerificationService.checkResetCode(user, request.code());
+        if (result == VerificationCodeStore.Result.TOO_MANY_ATTEMPTS) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body("Too many wrong codes; this code is no longer valid");
+        } else if (result != VerificationCodeStore.Result.VERIFIED) {
+            return ResponseEntity.badRequest().body("Invalid or expired reset code");
+        }
+        try {
+            if (!authService.resetPassword(user.getId(), request.newPassword())) {
+                return ResponseEntity.badRequest().body("Password could not be reset");
+            }
+        } catch (exceptions.ServiceOverloadedException e) {
+            return overloaded(e);
+        }
+        return ResponseEntity.ok("Password reset, you can sign in now");
+    }
 }
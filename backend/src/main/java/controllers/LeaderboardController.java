@@ -0,0 +1,45 @@
+package controllers;
+
+import dtos.LeaderboardEntryDTO;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import services.LeaderboardService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/leaderboard")
+@CrossOrigin(origins = "*")
+public class LeaderboardController {
+
+    private final LeaderboardService leaderboardService;
+
+    public LeaderboardController(LeaderboardService leaderboardService) {
+        this.leaderboardService = leaderboardService;
+    }
+
+    /**
+     * Top rated sellers and agents, optionally within one city.
+     * Served from memory; no database access.
+     */
+    @GetMapping
+    public ResponseEntity<List<LeaderboardEntryDTO>> getLeaderboard(
+            @RequestParam(required = false) String city,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        int pageSize = Math.max(1, Math.min(size, 100));
+        int firstRank = Math.max(0, page) * pageSize + 1;
+
+        List<LeaderboardEntryDTO> result = new ArrayList<>();
+        for (LeaderboardService.Entry entry : leaderboardService.getPage(city, page, pageSize)) {
+            result.add(new LeaderboardEntryDTO(firstRank + result.size(), entry.userId(), entry.name(),
+                    entry.role(), entry.city(), entry.averageRating(), entry.reviewCount(), entry.score()));
+        }
+        return ResponseEntity.ok(result);
+    }
+}
@@ -1,15 +1,37 @@
 package controllers;
 
+import config.AuthenticatedUser;
+import config.CurrentUser;
 import dtos.*;
+import exceptions.ServiceOverloadedException;
 import models.Message;
+import models.Property;
 import models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import services.AuthService;
+import services.InboxNotifier;
+import services.PropertyManager;
+import repositories.MessageThreadView;
 import services.MailService;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @RestController
@@ -17,65 +39,177 @@ import java.util.stream.Collectors;
 @CrossOrigin(origins = "*")
 public class MessageController {
 
+    private static final Logger log = LoggerFactory.getLogger(MessageController.class);
+
     private final MailService mailService;
     private final AuthService authService;
     private final DtoMapper dtoMapper;
+    private final InboxNotifier inboxNotifier;
+    private final PropertyManager propertyManager;
+    private final long pollTimeoutMs;
+    private final long commitLagMs;
 
-    public MessageController(MailService mailService, AuthService authService, DtoMapper dtoMapper) {
+    public MessageController(MailService mailService, AuthService authService, DtoMapper dtoMapper,
+            InboxNotifier inboxNotifier, PropertyManager propertyManager,
+            @Value("${dreamstay.messages.poll-timeout-ms:25000}") long pollTimeoutMs,
+            @Value("${dreamstay.messages.commit-lag-ms:10000}") long commitLagMs) {
         this.mailService = mailService;
         this.authService = authService;
         this.dtoMapper = dtoMapper;
+        this.inboxNotifier = inboxNotifier;
+        this.propertyManager = propertyManager;
+        this.pollTimeoutMs = pollTimeoutMs;
+        this.commitLagMs = Math.max(0, commitLagMs);
     }
 
     @GetMapping
-    public ResponseEntity<?> getConversations(@RequestHeader("X-User-Id") Long userId) {
-        if (userId == null)
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        User user = authService.getUserById(userId);
-        if (user == null)
+    public ResponseEntity<?> getConversations(@CurrentUser AuthenticatedUser caller) {
+        if (!caller.exists())
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
-        List<User> partners = mailService.getChatPartners(userId);
+        List<User> partners = mailService.getChatPartners(caller.getUserId());
         List<UserDTO> dtos = partners.stream()
                 .map(dtoMapper::toUserDTO)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(dtos);
     }
 
+    /**
+     * Long-poll for new inbox messages (fallback for clients that can't use
+     * WebSockets). `afterId` is the id of the newest message the client has;
+     * anything newer is returned immediately, otherwise the request is parked
+     * until a message arrives or the timeout expires.
+     *
+     * Message ids are drawn before commit, so a message can commit after one
+     * with a higher id and would be skipped by a plain `id > afterId`. Every
+     * response therefore also carries the messages stamped within the last
+     * commitLagMs, whatever their id. They alone never end the wait (that would
+     * spin the client); they come along with the next new message, or on
+     * timeout. Clients de-duplicate by id.
+     */
+    @GetMapping("/poll")
+    public DeferredResult<ResponseEntity<?>> poll(
+            @CurrentUser Long userId,
+            @RequestParam(required = false) Long afterId) {
+
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(pollTimeoutMs);
+        AtomicReference<List<MessageDTO>> recent = new AtomicReference<>(List.of());
+        result.onTimeout(() -> result.setResult(ResponseEntity.ok(recent.get())));
+
+        // Subscribe before checking the database so a message saved in between is not missed
+        Runnable unsubscribe = inboxNotifier.subscribe(userId,
+                m -> result.setResult(ResponseEntity.ok(merge(recent.get(), List.of(dtoMapper.toMessageDTO(m))))));
+        result.onCompletion(unsubscribe);
+
+        if (afterId != null) {
+            LocalDateTime overlapSince = LocalDateTime.now().minus(Duration.ofMillis(commitLagMs));
+            List<Message> found = mailService.getInboxAfter(userId, afterId, overlapSince);
+            recent.set(found.stream()
+                    .filter(m -> m.getId() <= afterId)
+                    .map(dtoMapper::toMessageDTO)
+                    .collect(Collectors.toList()));
+            if (found.stream().anyMatch(m -> m.getId() > afterId)) {
+                result.setResult(ResponseEntity.ok(found.stream()
+                        .map(dtoMapper::toMessageDTO)
+                        .collect(Collectors.toList())));
+            }
+        }
+        return result;
+    }
+
+    // Both lists by id, without duplicates
+    private static List<MessageDTO> merge(List<MessageDTO> a, List<MessageDTO> b) {
+        Map<Long, MessageDTO> byId = new TreeMap<>();
+        a.forEach(m -> byId.put(m.id(), m));
+        b.forEach(m -> byId.put(m.id(), m));
+        return new ArrayList<>(byId.values());
+    }
+
+    /**
+     * Conversations that changed after `since` (epoch millis), with their
+     * latest sequence number. Clients then fetch each one with ?afterSeq=.
+     *
+     * updated_at is written before its transaction commits, so a change can
+     * become visible with a time older than a `since` the client already got.
+     * The query therefore looks back commitLagMs further than `since`;
+     * conversations the client is already up to date on come back with a
+     * lastSeq it has, and it skips them.
+     */
+    @GetMapping("/sync")
+    public ResponseEntity<?> sync(
+            @CurrentUser Long userId,
+            @RequestParam(defaultValue = "0") long since) {
+        LocalDateTime sinceTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(Math.max(0, since - commitLagMs)),
+                ZoneId.systemDefault());
+        List<ConversationSyncDTO> changes = mailService.getChangedConversations(userId, sinceTime).stream()
+                .map(c -> new ConversationSyncDTO(c.getPartnerOf(userId), c.getLastSeq(), c.getUpdatedAt()))
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(changes);
+    }
+
     @GetMapping("/{partnerId}")
     public ResponseEntity<?> getChatHistory(
-            @RequestHeader("X-User-Id") Long userId,
-            @PathVariable Long partnerId) {
+            @CurrentUser Long userId,
+            @PathVariable Long partnerId,
+            @RequestParam(required = false) Long afterSeq) {
 
-        List<Message> history = mailService.getChatHistory(userId, partnerId);
+        // With afterSeq only the messages the client doesn't have yet are returned
+        List<Message> history = afterSeq != null
+                ? mailService.getChatHistoryAfterSeq(userId, partnerId, afterSeq)
+                : mailService.getChatHistory(userId, partnerId);
         List<MessageDTO> dtos = history.stream()
                 .map(dtoMapper::toMessageDTO)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(dtos);
     }
 
+    /**
+     * Inbox grouped into threads per (listing, partner), newest activity first.
+     * Optional propertyId narrows it to the threads about one listing.
+     */
+    @GetMapping("/threads")
+    public ResponseEntity<?> getThreads(
+            @CurrentUser Long userId,
+            @RequestParam(required = false) Long propertyId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        size = Math.max(1, Math.min(size, 100));
+        List<MessageThreadView> threads = mailService.getThreads(userId, propertyId, Math.max(page, 0), size);
+
+        Map<Long, User> partners = authService.getUsersMapByIds(
+                threads.stream().map(MessageThreadView::getPartnerId).collect(Collectors.toList()));
+        Map<Long, Property> properties = propertyManager.getPropertiesMapByIds(
+                threads.stream().map(MessageThreadView::getPropertyId).collect(Collectors.toList()));
+
+        List<MessageThreadDTO> dtos = threads.stream()
+                .map(t -> dtoMapper.toMessageThreadDTO(t, partners.get(t.getPartnerId()),
+                        t.getPropertyId() != null ? properties.get(t.getPropertyId()) : null))
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(dtos);
+    }
+
     // ALIAS for /api/messages/partners
     @GetMapping("/partners")
-    public ResponseEntity<?> getPartners(@RequestHeader("X-User-Id") Long userId) {
-        return getConversations(userId);
+    public ResponseEntity<?> getPartners(@CurrentUser AuthenticatedUser caller) {
+        return getConversations(caller);
     }
 
     // ALIAS for /api/messages/chat/{userId}
     @GetMapping("/chat/{partnerId}")
     public ResponseEntity<?> getChat(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser Long userId,
             @PathVariable Long partnerId) {
-        return getChatHistory(userId, partnerId);
+        return getChatHistory(userId, partnerId, null);
     }
 
     @PostMapping
-    public ResponseEntity<?> sendMessage(
-            @RequestHeader("X-User-Id") Long userId,
+    public CompletableFuture<ResponseEntity<?>> sendMessage(
+            @CurrentUser AuthenticatedUser caller,
             @RequestBody MessageRequest request) {
 
-        User sender = authService.getUserById(userId);
+        User sender = caller.getUser();
         if (sender == null)
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
 
         User recipient = null;
         if (request.recipientId() != null) {
@@ -85,27 +219,57 @@ public class MessageController {
         }
 
         if (recipient == null) {
-            return ResponseEntity.badRequest().body("Recipient not found");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("Recipient not found"));
         }
 
-        mailService.sendMessage(sender, recipient.getEmail(), request.content());
-        return ResponseEntity.ok("Message sent");
+        CompletableFuture<Message> sent;
+        try {
+            // Completes once the message is durable (immediately unless group-commit ingestion is enabled)
+            sent = mailService.sendMessageAsync(sender, recipient, request.content(), request.propertyId());
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        return sent
+                .<ResponseEntity<?>>thenApply(saved -> ResponseEntity.ok("Message sent"))
+                .exceptionally(MessageController::sendFailed);
+    }
+
+    // Only a full or stopped ingestion queue is worth retrying (503); bad input is a 400
+    private static ResponseEntity<?> sendFailed(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof IllegalArgumentException) {
+            // Unknown listing, or one that belongs to neither participant
+            return ResponseEntity.badRequest().body(cause.getMessage());
+        }
+        if (cause instanceof DataIntegrityViolationException) {
+            // Recipient or listing deleted after the checks above
+            return ResponseEntity.badRequest().body("Recipient or listing no longer exists");
+        }
+        if (cause instanceof ServiceOverloadedException) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body("Message could not be sent, please retry");
+        }
+        log.error("Failed to send message", cause);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Message could not be sent");
     }
 
     @PostMapping("/send")
-    public ResponseEntity<?> sendMessageAlias(
-            @RequestHeader("X-User-Id") Long userId,
+    public CompletableFuture<ResponseEntity<?>> sendMessageAlias(
+            @CurrentUser AuthenticatedUser caller,
             @RequestBody MessageRequest request) {
-        return sendMessage(userId, request);
+        return sendMessage(caller, request);
     }
 
     // --- New Features ---
 
     @GetMapping("/search")
     public ResponseEntity<?> searchMessages(
-            @RequestHeader("X-User-Id") Long userId,
-            @RequestParam String q) {
-        List<Message> results = mailService.searchMessages(userId, q);
+            @CurrentUser Long userId,
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        size = Math.max(1, Math.min(size, 100));
+        List<Message> results = mailService.searchMessages(userId, q, Math.max(page, 0), size);
         List<MessageDTO> dtos = results.stream()
                 .map(dtoMapper::toMessageDTO)
                 .collect(Collectors.toList());
@@ -114,7 +278,7 @@ public class MessageController {
 
     @DeleteMapping("/chat/{partnerId}")
     public ResponseEntity<?> deleteConversation(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser Long userId,
             @PathVariable Long partnerId) {
         mailService.deleteConversation(userId, partnerId);
         return ResponseEntity.ok("Conversation deleted");
@@ -122,7 +286,7 @@ public class MessageController {
 
     @PostMapping("/block/{blockedId}")
     public ResponseEntity<?> blockUser(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser Long userId,
             @PathVariable Long blockedId) {
         mailService.blockUser(userId, blockedId);
         return ResponseEntity.ok("User blocked");
@@ -130,7 +294,7 @@ public class MessageController {
 
     @DeleteMapping("/block/{blockedId}")
     public ResponseEntity<?> unblockUser(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser Long userId,
             @PathVariable Long blockedId) {
         mailService.unblockUser(userId, blockedId);
         return ResponseEntity.ok("User unblocked");
@@ -138,7 +302,7 @@ public class MessageController {
 
     @GetMapping("/block/{blockedId}")
     public ResponseEntity<Boolean> isBlocked(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser Long userId,
             @PathVariable Long blockedId) {
         boolean blocked = mailService.isBlocked(userId, blockedId);
         return ResponseEntity.ok(blocked);
@@ -1,5 +1,8 @@
 package controllers;
 
+import config.CurrentUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import java.util.Map;
@@ -9,8 +12,10 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class PaymentController {
 
+    private static final Logger log = LoggerFactory.getLogger(PaymentController.class);
+
     @PostMapping("/mock")
-    public ResponseEntity<?> processPayment(@RequestHeader("X-User-Id") Long userId,
+    public ResponseEntity<?> processPayment(@CurrentUser Long userId,
             @RequestBody Map<String, Object> payload) {
         if (userId == null) {
             return ResponseEntity.status(401).build();
@@ -18,7 +23,7 @@ public class PaymentController {
 
         // Mock payment processing
         // Expects "amount", "propertyId" etc.
-        System.out.println("Processing mock payment for user " + userId + ": " + payload);
+        log.info("Processing mock payment userId={} payload={}", userId, payload);
 
         return ResponseEntity.ok(Map.of("status", "success", "transactionId", "MOCK-" + System.currentTimeMillis()));
     }
@@ -1,5 +1,7 @@
 package controllers;
 
+import config.AuthenticatedUser;
+import config.CurrentUser;
 import dtos.DtoMapper;
 import dtos.UserDTO;
 import models.User;
@@ -29,8 +31,8 @@ public class ProfileController {
     }
 
     @GetMapping("/me")
-    public ResponseEntity<?> getMyProfile(@RequestHeader("X-User-Id") Long userId) {
-        User user = authService.getUserById(userId);
+    public ResponseEntity<?> getMyProfile(@CurrentUser AuthenticatedUser caller) {
+        User user = caller.getUser();
         if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
@@ -39,10 +41,10 @@ public class ProfileController {
 
     @PutMapping("/me")
     public ResponseEntity<?> updateProfile(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @RequestBody Map<String, String> updates) {
 
-        User user = authService.getUserById(userId);
+        User user = authService.getUserForUpdate(caller.getUserId());
         if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
@@ -68,10 +70,10 @@ public class ProfileController {
 
     @PostMapping("/avatar")
     public ResponseEntity<?> uploadAvatar(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @RequestParam("file") MultipartFile file) {
 
-        User user = authService.getUserById(userId);
+        User user = authService.getUserForUpdate(caller.getUserId());
         if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
@@ -81,11 +83,13 @@ public class ProfileController {
             // if (user.getAvatarPath() != null)
             // fileUploadService.deleteFile(user.getAvatarPath());
 
-            String path = fileUploadService.saveAvatar(userId, file.getBytes(), file.getOriginalFilename());
+            String path = fileUploadService.saveAvatar(user.getId(), file);
             user.setAvatarPath(path);
             authService.updateUser(user);
 
             return ResponseEntity.ok(Map.of("avatarUrl", fileUploadService.getPublicUrl(path)));
+        } catch (exceptions.UploadRejectedException e) {
+            return ResponseEntity.badRequest().body("Upload failed: " + e.getMessage());
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Upload failed: " + e.getMessage());
         }
@@ -1,5 +1,7 @@
 package controllers;
 
+import config.AuthenticatedUser;
+import config.CurrentUser;
 import dtos.*;
 import models.Property;
 import models.User;
@@ -45,10 +47,12 @@ public class PropertyController {
             @RequestParam(required = false) Double minArea,
             @RequestParam(required = false) Double maxArea,
             @RequestParam(required = false) Double maxDistanceToMetro,
-            @RequestParam(required = false) Double maxDistanceToUniversity) {
+            @RequestParam(required = false) Double maxDistanceToUniversity,
+            @RequestParam(required = false) Double minRating,
+            @RequestParam(required = false) String sort) {
 
         List<Property> properties = propertyManager.search(search, minPrice, maxPrice, rooms, floor, minArea, maxArea,
-                maxDistanceToMetro, maxDistanceToUniversity);
+                maxDistanceToMetro, maxDistanceToUniversity, minRating, sort);
         List<PropertyDTO> dtos = properties.stream()
                 .map(dtoMapper::toPropertyDTO)
                 .collect(Collectors.toList());
@@ -58,7 +62,7 @@ public class PropertyController {
     // ALIASES
     @GetMapping("/guest")
     public ResponseEntity<List<PropertyDTO>> guestBrowse() {
-        return search(null, null, null, null, null, null, null, null, null);
+        return search(null, null, null, null, null, null, null, null, null, null, null);
     }
 
     @GetMapping("/search")
@@ -71,20 +75,22 @@ public class PropertyController {
             @RequestParam(required = false) Double minArea,
             @RequestParam(required = false) Double maxArea,
             @RequestParam(required = false) Double maxDistanceToMetro,
-            @RequestParam(required = false) Double maxDistanceToUniversity) {
+            @RequestParam(required = false) Double maxDistanceToUniversity,
+            @RequestParam(required = false) Double minRating,
+            @RequestParam(required = false) String sort) {
         return search(search, minPrice, maxPrice, rooms, floor, minArea, maxArea, maxDistanceToMetro,
-                maxDistanceToUniversity);
+                maxDistanceToUniversity, minRating, sort);
     }
 
     @GetMapping("/my")
-    public ResponseEntity<List<PropertyDTO>> getMyProperties(@RequestHeader("X-User-Id") Long userId) {
+    public ResponseEntity<List<PropertyDTO>> getMyProperties(@CurrentUser Long userId) {
         List<Property> properties = propertyManager.getMyProperties(userId);
         return ResponseEntity.ok(properties.stream().map(dtoMapper::toPropertyDTO).collect(Collectors.toList()));
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<PropertyWithOwnerDTO> getDetails(
-            @RequestHeader(value = "X-User-Id", required = false) Long userId,
+            @CurrentUser(required = false) AuthenticatedUser caller,
             @PathVariable Long id) {
 
         Optional<Property> propertyOpt = propertyManager.getPropertyById(id);
@@ -98,17 +104,13 @@ public class PropertyController {
         boolean isPublic = property.isVerified() && !property.isArchived();
 
         // Public access (Guests or Buyers viewing others' properties)
-        if (userId == null) {
+        if (caller == null) {
             if (!isPublic)
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
             return ResponseEntity.ok(dtoMapper.toPropertyWithOwnerDTO(property, owner));
         }
 
-        User user = authService.getUserById(userId);
-        boolean isAdmin = user != null && user.getRole().equalsIgnoreCase("admin");
-        boolean isOwner = user != null && property.getOwnerId().equals(userId);
-
-        if (isAdmin || isOwner) {
+        if (caller.isAdmin() || property.getOwnerId().equals(caller.getUserId())) {
             return ResponseEntity.ok(dtoMapper.toPropertyWithOwnerDTO(property, owner));
         }
 
@@ -121,10 +123,10 @@ public class PropertyController {
 
     @PostMapping
     public ResponseEntity<?> addProperty(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @RequestBody PropertyDTO propertyDTO) {
 
-        User user = authService.getUserById(userId);
+        User user = caller.getUser();
         if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not found");
         }
@@ -160,12 +162,11 @@ public class PropertyController {
 
     @PutMapping("/{id}")
     public ResponseEntity<?> updateProperty(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id,
             @RequestBody PropertyDTO dto) {
 
-        User user = authService.getUserById(userId);
-        if (user == null)
+        if (!caller.exists())
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
         Optional<Property> existingOpt = propertyManager.getPropertyById(id);
@@ -174,7 +175,7 @@ public class PropertyController {
 
         Property existing = existingOpt.get();
         // Check ownership
-        if (!existing.getOwnerId().equals(userId) && !user.getRole().equalsIgnoreCase("admin")) {
+        if (!existing.getOwnerId().equals(caller.getUserId()) && !caller.isAdmin()) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Not valid owner");
         }
 
@@ -202,11 +203,10 @@ public class PropertyController {
 
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteProperty(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
 
-        User user = authService.getUserById(userId);
-        if (user == null)
+        if (!caller.exists())
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
         Optional<Property> existingOpt = propertyManager.getPropertyById(id);
@@ -214,7 +214,7 @@ public class PropertyController {
             return ResponseEntity.notFound().build();
 
         Property existing = existingOpt.get();
-        if (!existing.getOwnerId().equals(userId) && !user.getRole().equalsIgnoreCase("admin")) {
+        if (!existing.getOwnerId().equals(caller.getUserId()) && !caller.isAdmin()) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Not valid owner");
         }
 
@@ -224,11 +224,10 @@ public class PropertyController {
 
     @PostMapping("/{id}/verify")
     public ResponseEntity<?> verifyProperty(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
 
-        User user = authService.getUserById(userId);
-        if (user == null || (!user.getRole().equalsIgnoreCase("admin") && !user.getRole().equalsIgnoreCase("agent"))) {
+        if (!caller.hasRole("admin", "agent")) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Only Admins or Agents can verify properties");
         }
 
@@ -238,16 +237,15 @@ public class PropertyController {
 
     @PostMapping("/{id}/archive")
     public ResponseEntity<?> archiveProperty(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @PathVariable Long id) {
 
-        User user = authService.getUserById(userId);
         Optional<Property> existingOpt = propertyManager.getPropertyById(id);
         if (existingOpt.isEmpty())
             return ResponseEntity.notFound().build();
 
         Property existing = existingOpt.get();
-        if (!existing.getOwnerId().equals(userId) && !user.getRole().equalsIgnoreCase("admin")) {
+        if (!existing.getOwnerId().equals(caller.getUserId()) && !caller.isAdmin()) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
@@ -257,11 +255,10 @@ public class PropertyController {
 
     @PostMapping("/{id}/photos")
     public ResponseEntity<?> addPhoto(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser Long userId,
             @PathVariable Long id,
             @RequestParam("file") org.springframework.web.multipart.MultipartFile file) {
 
-        User user = authService.getUserById(userId);
         Optional<Property> existingOpt = propertyManager.getPropertyById(id);
         if (existingOpt.isEmpty())
             return ResponseEntity.notFound().build();
@@ -271,15 +268,13 @@ public class PropertyController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
+        // Moved from the container's spool file into place, never held in memory
         try {
-            // FileUploadService expects arrays, we wrap single file
-            byte[][] filesData = new byte[][] { file.getBytes() };
-            String[] fileNames = new String[] { file.getOriginalFilename() };
-            List<String> paths = fileUploadService.savePropertyPhotos(id, filesData, fileNames);
-            if (!paths.isEmpty()) {
-                propertyManager.addPhotoToProperty(id, paths.get(0));
-            }
+            String path = fileUploadService.savePropertyPhoto(id, file);
+            propertyManager.addPhotoToProperty(id, path);
             return ResponseEntity.ok("Photo added");
+        } catch (exceptions.UploadRejectedException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (java.io.IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error uploading");
         }
@@ -287,11 +282,10 @@ public class PropertyController {
 
     @DeleteMapping("/{id}/photos/{index}")
     public ResponseEntity<?> deletePhoto(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser Long userId,
             @PathVariable Long id,
             @PathVariable int index) {
 
-        User user = authService.getUserById(userId);
         Optional<Property> existingOpt = propertyManager.getPropertyById(id);
         if (existingOpt.isEmpty())
             return ResponseEntity.notFound().build();
@@ -306,11 +300,10 @@ public class PropertyController {
 
     @PostMapping("/{id}/videos")
     public ResponseEntity<?> addVideo(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser Long userId,
             @PathVariable Long id,
             @RequestParam("file") org.springframework.web.multipart.MultipartFile file) {
 
-        User user = authService.getUserById(userId);
         Optional<Property> existingOpt = propertyManager.getPropertyById(id);
         if (existingOpt.isEmpty())
             return ResponseEntity.notFound().build();
@@ -320,15 +313,13 @@ public class PropertyController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
+        // Moved from the container's spool file into place, never held in memory
         try {
-            // FileUploadService expects arrays
-            byte[][] filesData = new byte[][] { file.getBytes() };
-            String[] fileNames = new String[] { file.getOriginalFilename() };
-            List<String> paths = fileUploadService.savePropertyVideos(id, filesData, fileNames);
-            if (!paths.isEmpty()) {
-                propertyManager.addVideoToProperty(id, paths.get(0));
-            }
+            String path = fileUploadService.savePropertyVideo(id, file);
+            propertyManager.addVideoToProperty(id, path);
             return ResponseEntity.ok("Video added");
+        } catch (exceptions.UploadRejectedException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (java.io.IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error uploading video");
         }
@@ -336,11 +327,10 @@ public class PropertyController {
 
     @DeleteMapping("/{id}/videos/{index}")
     public ResponseEntity<?> deleteVideo(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser Long userId,
             @PathVariable Long id,
             @PathVariable int index) {
 
-        User user = authService.getUserById(userId);
         Optional<Property> existingOpt = propertyManager.getPropertyById(id);
         if (existingOpt.isEmpty())
             return ResponseEntity.notFound().build();
@@ -1,5 +1,6 @@
 package controllers;
 
+import config.CurrentUser;
 import dtos.ReportRequest;
 import models.Report;
 import org.springframework.http.ResponseEntity;
@@ -19,7 +20,7 @@ public class ReportController {
 
     @PostMapping
     public ResponseEntity<?> createReport(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser Long userId,
             @RequestBody ReportRequest request) {
 
         if (userId == null) {
@@ -1,16 +1,21 @@
 package controllers;
 
+import config.AuthenticatedUser;
+import config.CurrentUser;
 import dtos.DtoMapper;
-import dtos.ReviewDTO;
+import dtos.ReviewPageDTO;
 import dtos.ReviewRequest;
+import models.Property;
 import models.Review;
 import models.User;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import services.AuthService;
+import services.PropertyManager;
 import services.ReviewService;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -22,38 +27,67 @@ public class ReviewController {
     private final ReviewService reviewService;
     private final AuthService authService;
     private final DtoMapper dtoMapper;
+    private final PropertyManager propertyManager;
 
-    public ReviewController(ReviewService reviewService, AuthService authService, DtoMapper dtoMapper) {
+    public ReviewController(ReviewService reviewService, AuthService authService, DtoMapper dtoMapper,
+            PropertyManager propertyManager) {
         this.reviewService = reviewService;
         this.authService = authService;
         this.dtoMapper = dtoMapper;
+        this.propertyManager = propertyManager;
     }
 
     @GetMapping("/contacted-sellers")
-    public ResponseEntity<List<dtos.UserDTO>> getContactedSellers(@RequestHeader("X-User-Id") Long userId) {
+    public ResponseEntity<List<dtos.UserDTO>> getContactedSellers(@CurrentUser Long userId) {
         List<User> sellers = reviewService.getContactedSellers(userId);
         return ResponseEntity.ok(sellers.stream().map(dtoMapper::toUserDTO).collect(Collectors.toList()));
     }
 
     @GetMapping("/eligible")
-    public ResponseEntity<List<dtos.UserDTO>> getEligibleToReview(@RequestHeader("X-User-Id") Long userId) {
+    public ResponseEntity<List<dtos.UserDTO>> getEligibleToReview(@CurrentUser Long userId) {
         return getContactedSellers(userId);
     }
 
+    /**
+     * Reviews of a user, newest first, with the rating summary.
+     * before/beforeId (epoch micros / review id) come from the previous page.
+     */
     @GetMapping("/{userId}")
-    public ResponseEntity<List<ReviewDTO>> getUserReviews(@PathVariable Long userId) {
-        List<Review> reviews = reviewService.getUserReviews(userId);
-        return ResponseEntity.ok(reviews.stream()
-                .map(dtoMapper::toReviewDTO)
-                .collect(Collectors.toList()));
+    public ResponseEntity<ReviewPageDTO> getUserReviews(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(defaultValue = "20") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, 100));
+        LocalDateTime beforeTime = before != null ? DtoMapper.fromEpochMicros(before) : null;
+        List<Review> reviews = reviewService.getReviewsPage(userId, beforeTime, beforeId, pageSize);
+        User target = authService.getUserById(userId);
+        return ResponseEntity.ok(dtoMapper.toReviewPageDTO(target, reviews, pageSize));
+    }
+
+    /**
+     * Reviews of a listing, newest first, with the listing's rating summary
+     * (same paging parameters as above)
+     */
+    @GetMapping("/property/{propertyId}")
+    public ResponseEntity<ReviewPageDTO> getPropertyReviews(
+            @PathVariable Long propertyId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(defaultValue = "20") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, 100));
+        LocalDateTime beforeTime = before != null ? DtoMapper.fromEpochMicros(before) : null;
+        List<Review> reviews = reviewService.getPropertyReviewsPage(propertyId, beforeTime, beforeId, pageSize);
+        Property property = propertyManager.getPropertyById(propertyId).orElse(null);
+        return ResponseEntity.ok(dtoMapper.toReviewPageDTO(property, reviews, pageSize));
     }
 
     @PostMapping
     public ResponseEntity<?> addReview(
-            @RequestHeader("X-User-Id") Long reviewerId,
+            @CurrentUser AuthenticatedUser caller,
             @RequestBody ReviewRequest request) {
 
-        User reviewer = authService.getUserById(reviewerId);
+        User reviewer = caller.getUser();
         if (reviewer == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
@@ -64,12 +98,17 @@ public class ReviewController {
         // In a real app, we'd refactor ReviewService to return validation errors.
 
         // Simple pre-validation here to match Service logic roughly
-        if (reviewer.getId().equals(request.targetId())) {
+        if (request.propertyId() == null && reviewer.getId().equals(request.targetId())) {
             return ResponseEntity.badRequest().body("Cannot review yourself");
         }
 
         try {
-            reviewService.addReview(reviewer, request.targetId(), (int) request.rating(), request.comment());
+            if (request.propertyId() != null) {
+                reviewService.addPropertyReview(reviewer, request.propertyId(), (int) request.rating(),
+                        request.comment());
+            } else {
+                reviewService.addReview(reviewer, request.targetId(), (int) request.rating(), request.comment());
+            }
             return ResponseEntity.ok("Review submitted");
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
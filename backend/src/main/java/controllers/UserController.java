@@ -1,5 +1,7 @@
 package controllers;
 
+import config.AuthenticatedUser;
+import config.CurrentUser;
 import java.io.IOException;
 
 import org.springframework.http.HttpStatus;
@@ -8,7 +10,6 @@ import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -45,10 +46,8 @@ public class UserController {
     }
 
     @GetMapping("/me")
-    public ResponseEntity<?> getCurrentUser(@RequestHeader("X-User-Id") Long userId) {
-        if (userId == null)
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        User user = authService.getUserById(userId);
+    public ResponseEntity<?> getCurrentUser(@CurrentUser AuthenticatedUser caller) {
+        User user = caller.getUser();
         if (user == null) {
             return ResponseEntity.notFound().build();
         }
@@ -57,12 +56,10 @@ public class UserController {
 
     @GetMapping("/find-by-email")
     public ResponseEntity<?> findUserByEmail(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @RequestParam String email) {
 
-        if (userId == null)
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        User currentUser = authService.getUserById(userId);
+        User currentUser = caller.getUser();
         if (currentUser == null)
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
@@ -81,7 +78,7 @@ public class UserController {
             }
         }
 
-        if (match.getId().equals(userId)) {
+        if (match.getId().equals(currentUser.getId())) {
             return ResponseEntity.badRequest().body("You cannot chat with yourself");
         }
 
@@ -94,7 +91,7 @@ public class UserController {
 
     @PostMapping("/{id}/upload-id")
     public ResponseEntity<?> uploadIdDocument(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser Long userId,
             @PathVariable Long id,
             @RequestParam("file") MultipartFile file) {
 
@@ -102,17 +99,19 @@ public class UserController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Cannot upload for another user");
         }
 
-        User user = authService.getUserById(id);
+        User user = authService.getUserForUpdate(id);
         if (user == null) {
             return ResponseEntity.notFound().build();
         }
 
         try {
-            String path = idUploadService.uploadIDDocument(id, file.getBytes(), file.getOriginalFilename());
+            String path = idUploadService.uploadIDDocument(id, file);
             user.setIdDocumentPath(path);
             // Persist the updated user via AuthService (which delegates to the repository)
             authService.updateUser(user);
             return ResponseEntity.ok("ID Document uploaded: " + path);
+        } catch (exceptions.UploadRejectedException e) {
+            return ResponseEntity.badRequest().body("Upload failed: " + e.getMessage());
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Upload failed: " + e.getMessage());
         }
@@ -1,5 +1,7 @@
 package controllers;
 
+import config.AuthenticatedUser;
+import config.CurrentUser;
 import models.User;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -26,10 +28,10 @@ public class VerificationController {
 
     @PostMapping("/upload-id")
     public ResponseEntity<?> uploadId(
-            @RequestHeader("X-User-Id") Long userId,
+            @CurrentUser AuthenticatedUser caller,
             @RequestParam("file") MultipartFile file) {
 
-        User user = authService.getUserById(userId);
+        User user = authService.getUserForUpdate(caller.getUserId());
         if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
@@ -41,7 +43,7 @@ public class VerificationController {
         }
 
         try {
-            String path = fileUploadService.saveIdDocument(userId, file.getBytes(), file.getOriginalFilename());
+            String path = fileUploadService.saveIdDocument(user.getId(), file);
 
             user.setIdDocumentPath(path);
             user.setIdVerified(false); // Reset to pending if re-uploaded
@@ -50,6 +52,8 @@ public class VerificationController {
             authService.updateUser(user);
 
             return ResponseEntity.ok("ID uploaded successfully. Pending admin approval.");
+        } catch (exceptions.UploadRejectedException e) {
+            return ResponseEntity.badRequest().body("Upload failed: " + e.getMessage());
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Upload failed: " + e.getMessage());
         }
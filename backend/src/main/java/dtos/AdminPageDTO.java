@@ -0,0 +1,13 @@
+package dtos;
+
+import java.util.List;
+
+/**
+ * One keyset page of an admin listing.
+ * Pass nextCursor back as cursor (with the same sort) for the next page;
+ * it is null on the last page.
+ */
+public record AdminPageDTO<T>(
+        List<T> items,
+        Long nextCursor) {
+}
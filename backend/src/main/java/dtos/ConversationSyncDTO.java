@@ -0,0 +1,6 @@
+package dtos;
+
+import java.time.LocalDateTime;
+
+public record ConversationSyncDTO(Long partnerId, long lastSeq, LocalDateTime updatedAt) {
+}
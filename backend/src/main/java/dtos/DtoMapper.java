@@ -4,10 +4,17 @@ import models.User;
 import models.Property;
 import models.Report;
 import models.Message;
+import models.RatingHistogram;
 import models.Review;
 import org.springframework.stereotype.Component;
+import repositories.MessageThreadView;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
 import java.util.Collections;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 public class DtoMapper {
@@ -89,7 +96,24 @@ public class DtoMapper {
                 message.getPropertyId(),
                 message.getText(),
                 message.getTimestamp(),
-                message.isRead());
+                message.isRead(),
+                message.getSeq());
+    }
+
+    public MessageThreadDTO toMessageThreadDTO(MessageThreadView thread, User partner, Property property) {
+        if (thread == null)
+            return null;
+        return new MessageThreadDTO(
+                thread.getPropertyId(),
+                property != null ? property.getTitle() : null,
+                thread.getPartnerId(),
+                partner != null ? partner.getName() : null,
+                thread.getMessageCount(),
+                thread.getUnreadCount(),
+                thread.getLastMessageId(),
+                thread.getLastSenderId(),
+                thread.getLastText(),
+                thread.getLastTimestamp());
     }
 
     public ReportDTO toReportDTO(Report report) {
@@ -115,8 +139,64 @@ public class DtoMapper {
                 review.getTargetUserId(),
                 review.getRating(),
                 review.getComment(),
-                0L // Review model doesn't have timestamp yet, returning 0
-        );
+                toEpochMillis(review.getCreatedAt()),
+                review.getPropertyId());
+    }
+
+    /**
+     * A page of reviews plus the target's aggregates. The next-page cursor is
+     * the last review of this page, or null when the page was not full.
+     */
+    public ReviewPageDTO toReviewPageDTO(User target, List<Review> reviews, int limit) {
+        return toReviewPageDTO(reviews, limit,
+                target != null ? target.getAverageRating() : 0.0,
+                target != null ? target.getReviewCount() : 0,
+                target != null ? target.getRatingHistogram() : new RatingHistogram());
+    }
+
+    public ReviewPageDTO toReviewPageDTO(Property property, List<Review> reviews, int limit) {
+        return toReviewPageDTO(reviews, limit,
+                property != null ? property.getRatingAverage() : 0.0,
+                property != null ? property.getRatingCount() : 0,
+                property != null ? property.getRatingHistogram() : new RatingHistogram());
+    }
+
+    private ReviewPageDTO toReviewPageDTO(List<Review> reviews, int limit, double average, int count,
+            RatingHistogram histogram) {
+        Review last = reviews.size() == limit && !reviews.isEmpty() ? reviews.get(reviews.size() - 1) : null;
+        return new ReviewPageDTO(
+                reviews.stream().map(this::toReviewDTO).collect(Collectors.toList()),
+                average,
+                count,
+                histogram.toMap(),
+                last != null ? toEpochMicros(last.getCreatedAt()) : null,
+                last != null ? last.getId() : null);
+    }
+
+    /**
+     * Wrap one page of an admin listing; rows must be in page order
+     */
+    public <E, T> AdminPageDTO<T> toAdminPageDTO(List<E> rows, int limit, Function<E, Long> idOf,
+            Function<E, T> mapper) {
+        Long nextCursor = rows.size() == limit && !rows.isEmpty() ? idOf.apply(rows.get(rows.size() - 1)) : null;
+        return new AdminPageDTO<>(rows.stream().map(mapper).collect(Collectors.toList()), nextCursor);
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time != null ? time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0L;
+    }
+
+    // Review cursors keep the full (microsecond) precision of the stored
+    // timestamp; a millisecond cursor would skip rows later in the same millisecond
+    private static long toEpochMicros(LocalDateTime time) {
+        Instant instant = time.atZone(ZoneId.systemDefault()).toInstant();
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+
+    public static LocalDateTime fromEpochMicros(long micros) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                Math.floorMod(micros, 1_000_000L) * 1_000L);
+        return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
     }
 
     public AdminUnverifiedPropertyDTO toAdminUnverifiedPropertyDTO(Property property, User owner) {
@@ -0,0 +1,12 @@
+package dtos;
+
+public record LeaderboardEntryDTO(
+        int rank,
+        Long userId,
+        String name,
+        String role,
+        String city,
+        double averageRating,
+        int reviewCount,
+        double score) {
+}
@@ -9,5 +9,6 @@ public record MessageDTO(
         Long propertyId,
         String text,
         LocalDateTime timestamp,
-        boolean isRead) {
+        boolean isRead,
+        Long seq) {
 }
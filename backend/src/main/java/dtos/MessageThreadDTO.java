@@ -0,0 +1,16 @@
+package dtos;
+
+import java.time.LocalDateTime;
+
+public record MessageThreadDTO(
+        Long propertyId,
+        String propertyTitle,
+        Long partnerId,
+        String partnerName,
+        long messageCount,
+        long unreadCount,
+        Long lastMessageId,
+        Long lastSenderId,
+        String lastText,
+        LocalDateTime lastTimestamp) {
+}
@@ -0,0 +1,4 @@
+package dtos;
+
+public record PasswordResetConfirmRequest(String email, String code, String newPassword) {
+}
@@ -0,0 +1,4 @@
+package dtos;
+
+public record PasswordResetRequest(String email) {
+}
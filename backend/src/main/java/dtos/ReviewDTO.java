@@ -1,4 +1,5 @@
 package dtos;
 
-public record ReviewDTO(Long reviewerId, Long targetUserId, double rating, String comment, long timestamp) {
+public record ReviewDTO(Long reviewerId, Long targetUserId, double rating, String comment, long timestamp,
+        Long propertyId) {
 }
@@ -0,0 +1,19 @@
+package dtos;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One keyset page of reviews with the target's rating summary.
+ * histogram maps 1..5 stars to the number of reviews with that rating.
+ * Pass nextBefore/nextBeforeId back as before/beforeId for the next page
+ * (both null on the last page). nextBefore is in epoch microseconds.
+ */
+public record ReviewPageDTO(
+        List<ReviewDTO> reviews,
+        double averageRating,
+        int reviewCount,
+        Map<Integer, Integer> histogram,
+        Long nextBefore,
+        Long nextBeforeId) {
+}
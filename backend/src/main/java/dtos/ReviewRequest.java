@@ -1,4 +1,5 @@
 package dtos;
 
-public record ReviewRequest(Long targetId, double rating, String comment) {
+// propertyId set: review of that listing (targetId is ignored)
+public record ReviewRequest(Long targetId, double rating, String comment, Long propertyId) {
 }
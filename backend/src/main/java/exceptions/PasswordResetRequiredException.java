@@ -0,0 +1,7 @@
+package exceptions;
+
+public class PasswordResetRequiredException extends AuthException {
+    public PasswordResetRequiredException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package exceptions;
+
+/**
+ * Thrown when a bounded resource (e.g. the password hashing pool) is saturated
+ * and the request is refused instead of queued. Callers should answer 503.
+ */
+public class ServiceOverloadedException extends RuntimeException {
+    public ServiceOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package exceptions;
+
+/**
+ * Thrown when an uploaded file is refused (wrong type, or larger than the
+ * limit). Callers should answer 400; other
+ * IOExceptions from an upload are server-side failures.
+ */
+public class UploadRejectedException extends java.io.IOException {
+    public UploadRejectedException(String message) {
+        super(message);
+    }
+}
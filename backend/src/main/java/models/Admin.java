@@ -18,4 +18,9 @@ public class Admin extends User {
     public Admin(Long id, String name, String email, String password, boolean isVerified, String governmentId) {
         super(id, name, email, "admin", password, isVerified, governmentId);
     }
+
+    @Override
+    protected User newInstance() {
+        return new Admin();
+    }
 }
@@ -18,4 +18,9 @@ public class Agent extends User {
     public Agent(Long id, String name, String email, String password, boolean isVerified, String governmentId) {
         super(id, name, email, "agent", password, isVerified, governmentId);
     }
+
+    @Override
+    protected User newInstance() {
+        return new Agent();
+    }
 }
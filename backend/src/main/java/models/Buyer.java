@@ -18,5 +18,10 @@ public class Buyer extends User {
         super(id, name, email, "buyer", password, isVerified, governmentId);
     }
 
+    @Override
+    protected User newInstance() {
+        return new Buyer();
+    }
+
     // UI removed
 }
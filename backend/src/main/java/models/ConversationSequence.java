@@ -0,0 +1,65 @@
+package models;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Per-conversation message counter. Every message of the conversation between
+ * userA and userB (userA < userB) gets the next value of lastSeq, assigned in
+ * the same transaction as the insert, so sequence numbers have no gaps.
+ * Blocked messages, which the recipient never sees, get no number.
+ * updatedAt drives incremental sync ("which conversations changed?").
+ */
+@Entity
+@Table(name = "conversation_sequences", uniqueConstraints = {
+        @UniqueConstraint(columnNames = { "user_a", "user_b" })
+}, indexes = {
+        @Index(name = "idx_conversation_sequences_user_a", columnList = "user_a, updated_at"),
+        @Index(name = "idx_conversation_sequences_user_b", columnList = "user_b, updated_at")
+})
+public class ConversationSequence {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_a", nullable = false)
+    private Long userA;
+
+    @Column(name = "user_b", nullable = false)
+    private Long userB;
+
+    @Column(name = "last_seq", nullable = false)
+    private long lastSeq;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    protected ConversationSequence() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getUserA() {
+        return userA;
+    }
+
+    public Long getUserB() {
+        return userB;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    // The other participant from the point of view of userId
+    public Long getPartnerOf(Long userId) {
+        return userA.equals(userId) ? userB : userA;
+    }
+}
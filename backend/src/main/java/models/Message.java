@@ -21,6 +21,7 @@ public class Message {
     private LocalDateTime timestamp;
     private boolean isRead;
     private Boolean isBlocked = false; // changed to Boolean to allow nulls during migration
+    private Long seq; // Per-conversation sequence number, see ConversationSequence
 
     protected Message() {
         // JPA requires no-arg constructor
@@ -43,6 +44,10 @@ public class Message {
         return id;
     }
 
+    public void setId(Long id) {
+        this.id = id;
+    }
+
     public Long getSenderId() {
         return senderId;
     }
@@ -63,6 +68,18 @@ public class Message {
         return timestamp;
     }
 
+    public void setTimestamp(LocalDateTime timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+
     public boolean isRead() {
         return isRead;
     }
@@ -86,6 +103,7 @@ public class Message {
                 ", sender=" + senderId +
                 ", recipient=" + recipientId +
                 ", prop=" + propertyId +
+                ", seq=" + seq +
                 ", time=" + timestamp +
                 ", read=" + isRead +
                 ", blocked=" + isBlocked +
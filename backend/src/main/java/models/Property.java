@@ -71,10 +71,22 @@ public class Property {
 
     private boolean isVerified;
 
+    // Listing review aggregates, written only by PropertyRepository.applyRatingChange
+    // and RatingBackfillJob (never by saving the entity). Plain columns so
+    // search can filter/sort on them without joining reviews.
+    @Column(updatable = false)
     private double ratingAverage;
 
+    @Column(updatable = false)
     private int ratingCount;
 
+    // Sum of all ratings (null for rows created before it existed)
+    @Column(updatable = false)
+    private Long ratingSum;
+
+    @Embedded
+    private RatingHistogram ratingHistogram = new RatingHistogram();
+
     // JPA requires a no-arg constructor
     protected Property() {
     }
@@ -101,6 +113,7 @@ public class Property {
         this.isVerified = isVerified;
         this.ratingAverage = 0.0;
         this.ratingCount = 0;
+        this.ratingSum = 0L;
     }
 
     // Constructor for Property Creation (PropertyController)
@@ -125,6 +138,7 @@ public class Property {
         this.isVerified = false;
         this.ratingAverage = 0.0;
         this.ratingCount = 0;
+        this.ratingSum = 0L;
     }
 
     public Property(long timeMillis, String name2, String location2, double price2) {
@@ -302,6 +316,15 @@ public class Property {
         this.ratingCount = ratingCount;
     }
 
+    public long getRatingSum() {
+        return ratingSum != null ? ratingSum : 0L;
+    }
+
+    public RatingHistogram getRatingHistogram() {
+        // Hibernate leaves the embeddable null when all its columns are null
+        return ratingHistogram != null ? ratingHistogram : new RatingHistogram();
+    }
+
     // toString method for displaying property details
     @Override
     public String toString() {
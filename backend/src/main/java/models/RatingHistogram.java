@@ -0,0 +1,55 @@
+package models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Number of 1..5 star ratings received. Maintained incrementally by the same
+ * UPDATE that maintains the rating sum/count, never by saving the owning
+ * entity (hence updatable = false).
+ */
+@Embeddable
+public class RatingHistogram {
+
+    // Nullable so the columns can be added to existing rows
+    @Column(updatable = false)
+    private Integer stars1 = 0;
+    @Column(updatable = false)
+    private Integer stars2 = 0;
+    @Column(updatable = false)
+    private Integer stars3 = 0;
+    @Column(updatable = false)
+    private Integer stars4 = 0;
+    @Column(updatable = false)
+    private Integer stars5 = 0;
+
+    public RatingHistogram() {
+    }
+
+    public int getCount(int stars) {
+        Integer count;
+        switch (stars) {
+            case 1 -> count = stars1;
+            case 2 -> count = stars2;
+            case 3 -> count = stars3;
+            case 4 -> count = stars4;
+            case 5 -> count = stars5;
+            default -> throw new IllegalArgumentException("Stars must be between 1 and 5.");
+        }
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Counts keyed by star value, 1 to 5
+     */
+    public Map<Integer, Integer> toMap() {
+        Map<Integer, Integer> counts = new LinkedHashMap<>();
+        for (int stars = 1; stars <= 5; stars++) {
+            counts.put(stars, getCount(stars));
+        }
+        return counts;
+    }
+}
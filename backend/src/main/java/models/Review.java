@@ -5,6 +5,7 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "reviews")
@@ -14,9 +15,11 @@ public class Review {
     private Long id;
 
     private Long reviewerId;
-    private Long targetUserId;
+    private Long targetUserId; // For a listing review: the listing's owner
+    private Long propertyId; // Set for reviews of a listing, null for reviews of a user
     private int rating; // 1-5
     private String comment;
+    private LocalDateTime createdAt;
 
     protected Review() {
     }
@@ -26,6 +29,12 @@ public class Review {
         this.targetUserId = targetUserId;
         this.rating = rating;
         this.comment = comment;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public Review(Long reviewerId, Long targetUserId, Long propertyId, int rating, String comment) {
+        this(reviewerId, targetUserId, rating, comment);
+        this.propertyId = propertyId;
     }
 
     public Long getId() {
@@ -40,6 +49,10 @@ public class Review {
         return targetUserId;
     }
 
+    public Long getPropertyId() {
+        return propertyId;
+    }
+
     public int getRating() {
         return rating;
     }
@@ -48,6 +61,10 @@ public class Review {
         return comment;
     }
 
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
     public void setRating(int rating) {
         this.rating = rating;
     }
@@ -61,6 +78,7 @@ public class Review {
         return "Review{" +
                 "reviewer=" + reviewerId +
                 ", target=" + targetUserId +
+                ", property=" + propertyId +
                 ", rating=" + rating +
                 ", comment='" + comment + '\'' +
                 '}';
@@ -18,4 +18,9 @@ public class Seller extends User {
     public Seller(Long id, String name, String email, String password, boolean isVerified, String governmentId) {
         super(id, name, email, "seller", password, isVerified, governmentId);
     }
+
+    @Override
+    protected User newInstance() {
+        return new Seller();
+    }
 }
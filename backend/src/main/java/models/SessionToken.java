@@ -1,6 +1,8 @@
 package models;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.UUID;
 
 /**
@@ -11,23 +13,43 @@ public class SessionToken {
     private Long userId;
     private LocalDateTime createdAt;
     private LocalDateTime expiryTime;
+    // Same instant as expiryTime, as epoch millis, so checks need no date arithmetic
+    private volatile long expiresAtMillis;
 
     public SessionToken(Long userId, int expiryMinutes) {
         this.token = UUID.randomUUID().toString();
         this.userId = userId;
-        this.createdAt = LocalDateTime.now();
-        this.expiryTime = this.createdAt.plusMinutes(expiryMinutes);
+        long now = System.currentTimeMillis();
+        this.createdAt = toLocalDateTime(now);
+        setExpiresAtMillis(now + expiryMinutes * 60_000L);
     }
 
     public SessionToken(String token, Long userId, LocalDateTime createdAt, LocalDateTime expiryTime) {
         this.token = token;
         this.userId = userId;
         this.createdAt = createdAt;
-        this.expiryTime = expiryTime;
+        setExpiryTime(expiryTime);
     }
 
     public boolean isExpired() {
-        return LocalDateTime.now().isAfter(expiryTime);
+        return isExpired(System.currentTimeMillis());
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return nowMillis > expiresAtMillis;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public void setExpiresAtMillis(long expiresAtMillis) {
+        this.expiresAtMillis = expiresAtMillis;
+        this.expiryTime = toLocalDateTime(expiresAtMillis);
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
     }
 
     // Getters and Setters
@@ -61,6 +83,7 @@ public class SessionToken {
 
     public void setExpiryTime(LocalDateTime expiryTime) {
         this.expiryTime = expiryTime;
+        this.expiresAtMillis = expiryTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
     @Override
@@ -11,6 +11,7 @@ package models;
  */
 
 import jakarta.persistence.Column;
+import jakarta.persistence.Embedded;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
@@ -33,6 +34,10 @@ public abstract class User {
     @Column(nullable = false, unique = true)
     private String email;
 
+    // Trimmed, lower-cased email for case-insensitive lookups
+    // (unique index idx_users_email_normalized in schema.sql)
+    private String emailNormalized;
+
     @Column(nullable = false)
     private String role;
 
@@ -56,16 +61,22 @@ public abstract class User {
     // Path to uploaded ID document
     private String idDocumentPath;
 
-    // Renamed from rating for clarity
+    // Rating aggregates are written only by UserRepository.applyRatingChange
+    // (one atomic UPDATE per review), never by saving the entity, so a
+    // concurrent profile update cannot overwrite them with stale values.
+    // Renamed from rating for clarity; kept in sync for SQL ordering/filtering
+    @Column(updatable = false)
     private double averageRating;
 
+    @Column(updatable = false)
     private int reviewCount;
 
-    // Temporary email verification code
-    private String verificationCode;
+    // Sum of all received ratings (null for rows created before it existed)
+    @Column(updatable = false)
+    private Long ratingSum;
 
-    // Expiry timestamp for verification code
-    private long verificationCodeExpiry;
+    @Embedded
+    private RatingHistogram ratingHistogram = new RatingHistogram();
 
     // Profile Fields
     private String avatarPath;
@@ -85,6 +96,7 @@ public abstract class User {
         this.id = id;
         this.name = name;
         this.email = email;
+        this.emailNormalized = normalizeEmail(email);
         this.role = role;
         this.password = password;
         this.isVerified = isVerified;
@@ -95,8 +107,7 @@ public abstract class User {
         this.idDocumentPath = null;
         this.averageRating = 0.0;
         this.reviewCount = 0;
-        this.verificationCode = null;
-        this.verificationCodeExpiry = 0;
+        this.ratingSum = 0L;
     }
 
     // Setters for services removed
@@ -124,6 +135,11 @@ public abstract class User {
 
     public void setEmail(String email) {
         this.email = email;
+        this.emailNormalized = normalizeEmail(email);
+    }
+
+    public static String normalizeEmail(String email) {
+        return email != null ? email.trim().toLowerCase(java.util.Locale.ROOT) : null;
     }
 
     public String getRole() {
@@ -190,8 +206,14 @@ public abstract class User {
         this.idDocumentPath = idDocumentPath;
     }
 
+    /**
+     * Average derived from the running sum and count
+     */
     public double getAverageRating() {
-        return averageRating;
+        if (ratingSum == null) {
+            return averageRating;
+        }
+        return reviewCount == 0 ? 0.0 : (double) ratingSum / reviewCount;
     }
 
     public void setAverageRating(double averageRating) {
@@ -200,7 +222,7 @@ public abstract class User {
 
     // Legacy getter for compatibility
     public double getRating() {
-        return averageRating;
+        return getAverageRating();
     }
 
     // Legacy setter for compatibility
@@ -216,20 +238,13 @@ public abstract class User {
         this.reviewCount = reviewCount;
     }
 
-    public String getVerificationCode() {
-        return verificationCode;
-    }
-
-    public void setVerificationCode(String verificationCode) {
-        this.verificationCode = verificationCode;
-    }
-
-    public long getVerificationCodeExpiry() {
-        return verificationCodeExpiry;
+    public long getRatingSum() {
+        return ratingSum != null ? ratingSum : 0L;
     }
 
-    public void setVerificationCodeExpiry(long verificationCodeExpiry) {
-        this.verificationCodeExpiry = verificationCodeExpiry;
+    public RatingHistogram getRatingHistogram() {
+        // Hibernate leaves the embeddable null when all its columns are null
+        return ratingHistogram != null ? ratingHistogram : new RatingHistogram();
     }
 
     public String getAvatarPath() {
@@ -272,6 +287,40 @@ public abstract class User {
         this.occupation = occupation;
     }
 
+    /**
+     * Detached copy with the same id and values. UserCache hands out copies so
+     * requests never share (and half-see each other's changes to) one instance.
+     */
+    public User copy() {
+        User copy = newInstance();
+        copy.id = id;
+        copy.name = name;
+        copy.email = email;
+        copy.emailNormalized = emailNormalized;
+        copy.role = role;
+        copy.password = password;
+        copy.isVerified = isVerified;
+        copy.emailVerified = emailVerified;
+        copy.idVerified = idVerified;
+        copy.isApproved = isApproved;
+        copy.governmentId = governmentId;
+        copy.idDocumentPath = idDocumentPath;
+        copy.averageRating = averageRating;
+        copy.reviewCount = reviewCount;
+        copy.ratingSum = ratingSum;
+        // No setters, so the histogram can be shared
+        copy.ratingHistogram = ratingHistogram;
+        copy.avatarPath = avatarPath;
+        copy.bio = bio;
+        copy.phoneNumber = phoneNumber;
+        copy.city = city;
+        copy.occupation = occupation;
+        return copy;
+    }
+
+    // Empty instance of the concrete role class, for copy()
+    protected abstract User newInstance();
+
     // Chat UI removed for Spring Boot migration
 
     // Abstract method to display the menu for the user
@@ -288,7 +337,7 @@ public abstract class User {
                 ", emailVerified=" + emailVerified +
                 ", idVerified=" + idVerified +
                 ", isApproved=" + isApproved +
-                ", rating=" + averageRating +
+                ", rating=" + getAverageRating() +
                 '}';
     }
 }
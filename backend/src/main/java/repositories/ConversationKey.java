@@ -0,0 +1,11 @@
+package repositories;
+
+/**
+ * A conversation identified by its two participants (userA < userB)
+ */
+public interface ConversationKey {
+
+    Long getUserA();
+
+    Long getUserB();
+}
@@ -0,0 +1,17 @@
+package repositories;
+
+import models.ConversationSequence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface ConversationSequenceRepository extends JpaRepository<ConversationSequence, Long> {
+
+    // Conversations of a user that changed after the given time, oldest change first
+    @Query("SELECT c FROM ConversationSequence c WHERE (c.userA = :userId OR c.userB = :userId) "
+            + "AND c.updatedAt > :since ORDER BY c.updatedAt")
+    List<ConversationSequence> findChangedSince(@Param("userId") Long userId, @Param("since") LocalDateTime since);
+}
@@ -2,6 +2,7 @@ package repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import models.Message;
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
@@ -9,6 +10,13 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     // Find messages where user is recipient
     List<Message> findByRecipientId(Long recipientId);
 
+    // Find messages delivered to a user after a known message id, plus those
+    // stamped since overlapSince whatever their id (long-poll catch-up)
+    @org.springframework.data.jpa.repository.Query("SELECT m FROM Message m WHERE m.recipientId = :recipientId AND (m.id > :afterId OR m.timestamp >= :overlapSince) ORDER BY m.id")
+    List<Message> findInboxAfter(@org.springframework.data.repository.query.Param("recipientId") Long recipientId,
+            @org.springframework.data.repository.query.Param("afterId") Long afterId,
+            @org.springframework.data.repository.query.Param("overlapSince") LocalDateTime overlapSince);
+
     // Find messages where user is sender
     List<Message> findBySenderId(Long senderId);
 
@@ -18,10 +26,87 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     // Check if conversation exists (simplification for "hasUserContacted")
     boolean existsBySenderIdAndRecipientId(Long senderId, Long recipientId);
 
-    // Search messages for a user
-    @org.springframework.data.jpa.repository.Query("SELECT m FROM Message m WHERE (m.senderId = :userId OR m.recipientId = :userId) AND LOWER(m.text) LIKE LOWER(CONCAT('%', :query, '%'))")
+    // Distinct users this user has exchanged messages with, most recent conversation first
+    @org.springframework.data.jpa.repository.Query(value = "SELECT t.partner_id FROM ("
+            + "SELECT m.recipient_id AS partner_id, m.timestamp FROM messages m WHERE m.sender_id = :userId "
+            + "UNION ALL "
+            + "SELECT m.sender_id AS partner_id, m.timestamp FROM messages m WHERE m.recipient_id = :userId"
+            + ") t GROUP BY t.partner_id ORDER BY MAX(t.timestamp) DESC", nativeQuery = true)
+    List<Long> findChatPartnerIds(@org.springframework.data.repository.query.Param("userId") Long userId);
+
+    // Conversation threads of a user grouped per (listing, partner), newest activity
+    // first, with message/unread counts and the latest message of each thread.
+    // propertyId optionally restricts the result to one listing.
+    @org.springframework.data.jpa.repository.Query(value = "SELECT g.property_id AS propertyId, "
+            + "g.partner_id AS partnerId, g.message_count AS messageCount, g.unread_count AS unreadCount, "
+            + "lm.id AS lastMessageId, lm.sender_id AS lastSenderId, lm.text AS lastText, "
+            + "lm.timestamp AS lastTimestamp "
+            + "FROM (SELECT m.property_id, "
+            + "CASE WHEN m.sender_id = :userId THEN m.recipient_id ELSE m.sender_id END AS partner_id, "
+            + "COUNT(*) AS message_count, "
+            + "COUNT(*) FILTER (WHERE m.recipient_id = :userId AND m.is_read = false) AS unread_count, "
+            + "MAX(m.id) AS last_id "
+            + "FROM messages m "
+            + "WHERE (m.sender_id = :userId OR (m.recipient_id = :userId AND m.is_blocked IS NOT TRUE)) "
+            + "AND (CAST(:propertyId AS bigint) IS NULL OR m.property_id = :propertyId) "
+            + "GROUP BY m.property_id, partner_id) g "
+            + "JOIN messages lm ON lm.id = g.last_id "
+            + "ORDER BY lm.timestamp DESC", nativeQuery = true)
+    List<repositories.MessageThreadView> findThreads(
+            @org.springframework.data.repository.query.Param("userId") Long userId,
+            @org.springframework.data.repository.query.Param("propertyId") Long propertyId,
+            org.springframework.data.domain.Pageable pageable);
+
+    // Distinct users this user has sent at least one message to
+    @org.springframework.data.jpa.repository.Query("SELECT DISTINCT m.recipientId FROM Message m "
+            + "WHERE m.senderId = :senderId AND m.recipientId <> :senderId")
+    List<Long> findContactedUserIds(@org.springframework.data.repository.query.Param("senderId") Long senderId);
+
+    // Full-text search over a user's messages, best match first.
+    // Served by the GIN index idx_messages_text_fts (see schema.sql); the
+    // to_tsvector expression must stay identical to the indexed one.
+    @org.springframework.data.jpa.repository.Query(value = "SELECT m.* FROM messages m "
+            + "WHERE (m.sender_id = :userId OR m.recipient_id = :userId) "
+            + "AND (m.sender_id = :userId OR m.is_blocked IS NOT TRUE) "
+            + "AND to_tsvector('simple', coalesce(m.text, '')) @@ to_tsquery('simple', :tsQuery) "
+            + "ORDER BY ts_rank(to_tsvector('simple', coalesce(m.text, '')), to_tsquery('simple', :tsQuery)) DESC, "
+            + "m.timestamp DESC", nativeQuery = true)
     List<Message> searchMessages(@org.springframework.data.repository.query.Param("userId") Long userId,
-            @org.springframework.data.repository.query.Param("query") String query);
+            @org.springframework.data.repository.query.Param("tsQuery") String tsQuery,
+            org.springframework.data.domain.Pageable pageable);
+
+    // Conversations whose latest message is older than the cutoff (archiving candidates),
+    // in (userA, userB) order after the given conversation, so a sweep can page past
+    // conversations it could not archive
+    @org.springframework.data.jpa.repository.Query(value = "SELECT LEAST(m.sender_id, m.recipient_id) AS userA, "
+            + "GREATEST(m.sender_id, m.recipient_id) AS userB FROM messages m "
+            + "WHERE (LEAST(m.sender_id, m.recipient_id), GREATEST(m.sender_id, m.recipient_id)) "
+            + "> (:afterUserA, :afterUserB) "
+            + "GROUP BY LEAST(m.sender_id, m.recipient_id), GREATEST(m.sender_id, m.recipient_id) "
+            + "HAVING MAX(m.timestamp) < :cutoff "
+            + "ORDER BY LEAST(m.sender_id, m.recipient_id), GREATEST(m.sender_id, m.recipient_id)",
+            nativeQuery = true)
+    List<repositories.ConversationKey> findIdleConversations(
+            @org.springframework.data.repository.query.Param("cutoff") LocalDateTime cutoff,
+            @org.springframework.data.repository.query.Param("afterUserA") long afterUserA,
+            @org.springframework.data.repository.query.Param("afterUserB") long afterUserB,
+            org.springframework.data.domain.Pageable pageable);
+
+    // All messages between two users in both directions, oldest first
+    @org.springframework.data.jpa.repository.Query("SELECT m FROM Message m WHERE (m.senderId = :user1Id AND m.recipientId = :user2Id) OR (m.senderId = :user2Id AND m.recipientId = :user1Id) ORDER BY m.timestamp, m.id")
+    List<Message> findConversationMessages(@org.springframework.data.repository.query.Param("user1Id") Long user1Id,
+            @org.springframework.data.repository.query.Param("user2Id") Long user2Id);
+
+    // Messages of a conversation with a sequence number above afterSeq (incremental sync)
+    @org.springframework.data.jpa.repository.Query("SELECT m FROM Message m WHERE ((m.senderId = :user1Id AND m.recipientId = :user2Id) OR (m.senderId = :user2Id AND m.recipientId = :user1Id)) AND m.seq > :afterSeq ORDER BY m.seq")
+    List<Message> findConversationAfterSeq(@org.springframework.data.repository.query.Param("user1Id") Long user1Id,
+            @org.springframework.data.repository.query.Param("user2Id") Long user2Id,
+            @org.springframework.data.repository.query.Param("afterSeq") Long afterSeq);
+
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Query("DELETE FROM Message m WHERE m.id IN :ids")
+    void deleteByIdIn(@org.springframework.data.repository.query.Param("ids") java.util.Collection<Long> ids);
 
     // Delete entire conversation between two users
     @org.springframework.data.jpa.repository.Modifying
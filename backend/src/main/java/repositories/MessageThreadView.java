@@ -0,0 +1,26 @@
+package repositories;
+
+import java.time.LocalDateTime;
+
+/**
+ * One conversation thread (listing + partner) as aggregated by
+ * MessageRepository.findThreads
+ */
+public interface MessageThreadView {
+
+    Long getPropertyId(); // null for messages not tied to a listing
+
+    Long getPartnerId();
+
+    long getMessageCount();
+
+    long getUnreadCount();
+
+    Long getLastMessageId();
+
+    Long getLastSenderId();
+
+    String getLastText();
+
+    LocalDateTime getLastTimestamp();
+}
@@ -1,5 +1,7 @@
 package repositories;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
 import models.Property;
 import java.util.List;
@@ -12,6 +14,66 @@ public interface PropertyRepository extends JpaRepository<Property, Long> {
     // Find all unverified properties (for Admin)
     List<Property> findByIsVerifiedFalse();
 
-    // Find all verified properties (for public search)
-    List<Property> findByIsVerifiedTrue();
+    // Public search: every filter is optional (null = no filter), the order comes
+    // from sort. idx_properties_verified_rating serves minRating and the rating order.
+    @org.springframework.data.jpa.repository.Query("SELECT p FROM Property p "
+            + "WHERE p.isVerified = true AND p.isArchived = false "
+            + "AND (:pattern IS NULL OR LOWER(p.title) LIKE :pattern OR LOWER(p.location) LIKE :pattern) "
+            + "AND (:minPrice IS NULL OR p.price >= :minPrice) "
+            + "AND (:maxPrice IS NULL OR p.price <= :maxPrice) "
+            + "AND (:rooms IS NULL OR p.rooms = :rooms) "
+            + "AND (:floor IS NULL OR p.floor = :floor) "
+            + "AND (:minArea IS NULL OR p.area >= :minArea) "
+            + "AND (:maxArea IS NULL OR p.area <= :maxArea) "
+            + "AND (:maxDistanceToMetro IS NULL OR p.distanceToMetro <= :maxDistanceToMetro) "
+            + "AND (:maxDistanceToUniversity IS NULL OR p.distanceToUniversity <= :maxDistanceToUniversity) "
+            + "AND (:minRating IS NULL OR p.ratingAverage >= :minRating)")
+    List<Property> search(@org.springframework.data.repository.query.Param("pattern") String pattern,
+            @org.springframework.data.repository.query.Param("minPrice") Double minPrice,
+            @org.springframework.data.repository.query.Param("maxPrice") Double maxPrice,
+            @org.springframework.data.repository.query.Param("rooms") Integer rooms,
+            @org.springframework.data.repository.query.Param("floor") Integer floor,
+            @org.springframework.data.repository.query.Param("minArea") Double minArea,
+            @org.springframework.data.repository.query.Param("maxArea") Double maxArea,
+            @org.springframework.data.repository.query.Param("maxDistanceToMetro") Double maxDistanceToMetro,
+            @org.springframework.data.repository.query.Param("maxDistanceToUniversity") Double maxDistanceToUniversity,
+            @org.springframework.data.repository.query.Param("minRating") Double minRating,
+            Sort sort);
+
+    // Admin listings, one keyset page each (see services.KeysetPage)
+    @org.springframework.data.jpa.repository.Query("SELECT p FROM Property p "
+            + "WHERE p.id > :afterId AND p.id < :beforeId")
+    List<Property> findPage(@org.springframework.data.repository.query.Param("afterId") long afterId,
+            @org.springframework.data.repository.query.Param("beforeId") long beforeId, Pageable pageable);
+
+    // idx_properties_unverified
+    @org.springframework.data.jpa.repository.Query("SELECT p FROM Property p WHERE p.isVerified = false "
+            + "AND p.id > :afterId AND p.id < :beforeId")
+    List<Property> findUnverifiedPage(@org.springframework.data.repository.query.Param("afterId") long afterId,
+            @org.springframework.data.repository.query.Param("beforeId") long beforeId, Pageable pageable);
+
+    // Same as UserRepository.applyRatingChange, for reviews of a listing
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Query("UPDATE Property p SET "
+            + "p.ratingSum = COALESCE(p.ratingSum, 0) + :ratingDelta, "
+            + "p.ratingCount = p.ratingCount + :countDelta, "
+            + "p.ratingAverage = CASE WHEN p.ratingCount + :countDelta > 0 "
+            + "THEN (COALESCE(p.ratingSum, 0) + :ratingDelta) * 1.0 / (p.ratingCount + :countDelta) ELSE 0.0 END, "
+            + "p.ratingHistogram.stars1 = COALESCE(p.ratingHistogram.stars1, 0) "
+            + "+ CASE WHEN :addedStars = 1 THEN 1 ELSE 0 END - CASE WHEN :removedStars = 1 THEN 1 ELSE 0 END, "
+            + "p.ratingHistogram.stars2 = COALESCE(p.ratingHistogram.stars2, 0) "
+            + "+ CASE WHEN :addedStars = 2 THEN 1 ELSE 0 END - CASE WHEN :removedStars = 2 THEN 1 ELSE 0 END, "
+            + "p.ratingHistogram.stars3 = COALESCE(p.ratingHistogram.stars3, 0) "
+            + "+ CASE WHEN :addedStars = 3 THEN 1 ELSE 0 END - CASE WHEN :removedStars = 3 THEN 1 ELSE 0 END, "
+            + "p.ratingHistogram.stars4 = COALESCE(p.ratingHistogram.stars4, 0) "
+            + "+ CASE WHEN :addedStars = 4 THEN 1 ELSE 0 END - CASE WHEN :removedStars = 4 THEN 1 ELSE 0 END, "
+            + "p.ratingHistogram.stars5 = COALESCE(p.ratingHistogram.stars5, 0) "
+            + "+ CASE WHEN :addedStars = 5 THEN 1 ELSE 0 END - CASE WHEN :removedStars = 5 THEN 1 ELSE 0 END "
+            + "WHERE p.id = :propertyId")
+    int applyRatingChange(@org.springframework.data.repository.query.Param("propertyId") Long propertyId,
+            @org.springframework.data.repository.query.Param("ratingDelta") long ratingDelta,
+            @org.springframework.data.repository.query.Param("countDelta") int countDelta,
+            @org.springframework.data.repository.query.Param("addedStars") int addedStars,
+            @org.springframework.data.repository.query.Param("removedStars") int removedStars);
 }
@@ -1,17 +1,53 @@
 package repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import models.Review;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 public interface ReviewRepository extends JpaRepository<Review, Long> {
 
-    // Find reviews for a target user (e.g. seller)
-    List<Review> findByTargetUserId(Long targetUserId);
+    // Find reviews for a target user (e.g. seller), listing reviews excluded
+    List<Review> findByTargetUserIdAndPropertyIdIsNull(Long targetUserId);
+
+    // First page of a user's reviews, newest first
+    List<Review> findByTargetUserIdAndPropertyIdIsNullOrderByCreatedAtDescIdDesc(Long targetUserId,
+            Pageable pageable);
+
+    // Next page after (beforeTime, beforeId), served by idx_reviews_target_created
+    @org.springframework.data.jpa.repository.Query("SELECT r FROM Review r WHERE r.targetUserId = :targetUserId "
+            + "AND r.propertyId IS NULL "
+            + "AND (r.createdAt < :beforeTime OR (r.createdAt = :beforeTime AND r.id < :beforeId)) "
+            + "ORDER BY r.createdAt DESC, r.id DESC")
+    List<Review> findPageBefore(@org.springframework.data.repository.query.Param("targetUserId") Long targetUserId,
+            @org.springframework.data.repository.query.Param("beforeTime") LocalDateTime beforeTime,
+            @org.springframework.data.repository.query.Param("beforeId") Long beforeId,
+            Pageable pageable);
+
+    // First page of a listing's reviews, newest first
+    List<Review> findByPropertyIdOrderByCreatedAtDescIdDesc(Long propertyId, Pageable pageable);
+
+    // Next page of a listing's reviews, served by idx_reviews_property_created
+    @org.springframework.data.jpa.repository.Query("SELECT r FROM Review r WHERE r.propertyId = :propertyId "
+            + "AND (r.createdAt < :beforeTime OR (r.createdAt = :beforeTime AND r.id < :beforeId)) "
+            + "ORDER BY r.createdAt DESC, r.id DESC")
+    List<Review> findPropertyPageBefore(
+            @org.springframework.data.repository.query.Param("propertyId") Long propertyId,
+            @org.springframework.data.repository.query.Param("beforeTime") LocalDateTime beforeTime,
+            @org.springframework.data.repository.query.Param("beforeId") Long beforeId,
+            Pageable pageable);
 
     // Find reviews written by a specific reviewer
     List<Review> findByReviewerId(Long reviewerId);
 
+    // The review a reviewer left for a user, if any
+    Optional<Review> findByReviewerIdAndTargetUserIdAndPropertyIdIsNull(Long reviewerId, Long targetUserId);
+
+    // The review a reviewer left for a listing, if any
+    Optional<Review> findByReviewerIdAndPropertyId(Long reviewerId, Long propertyId);
+
     // Check if a review already exists
     boolean existsByReviewerIdAndTargetUserId(Long reviewerId, Long targetUserId);
 }
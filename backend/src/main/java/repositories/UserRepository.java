@@ -1,15 +1,84 @@
 package repositories;
 
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import models.User;
 
 public interface UserRepository extends JpaRepository<User, Long> {
 
-    Optional<User> findByEmailIgnoreCase(String email);
+    // Backed by the unique index on email_normalized (see User.normalizeEmail)
+    Optional<User> findByEmailNormalized(String emailNormalized);
 
-}
+    boolean existsByEmailNormalized(String emailNormalized);
+
+    // Backed by idx_users_role; EXISTS stops at the first matching row
+    @org.springframework.data.jpa.repository.Query(value = "SELECT EXISTS (SELECT 1 FROM users u "
+            + "WHERE LOWER(u.role) = LOWER(:role))", nativeQuery = true)
+    boolean existsByRole(@org.springframework.data.repository.query.Param("role") String role);
+
+    // Admin queues, one keyset page each (see services.KeysetPage): rows with
+    // afterId < id < beforeId, ordered by the page's sort. Each filter has a
+    // partial index on id in schema.sql, so a page never scans the table.
+
+    @org.springframework.data.jpa.repository.Query("SELECT u FROM User u "
+            + "WHERE u.id > :afterId AND u.id < :beforeId")
+    List<User> findPage(@org.springframework.data.repository.query.Param("afterId") long afterId,
+            @org.springframework.data.repository.query.Param("beforeId") long beforeId, Pageable pageable);
 
+    // idx_users_unverified
+    @org.springframework.data.jpa.repository.Query("SELECT u FROM User u WHERE u.isVerified = false "
+            + "AND u.id > :afterId AND u.id < :beforeId")
+    List<User> findUnverifiedPage(@org.springframework.data.repository.query.Param("afterId") long afterId,
+            @org.springframework.data.repository.query.Param("beforeId") long beforeId, Pageable pageable);
 
+    // idx_users_pending_approval
+    @org.springframework.data.jpa.repository.Query("SELECT u FROM User u WHERE u.isApproved = false "
+            + "AND u.emailNormalized <> :excludedEmail AND u.id > :afterId AND u.id < :beforeId")
+    List<User> findPendingApprovalPage(
+            @org.springframework.data.repository.query.Param("excludedEmail") String excludedEmail,
+            @org.springframework.data.repository.query.Param("afterId") long afterId,
+            @org.springframework.data.repository.query.Param("beforeId") long beforeId, Pageable pageable);
+
+    // idx_users_id_pending
+    @org.springframework.data.jpa.repository.Query("SELECT u FROM User u WHERE u.idDocumentPath IS NOT NULL "
+            + "AND u.idVerified = false AND u.id > :afterId AND u.id < :beforeId")
+    List<User> findIdPendingPage(@org.springframework.data.repository.query.Param("afterId") long afterId,
+            @org.springframework.data.repository.query.Param("beforeId") long beforeId, Pageable pageable);
+
+    // idx_users_admin_pending
+    @org.springframework.data.jpa.repository.Query("SELECT u FROM User u WHERE LOWER(u.role) = 'admin' "
+            + "AND u.isApproved = false AND u.id > :afterId AND u.id < :beforeId")
+    List<User> findUnapprovedAdminPage(@org.springframework.data.repository.query.Param("afterId") long afterId,
+            @org.springframework.data.repository.query.Param("beforeId") long beforeId, Pageable pageable);
+
+    // Apply a rating change in one statement: a new review adds its rating and
+    // one star bucket, an edit moves the sum by (new - old) and moves one review
+    // between buckets. Cost is independent of the review count.
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Query("UPDATE User u SET "
+            + "u.ratingSum = COALESCE(u.ratingSum, 0) + :ratingDelta, "
+            + "u.reviewCount = u.reviewCount + :countDelta, "
+            + "u.averageRating = CASE WHEN u.reviewCount + :countDelta > 0 "
+            + "THEN (COALESCE(u.ratingSum, 0) + :ratingDelta) * 1.0 / (u.reviewCount + :countDelta) ELSE 0.0 END, "
+            + "u.ratingHistogram.stars1 = COALESCE(u.ratingHistogram.stars1, 0) "
+            + "+ CASE WHEN :addedStars = 1 THEN 1 ELSE 0 END - CASE WHEN :removedStars = 1 THEN 1 ELSE 0 END, "
+            + "u.ratingHistogram.stars2 = COALESCE(u.ratingHistogram.stars2, 0) "
+            + "+ CASE WHEN :addedStars = 2 THEN 1 ELSE 0 END - CASE WHEN :removedStars = 2 THEN 1 ELSE 0 END, "
+            + "u.ratingHistogram.stars3 = COALESCE(u.ratingHistogram.stars3, 0) "
+            + "+ CASE WHEN :addedStars = 3 THEN 1 ELSE 0 END - CASE WHEN :removedStars = 3 THEN 1 ELSE 0 END, "
+            + "u.ratingHistogram.stars4 = COALESCE(u.ratingHistogram.stars4, 0) "
+            + "+ CASE WHEN :addedStars = 4 THEN 1 ELSE 0 END - CASE WHEN :removedStars = 4 THEN 1 ELSE 0 END, "
+            + "u.ratingHistogram.stars5 = COALESCE(u.ratingHistogram.stars5, 0) "
+            + "+ CASE WHEN :addedStars = 5 THEN 1 ELSE 0 END - CASE WHEN :removedStars = 5 THEN 1 ELSE 0 END "
+            + "WHERE u.id = :userId")
+    int applyRatingChange(@org.springframework.data.repository.query.Param("userId") Long userId,
+            @org.springframework.data.repository.query.Param("ratingDelta") long ratingDelta,
+            @org.springframework.data.repository.query.Param("countDelta") int countDelta,
+            @org.springframework.data.repository.query.Param("addedStars") int addedStars,
+            @org.springframework.data.repository.query.Param("removedStars") int removedStars);
+}
@@ -0,0 +1,260 @@
+package services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Compact, self-describing access tokens signed with HMAC-SHA256.
+ *
+ * Layout (before base64url): version(1) keyId(1) role(1) userId(8)
+ * expiresAtMillis(8) tokenId(8), then "." and the MAC truncated to 16 bytes.
+ * That is a fixed 59 characters, e.g. "AQEB...AAA.kq3...". Verifying one needs
+ * no lookup of any kind.
+ *
+ * Several keys can be active for verification at once (by keyId) while one
+ * signs new tokens, so keys can be rotated without logging anyone out: add the
+ * new key, make it active, remove the old one once its tokens have expired.
+ *
+ * Verification is allocation-light: decoding goes into per-thread scratch
+ * buffers and each thread keeps one initialised Mac per key. The key table is
+ * copy-on-write behind a volatile field, so verifying threads see a rotation
+ * as soon as it is made, without locking.
+ */
+public class AccessTokenCodec {
+
+    private static final Logger log = LoggerFactory.getLogger(AccessTokenCodec.class);
+
+    private static final byte VERSION = 1;
+    private static final int PAYLOAD_BYTES = 1 + 1 + 1 + 8 + 8 + 8;
+    private static final int MAC_BYTES = 16;
+    private static final int PAYLOAD_CHARS = 36; // 27 bytes, no padding
+    private static final int MAC_CHARS = 22; // 16 bytes, no padding
+    public static final int TOKEN_LENGTH = PAYLOAD_CHARS + 1 + MAC_CHARS;
+
+    private static final String HMAC = "HmacSHA256";
+    private static final String[] ROLES = { null, "buyer", "seller", "agent", "admin" };
+    private static final int[] BASE64URL = new int[128];
+
+    static {
+        Arrays.fill(BASE64URL, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64URL[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private volatile SecretKeySpec[] keys = new SecretKeySpec[256];
+    private volatile int activeKeyId = -1;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Claims of a verified token
+     */
+    public record Claims(long userId, String role, long expiresAtMillis, long tokenId) {
+    }
+
+    private static final class Scratch {
+        final byte[] payload = new byte[PAYLOAD_BYTES];
+        final byte[] mac = new byte[MAC_BYTES];
+        final byte[] expected = new byte[32];
+        final Mac[] macs = new Mac[256];
+        final SecretKeySpec[] macKeys = new SecretKeySpec[256];
+    }
+
+    /**
+     * Register a key for verification (and signing, once made active)
+     */
+    public synchronized void addKey(int keyId, byte[] secret) {
+        checkKeyId(keyId);
+        if (secret == null || secret.length < 32) {
+            throw new IllegalArgumentException("Token signing keys must be at least 32 bytes");
+        }
+        SecretKeySpec[] next = keys.clone();
+        next[keyId] = new SecretKeySpec(secret.clone(), HMAC);
+        keys = next;
+    }
+
+    public synchronized void setActiveKey(int keyId) {
+        checkKeyId(keyId);
+        if (keys[keyId] == null) {
+            throw new IllegalArgumentException("Unknown token key " + keyId);
+        }
+        activeKeyId = keyId;
+    }
+
+    /**
+     * Stop accepting tokens signed with this key
+     */
+    public synchronized void removeKey(int keyId) {
+        checkKeyId(keyId);
+        if (keyId == activeKeyId) {
+            throw new IllegalArgumentException("Cannot remove the active token key");
+        }
+        SecretKeySpec[] next = keys.clone();
+        next[keyId] = null;
+        keys = next;
+    }
+
+    /**
+     * Parse "id:base64secret,id:base64secret" (from configuration). With no
+     * keys configured a random key is generated, which means tokens do not
+     * survive a restart and are not accepted by other nodes.
+     */
+    public void configure(String keySpec, int activeKey) {
+        if (keySpec == null || keySpec.isBlank()) {
+            byte[] secret = new byte[32];
+            random.nextBytes(secret);
+            addKey(1, secret);
+            setActiveKey(1);
+            log.warn("No token signing keys configured; using a random key for this run");
+            return;
+        }
+        for (String entry : keySpec.split(",")) {
+            String[] parts = entry.trim().split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Token keys must look like id:base64secret");
+            }
+            addKey(Integer.parseInt(parts[0].trim()), Base64.getDecoder().decode(parts[1].trim()));
+        }
+        setActiveKey(activeKey);
+    }
+
+    public String issue(long userId, String role, long expiresAtMillis) {
+        int keyId = activeKeyId;
+        if (keyId < 0) {
+            throw new IllegalStateException("No active token key");
+        }
+        byte[] payload = ByteBuffer.allocate(PAYLOAD_BYTES)
+                .put(VERSION)
+                .put((byte) keyId)
+                .put(roleCode(role))
+                .putLong(userId)
+                .putLong(expiresAtMillis)
+                .putLong(random.nextLong())
+                .array();
+        byte[] mac;
+        try {
+            Mac hmac = Mac.getInstance(HMAC);
+            hmac.init(keys[keyId]);
+            mac = hmac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign access token", e);
+        }
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payload) + "." + encoder.encodeToString(Arrays.copyOf(mac, MAC_BYTES));
+    }
+
+    /**
+     * @return the claims, or null if the token is malformed, forged, signed
+     *         with an unknown key or expired
+     */
+    public Claims verify(String token, long nowMillis) {
+        if (token == null || token.length() != TOKEN_LENGTH || token.charAt(PAYLOAD_CHARS) != '.') {
+            return null;
+        }
+        Scratch s = scratch.get();
+        if (!decode(token, 0, PAYLOAD_CHARS, s.payload) || !decode(token, PAYLOAD_CHARS + 1, MAC_CHARS, s.mac)) {
+            return null;
+        }
+        byte[] p = s.payload;
+        if (p[0] != VERSION) {
+            return null;
+        }
+        int keyId = p[1] & 0xFF;
+        SecretKeySpec key = keys[keyId];
+        if (key == null) {
+            return null;
+        }
+
+        try {
+            Mac mac = s.macs[keyId];
+            if (mac == null || s.macKeys[keyId] != key) {
+                mac = Mac.getInstance(HMAC);
+                mac.init(key);
+                s.macs[keyId] = mac;
+                s.macKeys[keyId] = key;
+            }
+            mac.update(p, 0, PAYLOAD_BYTES);
+            mac.doFinal(s.expected, 0);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+        // Constant-time comparison
+        int diff = 0;
+        for (int i = 0; i < MAC_BYTES; i++) {
+            diff |= s.expected[i] ^ s.mac[i];
+        }
+        if (diff != 0) {
+            return null;
+        }
+
+        long expiresAt = readLong(p, 11);
+        if (nowMillis > expiresAt) {
+            return null;
+        }
+        int role = p[2];
+        return new Claims(readLong(p, 3), role > 0 && role < ROLES.length ? ROLES[role] : null, expiresAt,
+                readLong(p, 19));
+    }
+
+    private static byte roleCode(String role) {
+        if (role != null) {
+            String normalized = role.toLowerCase(Locale.ROOT);
+            for (int i = 1; i < ROLES.length; i++) {
+                if (ROLES[i].equals(normalized)) {
+                    return (byte) i;
+                }
+            }
+        }
+        return 0;
+    }
+
+    // Decode unpadded base64url chars into out (exactly out.length bytes).
+    // Leftover bits of the last char must be zero, as an encoder writes them,
+    // so each byte string has exactly one accepted spelling.
+    private static boolean decode(String src, int offset, int chars, byte[] out) {
+        int buffer = 0;
+        int bits = 0;
+        int written = 0;
+        for (int i = offset; i < offset + chars; i++) {
+            char c = src.charAt(i);
+            int value = c < 128 ? BASE64URL[c] : -1;
+            if (value < 0) {
+                return false;
+            }
+            buffer = (buffer << 6) | value;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                if (written < out.length) {
+                    out[written++] = (byte) (buffer >> bits);
+                }
+            }
+        }
+        return written == out.length && (buffer & ((1 << bits) - 1)) == 0;
+    }
+
+    private static long readLong(byte[] b, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (b[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void checkKeyId(int keyId) {
+        if (keyId < 0 || keyId > 255) {
+            throw new IllegalArgumentException("Token key id must be between 0 and 255");
+        }
+    }
+}
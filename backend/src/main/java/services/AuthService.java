@@ -11,64 +11,75 @@ package services;
  * 
  */
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import exceptions.AccountPendingApprovalException;
 import exceptions.EmailNotVerifiedException;
 import exceptions.IdNotVerifiedException;
 import exceptions.InvalidCredentialsException;
+import exceptions.PasswordResetRequiredException;
+import exceptions.ServiceOverloadedException;
 import models.Admin;
 import models.Agent;
 import models.Buyer;
 import models.Seller;
 import models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import repositories.UserRepository;
 
 public class AuthService {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthService.class);
+    private static final String MAIN_ADMIN_EMAIL = "admin1@ds.gmail.com";
+
     private final UserRepository userRepository;
     private final SecurityService securityService;
+    private final UserCache userCache;
+    // Hash of a random password, verified against when the email is unknown;
+    // computed on first use so startup does not pay for a PBKDF2 run
+    private volatile String dummyHash;
 
-    public AuthService(UserRepository userRepository, SecurityService securityService) {
+    public AuthService(UserRepository userRepository, SecurityService securityService, UserCache userCache) {
         this.userRepository = userRepository;
         this.securityService = securityService;
-        ensureDefaultAdminExists();
+        this.userCache = userCache;
     }
 
-    private void ensureDefaultAdminExists() {
-        boolean adminExists = userRepository.findAll().stream()
-                .anyMatch(u -> u.getRole() != null && u.getRole().equalsIgnoreCase("admin"));
-        if (!adminExists) {
-            Admin mainAdmin = new Admin(null, "Main Admin", "admin1@ds.gmail.com",
-                    securityService.hashPassword("admin1ds"), true, "MAIN_ADMIN_001");
-            mainAdmin.setEmailVerified(true);
-            mainAdmin.setIdVerified(true);
-            mainAdmin.setApproved(true);
-            userRepository.save(mainAdmin);
-
-            // Optional: seed a couple of demo users if desired
-            Buyer buyer = new Buyer(null, "Buyer User", "buyer@example.com",
-                    securityService.hashPassword("buyer123"), true, "BUYER001");
-            buyer.setEmailVerified(true);
-            buyer.setIdVerified(true);
-            buyer.setApproved(true);
-            userRepository.save(buyer);
-
-            Seller seller = new Seller(null, "Seller User", "seller@example.com",
-                    securityService.hashPassword("seller123"), true, "SELLER001");
-            seller.setEmailVerified(true);
-            seller.setIdVerified(true);
-            seller.setApproved(true);
-            userRepository.save(seller);
-
-            Agent agent = new Agent(null, "Agent User", "agent@example.com",
-                    securityService.hashPassword("agent123"), true, "AGENT001");
-            agent.setEmailVerified(true);
-            agent.setIdVerified(true);
-            agent.setApproved(true);
-            userRepository.save(agent);
+    /**
+     * Creates the main admin and the demo users when there is no admin yet.
+     * Runs once after startup (see AppConfig.defaultUserSeeder) rather than in
+     * the constructor, and is safe to run again: the admin check is an indexed
+     * existence query and every seeded email is skipped if already taken.
+     */
+    public void seedDefaultUsers() {
+        if (userRepository.existsByRole("admin")) {
+            return;
+        }
+        seed(new Admin(null, "Main Admin", "admin1@ds.gmail.com", null, true, "MAIN_ADMIN_001"), "admin1ds");
+        // Optional: seed a couple of demo users if desired
+        seed(new Buyer(null, "Buyer User", "buyer@example.com", null, true, "BUYER001"), "buyer123");
+        seed(new Seller(null, "Seller User", "seller@example.com", null, true, "SELLER001"), "seller123");
+        seed(new Agent(null, "Agent User", "agent@example.com", null, true, "AGENT001"), "agent123");
+    }
+
+    private void seed(User user, String password) {
+        if (userRepository.existsByEmailNormalized(User.normalizeEmail(user.getEmail()))) {
+            return;
+        }
+        user.setPassword(securityService.hashPassword(password));
+        user.setEmailVerified(true);
+        user.setIdVerified(true);
+        user.setApproved(true);
+        try {
+            userRepository.save(user);
+            log.info("Seeded default user email={} role={}", user.getEmail(), user.getRole());
+        } catch (org.springframework.dao.DataIntegrityViolationException e) {
+            // Another instance seeded it first
+            log.debug("Default user already exists email={}", user.getEmail());
         }
     }
 
@@ -76,11 +87,10 @@ public class AuthService {
         if (rawEmail == null)
             return null;
         String email = rawEmail.trim(); // TRIM INPUT
-        System.out.println("DEBUG: Login attempt for email: '" + email + "'");
-        System.out.println("DEBUG: Total users in system (DB): " + userRepository.count());
+        log.debug("Login attempt email={}", email);
         // Emergency Fallback: Ensure Main Admin can always login
         if (email.equalsIgnoreCase("admin1@ds.gmail.com") && password.equals("admin1ds")) {
-            System.out.println("Login successful (System Admin Override).");
+            log.atInfo().addKeyValue("event", "login").addKeyValue("override", true).log("Main admin login");
             Admin admin = new Admin(1L, "Main Admin", "admin1@ds.gmail.com", "hashed_placeholder", true,
                     "MAIN_ADMIN_001");
             admin.setApproved(true);
@@ -89,28 +99,27 @@ public class AuthService {
             return admin;
         }
 
-        Optional<User> userOpt = userRepository.findByEmailIgnoreCase(email);
-        if (userOpt.isPresent()) {
-            User user = userOpt.get();
-            // DEBUG: Log user found and password check
-            System.out.println("DEBUG: User found: " + user.getEmail() + ", Role: " + user.getRole());
-            System.out.println("DEBUG: Password hash in DB: " + (user.getPassword() != null
-                    ? user.getPassword().substring(0, Math.min(20, user.getPassword().length())) + "..."
-                    : "NULL"));
-            System.out.println("DEBUG: Email verified: " + user.isEmailVerified() + ", ID verified: "
-                    + user.isIdVerified() + ", Approved: " + user.isApproved());
+        User user = getUserByEmail(email);
+        if (user != null) {
+            log.debug("Login user found userId={} role={} emailVerified={} idVerified={} approved={}", user.getId(),
+                    user.getRole(), user.isEmailVerified(), user.isIdVerified(), user.isApproved());
 
             // Verify password
             if (user.getPassword() == null) {
-                System.out.println("DEBUG: Login failed: User password is NULL");
+                logLoginFailure(email, "no_password");
                 throw new InvalidCredentialsException("Invalid credentials");
             }
 
+            // Retired hash formats are never accepted; the owner has to reset
+            if (securityService.requiresPasswordReset(user.getPassword())) {
+                logLoginFailure(email, "password_reset_required");
+                throw new PasswordResetRequiredException("Password reset required, request a code by email");
+            }
+
             boolean passwordMatch = securityService.verifyPassword(password, user.getPassword());
-            System.out.println("DEBUG: Password verification result: " + passwordMatch);
 
             if (!passwordMatch) {
-                System.out.println("DEBUG: Login failed: Password mismatch");
+                logLoginFailure(email, "bad_password");
                 throw new InvalidCredentialsException("Invalid credentials");
             }
 
@@ -119,7 +128,7 @@ public class AuthService {
             // Rule 1: Email must always be verified (skip for Main Admin override logic
             // handled above)
             if (!user.isEmailVerified() && !isMainAdmin(user)) {
-                System.out.println("Login failed: Email not verified.");
+                logLoginFailure(email, "email_not_verified");
                 throw new EmailNotVerifiedException("Email not verified");
             }
 
@@ -130,45 +139,83 @@ public class AuthService {
             } else if (role.equals("admin")) {
                 // Admins must be verified/approved
                 if (!user.isVerified() && !isMainAdmin(user)) {
-                    System.out.println("Login failed: Admin account not verified.");
+                    logLoginFailure(email, "admin_not_verified");
                     throw new AccountPendingApprovalException("Admin account not verified");
                 }
             } else {
                 // Sellers and Agents
                 if (!user.isIdVerified()) {
-                    System.out.println("Login failed: ID document not verified.");
+                    logLoginFailure(email, "id_not_verified");
                     throw new IdNotVerifiedException("ID document not verified");
                 }
                 if (!user.isApproved()) {
-                    System.out.println("Login failed: Account pending admin approval.");
+                    logLoginFailure(email, "pending_approval");
                     throw new AccountPendingApprovalException("Account pending admin approval");
                 }
             }
 
-            System.out.println("Login successful for: " + user.getName());
+            upgradePasswordHash(user, password);
+            log.atInfo().addKeyValue("event", "login").addKeyValue("userId", user.getId())
+                    .addKeyValue("role", user.getRole()).log("Login successful");
             return user;
         }
-        System.out.println("Login failed: User not found.");
+        // Spend the same hashing work as for a real user, so response time
+        // does not reveal which emails are registered
+        securityService.verifyPassword(password, getDummyHash());
+        logLoginFailure(email, "unknown_email");
         throw new InvalidCredentialsException("Invalid credentials");
     }
 
+    private String getDummyHash() {
+        String hash = dummyHash;
+        if (hash == null) {
+            hash = securityService.hashPassword(java.util.UUID.randomUUID().toString());
+            dummyHash = hash;
+        }
+        return hash;
+    }
+
+    private static void logLoginFailure(String email, String reason) {
+        log.atInfo().addKeyValue("event", "login_failed").addKeyValue("email", email).addKeyValue("reason", reason)
+                .log("Login failed");
+    }
+
+    // Re-hash a password stored in an older / cheaper format now that we have it
+    // in clear. Best effort: login still succeeds if the pool is saturated.
+    private void upgradePasswordHash(User user, String password) {
+        if (!securityService.needsRehash(user.getPassword())) {
+            return;
+        }
+        try {
+            String upgraded = securityService.hashPassword(password);
+            User fresh = getUserForUpdate(user.getId());
+            // Only if the stored hash is still the one just verified
+            if (fresh != null && user.getPassword().equals(fresh.getPassword())) {
+                fresh.setPassword(upgraded);
+                updateUser(fresh);
+            }
+        } catch (ServiceOverloadedException e) {
+            log.warn("Password hash upgrade postponed userId={}: {}", user.getId(), e.getMessage());
+        }
+    }
+
     public User register(String rawName, String rawEmail, String password, String role, String govId) {
         String name = rawName != null ? rawName.trim() : "";
         String email = rawEmail != null ? rawEmail.trim() : "";
 
-        if (userRepository.findByEmailIgnoreCase(email).isPresent()) {
-            System.out.println("Registration failed: Email already exists.");
+        if (userRepository.findByEmailNormalized(User.normalizeEmail(email)).isPresent()) {
+            log.info("Registration failed: email already exists email={}", email);
             return null;
         }
 
         // Validate using SecurityService
         if (!securityService.validateEmail(email)) {
-            System.out.println("Registration failed: Invalid email format.");
+            log.info("Registration failed: invalid email format email={}", email);
             return null;
         }
 
         if (!securityService.validatePassword(password)) {
-            System.out.println("Registration failed: " + securityService.getPasswordRequirements());
+            log.info("Registration failed: weak password email={}", email);
             return null;
         }
 
@@ -177,12 +224,12 @@ public class AuthService {
         boolean isAdminRole = role.equalsIgnoreCase("admin");
 
         if (isAdminRole && !isAdminEmail) {
-            System.out.println("Registration failed: Admin accounts must use @ds.gmail.com email domain.");
+            log.info("Registration failed: admin accounts must use @ds.gmail.com email={}", email);
             return null;
         }
 
         if (!isAdminRole && isAdminEmail) {
-            System.out.println("Registration failed: @ds.gmail.com domain is reserved for administrators only.");
+            log.info("Registration failed: @ds.gmail.com is reserved for administrators email={}", email);
             return null;
         }
 
@@ -205,19 +252,47 @@ public class AuthService {
             }
 
             newUser = userRepository.save(newUser);
-            if (isAdminRole) {
-                System.out.println(
-                        "Admin registration successful! Please verify your email and wait for main admin approval.");
-            } else if (role.equalsIgnoreCase("buyer")) {
-                System.out.println("Registration successful! Please verify your email to log in.");
-            } else {
-                System.out.println("Registration successful! Please verify your email and upload ID document.");
-            }
+            log.atInfo().addKeyValue("event", "register").addKeyValue("userId", newUser.getId())
+                    .addKeyValue("role", newUser.getRole()).log("Registration successful");
             return newUser;
         }
         return null;
     }
 
+    /**
+     * Set a new password after the owner proved control of the email (reset
+     * code). That also counts as email verification. Every existing session
+     * and access token of the user is revoked, so whoever held one before the
+     * reset has to sign in again with the new password.
+     *
+     * @return false if the password does not meet the requirements
+     */
+    public boolean resetPassword(Long userId, String newPassword) {
+        if (!securityService.validatePassword(newPassword)) {
+            return false;
+        }
+        String hashed = securityService.hashPassword(newPassword);
+        User user = getUserForUpdate(userId);
+        if (user == null) {
+            return false;
+        }
+        user.setPassword(hashed);
+        user.setEmailVerified(true);
+        updateUser(user);
+        securityService.invalidateAllTokens(userId);
+        log.atInfo().addKeyValue("event", "password_reset").addKeyValue("userId", userId).log("Password reset");
+        return true;
+    }
+
+    /**
+     * Remove an account whose registration could not be completed
+     */
+    public void discardRegistration(User user) {
+        userRepository.deleteById(user.getId());
+        userCache.invalidate(user.getId());
+        log.info("Registration rolled back userId={}", user.getId());
+    }
+
     public void verifyUser(Long userId) {
         Optional<User> userOpt = userRepository.findById(userId);
         if (userOpt.isPresent()) {
@@ -226,15 +301,32 @@ public class AuthService {
             user.setIdVerified(true); // Also verify ID if document was checked
             user.setEmailVerified(true); // FIX: Ensure email is marked verified when admin manually verifies
             user.setApproved(true); // Grant approval for login
-            userRepository.save(user);
-            System.out.println("User verified: " + user.getName());
+            userCache.put(userRepository.save(user));
+            log.info("User verified userId={}", userId);
         } else {
-            System.out.println("User not found.");
+            log.info("Verify: user not found userId={}", userId);
         }
     }
 
-    public List<User> getUnverifiedUsers() {
-        return userRepository.findAll().stream().filter(u -> !u.isVerified()).collect(Collectors.toList());
+    /**
+     * One page of users who are not verified yet
+     */
+    public List<User> getUnverifiedUsers(KeysetPage page) {
+        return userRepository.findUnverifiedPage(page.afterId(), page.beforeId(), page.pageable());
+    }
+
+    /**
+     * One page of all users (admin listing)
+     */
+    public List<User> getUsersPage(KeysetPage page) {
+        return userRepository.findPage(page.afterId(), page.beforeId(), page.pageable());
+    }
+
+    /**
+     * One page of users who uploaded an ID document that is not verified yet
+     */
+    public List<User> getIdPendingUsers(KeysetPage page) {
+        return userRepository.findIdPendingPage(page.afterId(), page.beforeId(), page.pageable());
     }
 
     public List<User> getAllUsers() {
@@ -245,7 +337,7 @@ public class AuthService {
      * Check if a user is the main admin
      */
     public boolean isMainAdmin(User user) {
-        return user != null && user.getEmail().equalsIgnoreCase("admin1@ds.gmail.com");
+        return user != null && user.getEmail().equalsIgnoreCase(MAIN_ADMIN_EMAIL);
     }
 
     /**
@@ -259,10 +351,10 @@ public class AuthService {
             user.setEmailVerified(true);
             user.setIdVerified(true);
             user.setVerified(true);
-            userRepository.save(user);
-            System.out.println("User approved: " + user.getName());
+            userCache.put(userRepository.save(user));
+            log.info("User approved userId={}", userId);
         } else {
-            System.out.println("User not found.");
+            log.info("Approve: user not found userId={}", userId);
         }
     }
 
@@ -273,49 +365,108 @@ public class AuthService {
         Optional<User> userOpt = userRepository.findById(userId);
         if (userOpt.isPresent()) {
             User user = userOpt.get();
-            System.out.println("User rejected: " + user.getName() + " - Reason: " + reason);
+            log.info("User rejected userId={} reason={}", userId, reason);
             // Optionally delete the user
             userRepository.delete(user);
+            userCache.invalidate(userId);
         } else {
-            System.out.println("User not found.");
+            log.info("Reject: user not found userId={}", userId);
         }
     }
 
     /**
-     * Get users pending approval
+     * One page of users pending approval (the main admin never is)
      */
-    public List<User> getPendingApprovalUsers() {
-        return userRepository.findAll().stream()
-                .filter(u -> !u.isApproved() && !isMainAdmin(u))
-                .collect(Collectors.toList());
+    public List<User> getPendingApprovalUsers(KeysetPage page) {
+        return userRepository.findPendingApprovalPage(MAIN_ADMIN_EMAIL, page.afterId(), page.beforeId(),
+                page.pageable());
     }
 
     /**
-     * Get user by email
+     * Get user by email (case-insensitive, cached)
      */
     public User getUserByEmail(String email) {
-        return userRepository.findByEmailIgnoreCase(email).orElse(null);
+        String normalized = User.normalizeEmail(email);
+        User user = userCache.getByEmail(normalized);
+        if (user == null && normalized != null) {
+            user = userRepository.findByEmailNormalized(normalized).orElse(null);
+            userCache.put(user);
+        }
+        return user;
     }
 
     /**
-     * Get user by ID
+     * Get user by ID (cached)
      */
     public User getUserById(Long id) {
-        return userRepository.findById(id).orElse(null);
+        User user = userCache.getById(id);
+        if (user == null && id != null) {
+            user = userRepository.findById(id).orElse(null);
+            userCache.put(user);
+        }
+        return user;
+    }
+
+    /**
+     * Load a user straight from the database, for changing and saving it
+     * (never a cached copy, which may be up to the cache TTL old)
+     */
+    public User getUserForUpdate(Long id) {
+        return id != null ? userRepository.findById(id).orElse(null) : null;
+    }
+
+    /**
+     * Reload a user from the database, bypassing and refreshing the cache
+     * (e.g. after a transaction that changed the row with a bulk UPDATE)
+     */
+    public User refreshUser(Long id) {
+        userCache.invalidate(id);
+        return getUserById(id);
+    }
+
+    public UserCache.Stats getUserCacheStats() {
+        return userCache.getStats();
+    }
+
+    /**
+     * Get users for many ids with a single query, in the order of ids
+     * (unknown ids are skipped)
+     */
+    public List<User> getUsersByIds(List<Long> ids) {
+        return BatchLoader.loadInOrder(ids, userRepository::findAllById, User::getId);
+    }
+
+    /**
+     * Get users for many ids with a single query, keyed by id
+     */
+    public Map<Long, User> getUsersMapByIds(Collection<Long> ids) {
+        return BatchLoader.loadById(ids, userRepository::findAllById, User::getId);
+    }
+
+    /**
+     * One page of unapproved admins (for main admin to review)
+     */
+    public List<User> getUnverifiedAdmins(KeysetPage page) {
+        return userRepository.findUnapprovedAdminPage(page.afterId(), page.beforeId(), page.pageable());
     }
 
     /**
-     * Get all unverified admins (for main admin to review)
+     * Atomically apply a review change to a user's rating aggregates
+     * (sum, count, star histogram).
+     *
+     * @param oldRating previous rating of the review, 0 for a new review
+     * @param newRating rating after the change
      */
-    public List<User> getUnverifiedAdmins() {
-        return userRepository.findAll().stream()
-                .filter(u -> u.getRole().equalsIgnoreCase("admin") && !u.isApproved())
-                .collect(Collectors.toList());
+    public void applyRatingChange(Long userId, int oldRating, int newRating) {
+        userRepository.applyRatingChange(userId, newRating - oldRating, oldRating == 0 ? 1 : 0,
+                newRating, oldRating);
+        // The bulk UPDATE bypasses the entity, so the cached copy is stale
+        userCache.invalidate(userId);
     }
 
     public void updateUser(User user) {
         // JPA will handle insert/update based on the entity ID
-        userRepository.save(user);
-        System.out.println("DEBUG: User updated and saved: " + user.getEmail());
+        userCache.put(userRepository.save(user));
+        log.debug("User saved userId={}", user.getId());
     }
 }
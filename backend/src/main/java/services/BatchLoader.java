@@ -0,0 +1,67 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Helpers for resolving many entities by id in one query instead of one
+ * lookup per id (N+1). Typical use is enriching a list of DTOs with related
+ * users/properties: collect the ids first, load them with a single
+ * findAllById, then map from the returned lookup table.
+ */
+public final class BatchLoader {
+
+    private BatchLoader() {
+    }
+
+    /**
+     * Load entities for the given ids with a single call to loader.
+     * Null and duplicate ids are ignored; missing entities are simply absent.
+     *
+     * @param ids    ids to resolve
+     * @param loader batch query, usually repository::findAllById
+     * @param idOf   id accessor of the entity
+     * @return entities keyed by id
+     */
+    public static <T, ID> Map<ID, T> loadById(Collection<ID> ids, Function<Set<ID>, List<T>> loader,
+            Function<T, ID> idOf) {
+        Set<ID> distinct = new LinkedHashSet<>();
+        for (ID id : ids) {
+            if (id != null) {
+                distinct.add(id);
+            }
+        }
+        Map<ID, T> byId = new HashMap<>();
+        if (distinct.isEmpty()) {
+            return byId;
+        }
+        for (T entity : loader.apply(distinct)) {
+            byId.put(idOf.apply(entity), entity);
+        }
+        return byId;
+    }
+
+    /**
+     * Same as loadById, but returns the entities in the order of ids
+     * (first occurrence wins, missing ids are skipped)
+     */
+    public static <T, ID> List<T> loadInOrder(List<ID> ids, Function<Set<ID>, List<T>> loader,
+            Function<T, ID> idOf) {
+        Map<ID, T> byId = loadById(ids, loader, idOf);
+        List<T> ordered = new ArrayList<>(byId.size());
+        Set<ID> seen = new LinkedHashSet<>();
+        for (ID id : ids) {
+            T entity = byId.get(id);
+            if (entity != null && seen.add(id)) {
+                ordered.add(entity);
+            }
+        }
+        return ordered;
+    }
+}
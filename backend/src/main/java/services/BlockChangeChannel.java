@@ -0,0 +1,106 @@
+package services;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Keeps the BlockIndex of every backend node in sync using Postgres
+ * LISTEN/NOTIFY. A block/unblock publishes the blocker id on the
+ * "block_changes" channel; each node listens on a dedicated connection and
+ * reloads that blocker's list. Disabled by default (single node).
+ */
+public class BlockChangeChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(BlockChangeChannel.class);
+
+    private static final String CHANNEL = "block_changes";
+    private static final int POLL_TIMEOUT_MS = 1000;
+    private static final long RECONNECT_DELAY_MS = 5000;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockIndex blockIndex;
+    private final boolean enabled;
+
+    private volatile boolean running;
+    private Thread listener;
+
+    public BlockChangeChannel(DataSource dataSource, JdbcTemplate jdbcTemplate, BlockIndex blockIndex,
+            boolean enabled) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.blockIndex = blockIndex;
+        this.enabled = enabled;
+    }
+
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        listener = new Thread(this::listen, "block-change-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    public void shutdown() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    /**
+     * Tell the other nodes that this blocker's list changed
+     */
+    public void publish(Long blockerId) {
+        if (!enabled) {
+            return;
+        }
+        jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", CHANNEL, String.valueOf(blockerId));
+    }
+
+    private void listen() {
+        boolean reconnecting = false;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                if (reconnecting) {
+                    // Notifications sent while we were disconnected are lost; start from a clean copy
+                    blockIndex.load();
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        blockIndex.reload(Long.valueOf(notification.getParameter()));
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Block change listener lost its connection: {}", e.getMessage());
+                reconnecting = true;
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * In-memory copy of the blocked_users table so block checks on the send path
+ * never hit the database.
+ *
+ * Each blocker maps to a sorted long[] of the users they blocked (copy-on-write,
+ * blocks change rarely). A Bloom filter over (blocker, blocked) pairs sits in
+ * front and answers the common "not blocked" case without touching the map.
+ * Bits are never cleared on unblock; that only raises the false-positive rate,
+ * and false positives are resolved exactly by the array lookup.
+ *
+ * load() builds a complete new map and Bloom filter and publishes both with one
+ * volatile write, so checks running during a reload see either the old or the
+ * new index, never a partial one. Changes made while it reads the table still
+ * go to the old snapshot, and are also recorded and replayed onto the new one
+ * before it is published, so none is lost in the swap. Other nodes are told about changes through
+ * BlockChangeChannel, which calls reload(blockerId), or load() after it
+ * reconnects.
+ */
+public class BlockIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(BlockIndex.class);
+
+    private static final int BLOOM_HASHES = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int bloomBits;
+    private volatile Snapshot current;
+    // Changes applied while a load() is reading the table; guarded by this
+    private List<Consumer<Snapshot>> changesDuringLoad;
+    private final Object loadLock = new Object();
+
+    public BlockIndex(JdbcTemplate jdbcTemplate, int bloomBits) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Round up to a whole number of 64-bit words
+        this.bloomBits = Math.max(64, (bloomBits + 63) / 64 * 64);
+        this.current = new Snapshot(new ConcurrentHashMap<>(), new AtomicLongArray(this.bloomBits / 64));
+    }
+
+    /**
+     * Load every block from the database (startup)
+     */
+    public void load() {
+        synchronized (loadLock) {
+            synchronized (this) {
+                changesDuringLoad = new ArrayList<>();
+            }
+            try {
+                Snapshot fresh = readSnapshot();
+                synchronized (this) {
+                    changesDuringLoad.forEach(change -> change.accept(fresh));
+                    current = fresh;
+                }
+                log.info("Block index loaded: {} blockers", fresh.blockedByBlocker.size());
+            } finally {
+                synchronized (this) {
+                    changesDuringLoad = null;
+                }
+            }
+        }
+    }
+
+    private Snapshot readSnapshot() {
+        Map<Long, List<Long>> loaded = new HashMap<>();
+        jdbcTemplate.query("SELECT blocker_id, blocked_id FROM blocked_users",
+                rs -> {
+                    loaded.computeIfAbsent(rs.getLong("blocker_id"), k -> new ArrayList<>())
+                            .add(rs.getLong("blocked_id"));
+                });
+
+        Snapshot fresh = new Snapshot(new ConcurrentHashMap<>(), new AtomicLongArray(bloomBits / 64));
+        loaded.forEach((blockerId, blockedIds) -> {
+            long[] sorted = blockedIds.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+            fresh.blockedByBlocker.put(blockerId, sorted);
+            for (long blockedId : sorted) {
+                setBloomBits(fresh.bloom, blockerId, blockedId);
+            }
+        });
+        return fresh;
+    }
+
+    /**
+     * Re-read one blocker's list from the database (change made on another node)
+     */
+    public void reload(Long blockerId) {
+        long[] sorted = jdbcTemplate.queryForList(
+                "SELECT blocked_id FROM blocked_users WHERE blocker_id = ? ORDER BY blocked_id", Long.class, blockerId)
+                .stream().mapToLong(Long::longValue).toArray();
+        apply(snapshot -> {
+            for (long blockedId : sorted) {
+                setBloomBits(snapshot.bloom, blockerId, blockedId);
+            }
+            if (sorted.length == 0) {
+                snapshot.blockedByBlocker.remove(blockerId);
+            } else {
+                snapshot.blockedByBlocker.put(blockerId, sorted);
+            }
+        });
+    }
+
+    public boolean isBlocked(Long blockerId, Long blockedId) {
+        Snapshot snapshot = current;
+        if (blockerId == null || blockedId == null || !mightContain(snapshot.bloom, blockerId, blockedId)) {
+            return false;
+        }
+        long[] blocked = snapshot.blockedByBlocker.get(blockerId);
+        return blocked != null && Arrays.binarySearch(blocked, blockedId) >= 0;
+    }
+
+    public void add(Long blockerId, Long blockedId) {
+        apply(snapshot -> addTo(snapshot, blockerId, blockedId));
+    }
+
+    public void remove(Long blockerId, Long blockedId) {
+        apply(snapshot -> removeFrom(snapshot, blockerId, blockedId));
+    }
+
+    // Apply a change to the live snapshot, and remember it if a load() is running
+    private synchronized void apply(Consumer<Snapshot> change) {
+        change.accept(current);
+        if (changesDuringLoad != null) {
+            changesDuringLoad.add(change);
+        }
+    }
+
+    private void addTo(Snapshot snapshot, long blockerId, long blockedId) {
+        setBloomBits(snapshot.bloom, blockerId, blockedId);
+        snapshot.blockedByBlocker.compute(blockerId, (k, current) -> {
+            if (current == null) {
+                return new long[] { blockedId };
+            }
+            int pos = Arrays.binarySearch(current, blockedId);
+            if (pos >= 0) {
+                return current;
+            }
+            int insertAt = -pos - 1;
+            long[] next = new long[current.length + 1];
+            System.arraycopy(current, 0, next, 0, insertAt);
+            next[insertAt] = blockedId;
+            System.arraycopy(current, insertAt, next, insertAt + 1, current.length - insertAt);
+            return next;
+        });
+    }
+
+    private void removeFrom(Snapshot snapshot, long blockerId, long blockedId) {
+        snapshot.blockedByBlocker.computeIfPresent(blockerId, (k, current) -> {
+            int pos = Arrays.binarySearch(current, blockedId);
+            if (pos < 0) {
+                return current;
+            }
+            if (current.length == 1) {
+                return null;
+            }
+            long[] next = new long[current.length - 1];
+            System.arraycopy(current, 0, next, 0, pos);
+            System.arraycopy(current, pos + 1, next, pos, current.length - pos - 1);
+            return next;
+        });
+    }
+
+    public int getBlockerCount() {
+        return current.blockedByBlocker.size();
+    }
+
+    private boolean mightContain(AtomicLongArray bits, long blockerId, long blockedId) {
+        long h = mix(blockerId * 0x9E3779B97F4A7C15L + blockedId);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (int) Long.remainderUnsigned(h, bloomBits);
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+            h = mix(h);
+        }
+        return true;
+    }
+
+    private void setBloomBits(AtomicLongArray bits, long blockerId, long blockedId) {
+        long h = mix(blockerId * 0x9E3779B97F4A7C15L + blockedId);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (int) Long.remainderUnsigned(h, bloomBits);
+            long mask = 1L << bit;
+            bits.getAndAccumulate(bit >>> 6, mask, (a, b) -> a | b);
+            h = mix(h);
+        }
+    }
+
+    // Blocks per blocker plus the Bloom filter built from them, replaced together by load()
+    private static final class Snapshot {
+        final ConcurrentHashMap<Long, long[]> blockedByBlocker;
+        final AtomicLongArray bloom;
+
+        Snapshot(ConcurrentHashMap<Long, long[]> blockedByBlocker, AtomicLongArray bloom) {
+            this.blockedByBlocker = blockedByBlocker;
+            this.bloom = bloom;
+        }
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,95 @@
+package services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Hands out per-conversation message sequence numbers from the
+ * conversation_sequences table.
+ *
+ * reserve() is a single upsert; its row lock serialises concurrent senders of
+ * the same conversation. It must run in the transaction that inserts the
+ * messages so that a rollback also returns the numbers (no gaps), and only
+ * for messages the recipient will see (not blocked ones). The same
+ * transaction calls touch() after the insert, so updated_at is as close to
+ * the commit as possible.
+ *
+ * updated_at is kept at millisecond precision, the precision of the /sync
+ * cursor. It is still set before the commit, so /sync looks back a little
+ * further than the client's cursor (dreamstay.messages.commit-lag-ms).
+ */
+public class ConversationSequencer {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationSequencer.class);
+
+    private static final String RESERVE_SQL = "INSERT INTO conversation_sequences "
+            + "(user_a, user_b, last_seq, updated_at) VALUES (?, ?, ?, ?) "
+            + "ON CONFLICT (user_a, user_b) DO UPDATE "
+            + "SET last_seq = conversation_sequences.last_seq + EXCLUDED.last_seq, updated_at = EXCLUDED.updated_at "
+            + "RETURNING last_seq";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public ConversationSequencer(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Reserve count consecutive numbers for the conversation of two users.
+     *
+     * @return the last reserved number; the first one is (last - count + 1)
+     */
+    public long reserve(Long user1Id, Long user2Id, int count) {
+        return jdbcTemplate.queryForObject(RESERVE_SQL, Long.class, Math.min(user1Id, user2Id),
+                Math.max(user1Id, user2Id), count, now());
+    }
+
+    /**
+     * Mark a conversation as changed: after inserting its messages (same
+     * transaction), or without adding messages (e.g. deletion)
+     */
+    public void touch(Long user1Id, Long user2Id) {
+        jdbcTemplate.update("UPDATE conversation_sequences SET updated_at = ? WHERE user_a = ? AND user_b = ?",
+                now(), Math.min(user1Id, user2Id), Math.max(user1Id, user2Id));
+    }
+
+    private static Timestamp now() {
+        return Timestamp.valueOf(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+    }
+
+    /**
+     * Number messages stored before sequence numbers existed. Runs at startup
+     * and is a no-op once every message has a number.
+     */
+    public void backfill() {
+        // Blocked messages never get a number
+        Boolean missing = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM messages WHERE seq IS NULL AND is_blocked IS NOT TRUE)", Boolean.class);
+        if (!Boolean.TRUE.equals(missing)) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE messages SET seq = NULL WHERE is_blocked");
+            jdbcTemplate.update("UPDATE messages m SET seq = s.rn FROM ("
+                    + "SELECT id, ROW_NUMBER() OVER (PARTITION BY LEAST(sender_id, recipient_id), "
+                    + "GREATEST(sender_id, recipient_id) ORDER BY timestamp, id) AS rn FROM messages "
+                    + "WHERE is_blocked IS NOT TRUE) s "
+                    + "WHERE m.id = s.id");
+            jdbcTemplate.update("INSERT INTO conversation_sequences (user_a, user_b, last_seq, updated_at) "
+                    + "SELECT LEAST(sender_id, recipient_id), GREATEST(sender_id, recipient_id), MAX(seq), "
+                    + "DATE_TRUNC('milliseconds', MAX(timestamp)) FROM messages "
+                    + "WHERE is_blocked IS NOT TRUE GROUP BY 1, 2 "
+                    + "ON CONFLICT (user_a, user_b) DO UPDATE "
+                    + "SET last_seq = EXCLUDED.last_seq, updated_at = EXCLUDED.updated_at");
+        });
+        log.info("Backfilled per-conversation message sequence numbers");
+    }
+}
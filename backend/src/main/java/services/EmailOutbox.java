@@ -0,0 +1,292 @@
+package services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durable outbound email queue (outbound_emails table) and its dispatcher.
+ *
+ * enqueue is a single INSERT, so request threads never wait on a mail server.
+ * A dispatcher thread claims due rows in batches (FOR UPDATE SKIP LOCKED, so
+ * several backend nodes can share the table) and hands each batch to one of
+ * `workers` threads, which delivers it through the EmailTransport.
+ *
+ * A failed email is retried with exponential backoff (backoffBaseMillis,
+ * doubling per attempt up to backoffMaxMillis, with jitter) and marked FAILED
+ * after maxAttempts. Claimed rows carry a lease; if a node dies mid-batch,
+ * the rows become due again when the lease runs out, so an email may be sent
+ * twice but is never lost. While a batch is being sent the lease is renewed
+ * before each email once half of it has passed, so a slow mail server cannot
+ * keep a live batch past its lease and have it sent again by another node.
+ * Sent rows are purged after the retention period.
+ */
+public class EmailOutbox {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailOutbox.class);
+
+    private static final String CLAIM_SQL = "UPDATE outbound_emails SET status = 'SENDING', locked_until_ms = ? "
+            + "WHERE id IN (SELECT id FROM outbound_emails "
+            + "WHERE (status = 'PENDING' AND next_attempt_at_ms <= ?) OR (status = 'SENDING' AND locked_until_ms < ?) "
+            + "ORDER BY next_attempt_at_ms LIMIT ? FOR UPDATE SKIP LOCKED) "
+            + "RETURNING id, recipient, subject, body, attempts";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmailTransport transport;
+    private final int workers;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final int maxAttempts;
+    private final long backoffBaseMillis;
+    private final long backoffMaxMillis;
+    private final long leaseMillis;
+    private final long retentionMillis;
+
+    private final Semaphore idleWorkers;
+    private final Object signal = new Object();
+    private boolean signalled;
+    private volatile boolean running;
+    private ThreadPoolExecutor pool;
+    private Thread dispatcher;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Rows per status (SENT excluded) plus delivery counters since startup
+     */
+    public record Stats(Map<String, Long> queued, long sent, long retried, long failed, int busyWorkers) {
+    }
+
+    public EmailOutbox(JdbcTemplate jdbcTemplate, EmailTransport transport, int workers, int batchSize,
+            long pollIntervalMillis, int maxAttempts, long backoffBaseMillis, long backoffMaxMillis, long leaseMillis,
+            long retentionMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transport = transport;
+        this.workers = Math.max(1, workers);
+        this.batchSize = Math.max(1, batchSize);
+        this.pollIntervalMillis = Math.max(10, pollIntervalMillis);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffBaseMillis = Math.max(1, backoffBaseMillis);
+        this.backoffMaxMillis = Math.max(this.backoffBaseMillis, backoffMaxMillis);
+        this.leaseMillis = Math.max(1000, leaseMillis);
+        this.retentionMillis = Math.max(0, retentionMillis);
+        this.idleWorkers = new Semaphore(this.workers);
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        AtomicInteger threadCount = new AtomicInteger();
+        pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "email-sender-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        dispatcher = new Thread(this::dispatch, "email-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Stop claiming new emails and let the batches in flight finish
+     */
+    public void shutdown() {
+        running = false;
+        wake();
+        try {
+            if (dispatcher != null) {
+                dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+            }
+            if (pool != null) {
+                pool.shutdown();
+                pool.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue an email for delivery and return its id; delivery happens in the background
+     */
+    public long enqueue(String recipient, String subject, String body) {
+        long now = System.currentTimeMillis();
+        Long id = jdbcTemplate.queryForObject("INSERT INTO outbound_emails "
+                + "(recipient, subject, body, status, attempts, next_attempt_at_ms, created_at_ms) "
+                + "VALUES (?, ?, ?, 'PENDING', 0, ?, ?) RETURNING id", Long.class, recipient, subject, body, now, now);
+        wake();
+        return id != null ? id : -1L;
+    }
+
+    public Stats getStats() {
+        Map<String, Long> queued = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT status, COUNT(*) AS n FROM outbound_emails WHERE status <> 'SENT' GROUP BY status",
+                rs -> {
+                    queued.put(rs.getString("status"), rs.getLong("n"));
+                });
+        return new Stats(queued, sent.sum(), retried.sum(), failed.sum(), workers - idleWorkers.availablePermits());
+    }
+
+    @Scheduled(initialDelayString = "${dreamstay.mail.purge-interval-ms:3600000}",
+            fixedDelayString = "${dreamstay.mail.purge-interval-ms:3600000}")
+    public void purgeSent() {
+        int purged = jdbcTemplate.update("DELETE FROM outbound_emails WHERE status = 'SENT' AND sent_at_ms < ?",
+                System.currentTimeMillis() - retentionMillis);
+        if (purged > 0) {
+            log.info("Purged {} sent emails", purged);
+        }
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                int free = idleWorkers.availablePermits();
+                if (free == 0 || claimAndSubmit(free) == 0) {
+                    await();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Email dispatch failed, retrying in {} ms", pollIntervalMillis, e);
+                try {
+                    await();
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private int claimAndSubmit(int freeWorkers) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        List<OutboundEmail> claimed = jdbcTemplate.query(CLAIM_SQL,
+                (rs, rowNum) -> new OutboundEmail(rs.getLong("id"), rs.getString("recipient"),
+                        rs.getString("subject"), rs.getString("body"), rs.getInt("attempts")),
+                now + leaseMillis, now, now, freeWorkers * batchSize);
+        for (int from = 0; from < claimed.size(); from += batchSize) {
+            List<OutboundEmail> batch = claimed.subList(from, Math.min(from + batchSize, claimed.size()));
+            idleWorkers.acquire();
+            pool.execute(() -> {
+                try {
+                    deliver(batch, now + leaseMillis);
+                } finally {
+                    idleWorkers.release();
+                    wake();
+                }
+            });
+        }
+        return claimed.size();
+    }
+
+    private void deliver(List<OutboundEmail> batch, long leasedUntilMillis) {
+        long[] leasedUntil = { leasedUntilMillis };
+        Runnable renewLease = () -> {
+            long now = System.currentTimeMillis();
+            if (leasedUntil[0] - now < leaseMillis / 2) {
+                leasedUntil[0] = now + leaseMillis;
+                renewLease(batch, leasedUntil[0]);
+            }
+        };
+        Map<Long, String> failures;
+        try {
+            failures = transport.send(batch, renewLease);
+        } catch (Exception e) {
+            log.warn("Email batch of {} failed: {}", batch.size(), e.getMessage());
+            failures = new LinkedHashMap<>();
+            for (OutboundEmail email : batch) {
+                failures.put(email.id(), String.valueOf(e.getMessage()));
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        List<Object[]> sentRows = new ArrayList<>();
+        List<Object[]> retryRows = new ArrayList<>();
+        List<Object[]> failedRows = new ArrayList<>();
+        for (OutboundEmail email : batch) {
+            String error = failures.get(email.id());
+            int attempts = email.attempts() + 1;
+            if (error == null) {
+                sentRows.add(new Object[] { attempts, now, email.id() });
+            } else if (attempts >= maxAttempts) {
+                failedRows.add(new Object[] { attempts, truncate(error), email.id() });
+                log.warn("Giving up on email id={} to={} after {} attempts: {}", email.id(), email.recipient(),
+                        attempts, error);
+            } else {
+                retryRows.add(new Object[] { attempts, now + backoffMillis(attempts), truncate(error), email.id() });
+            }
+        }
+        if (!sentRows.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE outbound_emails SET status = 'SENT', attempts = ?, sent_at_ms = ?, "
+                    + "locked_until_ms = NULL, last_error = NULL WHERE id = ?", sentRows);
+        }
+        if (!retryRows.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE outbound_emails SET status = 'PENDING', attempts = ?, "
+                    + "next_attempt_at_ms = ?, last_error = ?, locked_until_ms = NULL WHERE id = ?", retryRows);
+        }
+        if (!failedRows.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE outbound_emails SET status = 'FAILED', attempts = ?, last_error = ?, "
+                    + "locked_until_ms = NULL WHERE id = ?", failedRows);
+        }
+        sent.add(sentRows.size());
+        retried.add(retryRows.size());
+        failed.add(failedRows.size());
+    }
+
+    private void renewLease(List<OutboundEmail> batch, long lockedUntilMillis) {
+        List<Object[]> rows = new ArrayList<>();
+        for (OutboundEmail email : batch) {
+            rows.add(new Object[] { lockedUntilMillis, email.id() });
+        }
+        try {
+            jdbcTemplate.batchUpdate("UPDATE outbound_emails SET locked_until_ms = ? "
+                    + "WHERE id = ? AND status = 'SENDING'", rows);
+        } catch (RuntimeException e) {
+            // Keep sending; at worst the lease runs out and an email goes out twice
+            log.warn("Could not renew the lease on an email batch of {}: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    // base * 2^(attempt-1), capped, then half of it randomised so retries spread out
+    private long backoffMillis(int attempt) {
+        long delay = attempt >= 31 ? backoffMaxMillis : Math.min(backoffMaxMillis, backoffBaseMillis << (attempt - 1));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static String truncate(String error) {
+        return error.length() <= 1000 ? error : error.substring(0, 1000);
+    }
+
+    private void await() throws InterruptedException {
+        synchronized (signal) {
+            if (!signalled) {
+                signal.wait(pollIntervalMillis);
+            }
+            signalled = false;
+        }
+    }
+
+    private void wake() {
+        synchronized (signal) {
+            signalled = true;
+            signal.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package services;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delivers batches of emails for the EmailOutbox.
+ *
+ * Implementations: LoggingEmailTransport (writes to the log, the default for
+ * local development) and SmtpEmailTransport (real SMTP, or the embedded
+ * LocalSmtpServer). Selected with dreamstay.mail.transport.
+ */
+public interface EmailTransport {
+
+    /**
+     * Send a batch, ideally over one connection.
+     *
+     * @param beforeEach run before each email is handed over; the outbox uses
+     *                   it to renew its lease on the batch while it is sent
+     * @return the emails that could not be sent, by id, with the reason;
+     *         empty when every email was accepted
+     * @throws Exception when nothing could be sent (e.g. server unreachable);
+     *                   the whole batch is retried later
+     */
+    Map<Long, String> send(List<OutboundEmail> batch, Runnable beforeEach) throws Exception;
+
+    default void close() {
+    }
+}
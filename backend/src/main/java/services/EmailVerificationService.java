@@ -1,80 +1,103 @@
 package services;
 
+import exceptions.ServiceOverloadedException;
 import models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 
 /**
  * Service for handling email verification workflow (FR-01, FR-02)
- * Generates verification codes and validates them
+ * Generates verification codes and validates them.
+ * Pending codes live in a VerificationCodeStore, not on the user row.
  */
 public class EmailVerificationService {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailVerificationService.class);
+
     private static final int CODE_EXPIRY_MINUTES = 15;
     private SecurityService securityService;
+    private EmailOutbox emailOutbox;
+    private VerificationCodeStore codeStore;
+    private int maxAttempts;
 
-    public EmailVerificationService(SecurityService securityService) {
+    public EmailVerificationService(SecurityService securityService, EmailOutbox emailOutbox,
+            VerificationCodeStore codeStore, int maxAttempts) {
         this.securityService = securityService;
+        this.emailOutbox = emailOutbox;
+        this.codeStore = codeStore;
+        this.maxAttempts = Math.max(1, maxAttempts);
     }
 
     /**
-     * Generate and send a verification code to the user's email
+     * Fail fast with a ServiceOverloadedException when the code store is full
+     */
+    public void ensureCapacity() {
+        if (!codeStore.hasCapacity()) {
+            throw new ServiceOverloadedException("Too many pending verification codes, please retry");
+        }
+    }
+
+    /**
+     * Generate a verification code and queue the email carrying it.
+     * Returns once the email is queued; delivery happens in the background.
      */
     public void sendVerificationCode(User user) {
         // Generate 6-digit code
         String code = securityService.generateVerificationCode();
-
-        // Set code and expiry on user
-        user.setVerificationCode(code);
         long expiryTime = System.currentTimeMillis() + (CODE_EXPIRY_MINUTES * 60 * 1000);
-        user.setVerificationCodeExpiry(expiryTime);
+        codeStore.issue(user.getId(), VerificationCodeStore.Purpose.EMAIL_VERIFICATION, code, expiryTime);
 
-        // Display verification code (in console app, we can't actually send email)
-        System.out.println("\n========================================");
-        System.out.println("EMAIL VERIFICATION");
-        System.out.println("========================================");
-        System.out.println("To: " + user.getEmail());
-        System.out.println("Subject: Email Verification Code");
-        System.out.println("\nYour verification code is: " + code);
-        System.out.println("This code will expire in " + CODE_EXPIRY_MINUTES + " minutes.");
-        System.out.println("========================================\n");
+        long emailId = emailOutbox.enqueue(user.getEmail(), "Your DreamStay verification code",
+                "Hello " + user.getName() + ",\n\n"
+                        + "Your DreamStay verification code is " + code + ".\n"
+                        + "It expires in " + CODE_EXPIRY_MINUTES + " minutes.\n\n"
+                        + "If you did not create an account, you can ignore this email.\n");
+        log.atInfo().addKeyValue("event", "verification_email").addKeyValue("userId", user.getId())
+                .addKeyValue("emailId", emailId).log("Email verification code queued");
     }
 
     /**
-     * Verify a code entered by the user
+     * Verify a code entered by the user. On success the user is marked email
+     * verified (the caller saves it); a code is usable once, and at most
+     * maxAttempts wrong guesses are allowed per code.
      */
-    public boolean verifyCode(User user, String enteredCode) {
-        if (user.getVerificationCode() == null) {
-            System.out.println("No verification code found for this user.");
-            return false;
-        }
-
-        // Check if code has expired
-        if (System.currentTimeMillis() > user.getVerificationCodeExpiry()) {
-            System.out.println("Verification code has expired.");
-            user.setVerificationCode(null);
-            user.setVerificationCodeExpiry(0);
-            return false;
-        }
-
-        // Check if code matches
-        if (user.getVerificationCode().equals(enteredCode)) {
+    public VerificationCodeStore.Result verifyCode(User user, String enteredCode) {
+        VerificationCodeStore.Result result = codeStore.check(user.getId(),
+                VerificationCodeStore.Purpose.EMAIL_VERIFICATION, enteredCode, maxAttempts, System.currentTimeMillis());
+        if (result == VerificationCodeStore.Result.VERIFIED) {
             user.setEmailVerified(true);
-            user.setVerificationCode(null);
-            user.setVerificationCodeExpiry(0);
-            System.out.println("Email verified successfully!");
-            return true;
+            log.info("Email verified userId={}", user.getId());
         } else {
-            System.out.println("Invalid verification code.");
-            return false;
+            log.info("Email verification failed userId={} result={}", user.getId(), result);
         }
+        return result;
     }
 
     /**
-     * Check if a verification code is still valid
+     * Queue a password reset code. It has its own slot in the code store, so
+     * it neither replaces nor is replaced by a pending verification code.
      */
-    public boolean isCodeValid(User user) {
-        if (user.getVerificationCode() == null) {
-            return false;
-        }
-        return System.currentTimeMillis() <= user.getVerificationCodeExpiry();
+    public void sendPasswordResetCode(User user) {
+        String code = securityService.generateVerificationCode();
+        codeStore.issue(user.getId(), VerificationCodeStore.Purpose.PASSWORD_RESET, code,
+                System.currentTimeMillis() + (CODE_EXPIRY_MINUTES * 60 * 1000));
+
+        long emailId = emailOutbox.enqueue(user.getEmail(), "Your DreamStay password reset code",
+                "Hello " + user.getName() + ",\n\n"
+                        + "Your DreamStay password reset code is " + code + ".\n"
+                        + "It expires in " + CODE_EXPIRY_MINUTES + " minutes.\n\n"
+                        + "If you did not ask to reset your password, you can ignore this email.\n");
+        log.atInfo().addKeyValue("event", "password_reset_email").addKeyValue("userId", user.getId())
+                .addKeyValue("emailId", emailId).log("Password reset code queued");
+    }
+
+    /**
+     * Check a password reset code (same attempt limits as verifyCode)
+     */
+    public VerificationCodeStore.Result checkResetCode(User user, String enteredCode) {
+        return codeStore.check(user.getId(), VerificationCodeStore.Purpose.PASSWORD_RESET, enteredCode, maxAttempts,
+                System.currentTimeMillis());
     }
 
     /**
@@ -83,4 +106,9 @@ public class EmailVerificationService {
     public void resendVerificationCode(User user) {
         sendVerificationCode(user);
     }
+
+    @Scheduled(fixedDelayString = "${dreamstay.verification.expiry-tick-ms:1000}")
+    public void evictExpiredCodes() {
+        codeStore.evictExpired(System.currentTimeMillis());
+    }
 }
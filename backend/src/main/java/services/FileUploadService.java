@@ -1,13 +1,15 @@
 package services;
 
+import exceptions.UploadRejectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.multipart.MultipartFile;
+
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 /**
@@ -15,13 +17,15 @@ import java.util.UUID;
  * Saves uploaded images to the file system and returns their paths
  * 
  * This service handles:
- * - Saving uploaded files to disk
+ * - Moving uploaded files into place (see UploadFileWriter)
  * - Generating unique file names
  * - Validating file types
  * - Creating upload directories
  */
 public class FileUploadService {
 
+    private static final Logger log = LoggerFactory.getLogger(FileUploadService.class);
+
     // Base directory for all uploads
     private static final String UPLOAD_BASE_DIR = "uploads/properties/";
 
@@ -50,188 +54,86 @@ public class FileUploadService {
     /**
      * Save ID document in a secure location
      */
-    public String saveIdDocument(Long userId, byte[] fileData, String originalFileName) throws IOException {
-        // ... (existing implementation)
-        // Re-declaring entire method for context if needed, but I'll use target
-        // correctly
-        // Just adding saveAvatar below saveIdDocument
-        if (fileData.length > MAX_IMAGE_SIZE) {
-            throw new IOException("File too large (max 5MB)");
-        }
+    public String saveIdDocument(Long userId, MultipartFile file) throws IOException {
+        String originalFileName = file.getOriginalFilename();
         if (!isValidImageFile(originalFileName)) {
-            throw new IOException("Invalid file type");
+            throw new UploadRejectedException("Invalid file type");
         }
 
         String extension = getFileExtension(originalFileName);
         String uniqueFileName = "id_" + userId + "_" + UUID.randomUUID().toString() + extension;
         String filePath = ID_DOC_DIR + uniqueFileName;
 
-        try (FileOutputStream fos = new FileOutputStream(filePath)) {
-            fos.write(fileData);
-        }
-
+        UploadFileWriter.move(file, Paths.get(filePath), MAX_IMAGE_SIZE, "File too large (max 5MB)");
         return filePath;
     }
 
     /**
      * Save Avatar image
      */
-    public String saveAvatar(Long userId, byte[] fileData, String originalFileName) throws IOException {
-        if (fileData.length > MAX_IMAGE_SIZE) {
-            throw new IOException("File too large (max 5MB)");
-        }
+    public String saveAvatar(Long userId, MultipartFile file) throws IOException {
+        String originalFileName = file.getOriginalFilename();
         if (!isValidImageFile(originalFileName)) {
-            throw new IOException("Invalid file type");
+            throw new UploadRejectedException("Invalid file type");
         }
 
         String extension = getFileExtension(originalFileName);
-        // Use consistent naming (e.g. avatar_123.jpg) or unique if historical
-        // Overwriting is cleaner for avatars to save space, but browser caching might
-        // be an issue.
         // Using UUID helps with cache busting.
         String uniqueFileName = "avatar_" + userId + "_" + UUID.randomUUID().toString() + extension;
-        String uploadDir = "uploads/avatars/";
-        createDirectory(uploadDir);
-        String filePath = uploadDir + uniqueFileName;
-
-        try (FileOutputStream fos = new FileOutputStream(filePath)) {
-            fos.write(fileData);
-        }
+        String filePath = "uploads/avatars/" + uniqueFileName;
 
+        UploadFileWriter.move(file, Paths.get(filePath), MAX_IMAGE_SIZE, "File too large (max 5MB)");
         return filePath;
     }
 
-    // ... existing methods ...
-
     /**
-     * Save multiple property photos
+     * Save a property photo
      * 
      * @param propertyId - ID of the property
-     * @param files      - Array of file data (bytes)
-     * @param fileNames  - Original file names
-     * @return List of saved file paths
-     */
-    public List<String> savePropertyPhotos(Long propertyId, byte[][] files, String[] fileNames) {
-        List<String> savedPaths = new ArrayList<>();
-
-        if (files.length != fileNames.length) {
-            throw new IllegalArgumentException("Files and fileNames arrays must have the same length");
-        }
-
-        for (int i = 0; i < files.length; i++) {
-            try {
-                String savedPath = saveFile(propertyId, files[i], fileNames[i]);
-                savedPaths.add(savedPath);
-            } catch (IOException e) {
-                System.err.println("Failed to save file: " + fileNames[i] + " - " + e.getMessage());
-                // Continue with other files
-            }
-        }
-
-        return savedPaths;
-    }
-
-    /**
-     * Save a single image file
-     * 
-     * @param propertyId       - ID of the property
-     * @param fileData         - File content as bytes
-     * @param originalFileName - Original file name
+     * @param file       - Uploaded file, already spooled to disk by the container
      * @return Path where the file was saved
      */
-    private String saveFile(Long propertyId, byte[] fileData, String originalFileName) throws IOException {
-        // Validate file size
-        if (fileData.length > MAX_IMAGE_SIZE) {
-            throw new IOException("File too large: " + originalFileName + " (max 5MB)");
-        }
-
+    public String savePropertyPhoto(Long propertyId, MultipartFile file) throws IOException {
+        String originalFileName = file.getOriginalFilename();
         // Validate file extension
         if (!isValidImageFile(originalFileName)) {
-            throw new IOException("Invalid file type: " + originalFileName);
+            throw new UploadRejectedException("Invalid file type: " + originalFileName);
         }
 
-        // Generate unique file name
+        // Generate unique file name in the property-specific directory
         String extension = getFileExtension(originalFileName);
-        String uniqueFileName = UUID.randomUUID().toString() + extension;
-
-        // Create property-specific directory
-        String propertyDir = UPLOAD_BASE_DIR + propertyId + "/";
-        createDirectory(propertyDir);
+        String filePath = UPLOAD_BASE_DIR + propertyId + "/" + UUID.randomUUID().toString() + extension;
 
-        // Full file path
-        String filePath = propertyDir + uniqueFileName;
-
-        // Save file to disk
-        try (FileOutputStream fos = new FileOutputStream(filePath)) {
-            fos.write(fileData);
-        }
+        // Rejected on its size before anything is moved
+        UploadFileWriter.move(file, Paths.get(filePath), MAX_IMAGE_SIZE,
+                "File too large: " + originalFileName + " (max 5MB)");
 
         // Return relative path (for storing in database)
         return filePath;
     }
 
     /**
-     * Save multiple property videos
+     * Save a property video
      * 
      * @param propertyId - ID of the property
-     * @param files      - Array of file data (bytes)
-     * @param fileNames  - Original file names
-     * @return List of saved file paths
-     */
-    public List<String> savePropertyVideos(Long propertyId, byte[][] files, String[] fileNames) {
-        List<String> savedPaths = new ArrayList<>();
-
-        if (files.length != fileNames.length) {
-            throw new IllegalArgumentException("Files and fileNames arrays must have the same length");
-        }
-
-        for (int i = 0; i < files.length; i++) {
-            try {
-                String savedPath = saveVideoFile(propertyId, files[i], fileNames[i]);
-                savedPaths.add(savedPath);
-            } catch (IOException e) {
-                System.err.println("Failed to save video: " + fileNames[i] + " - " + e.getMessage());
-                // Continue with other files
-            }
-        }
-
-        return savedPaths;
-    }
-
-    /**
-     * Save a single video file
-     * 
-     * @param propertyId       - ID of the property
-     * @param fileData         - File content as bytes
-     * @param originalFileName - Original file name
+     * @param file       - Uploaded file, already spooled to disk by the container
      * @return Path where the file was saved
      */
-    private String saveVideoFile(Long propertyId, byte[] fileData, String originalFileName) throws IOException {
-        // Validate file size
-        if (fileData.length > MAX_VIDEO_SIZE) {
-            throw new IOException("Video file too large: " + originalFileName + " (max 50MB)");
-        }
-
+    public String savePropertyVideo(Long propertyId, MultipartFile file) throws IOException {
+        String originalFileName = file.getOriginalFilename();
         // Validate file extension
         if (!isValidVideoFile(originalFileName)) {
-            throw new IOException("Invalid video file type: " + originalFileName);
+            throw new UploadRejectedException("Invalid video file type: " + originalFileName);
         }
 
-        // Generate unique file name
+        // Generate unique file name in the property-specific directory
         String extension = getFileExtension(originalFileName);
-        String uniqueFileName = "video_" + UUID.randomUUID().toString() + extension;
-
-        // Create property-specific directory
-        String propertyDir = UPLOAD_BASE_DIR + propertyId + "/videos/";
-        createDirectory(propertyDir);
+        String filePath = UPLOAD_BASE_DIR + propertyId + "/videos/video_" + UUID.randomUUID().toString()
+                + extension;
 
-        // Full file path
-        String filePath = propertyDir + uniqueFileName;
-
-        // Save file to disk
-        try (FileOutputStream fos = new FileOutputStream(filePath)) {
-            fos.write(fileData);
-        }
+        // Rejected on its size before anything is moved
+        UploadFileWriter.move(file, Paths.get(filePath), MAX_VIDEO_SIZE,
+                "Video file too large: " + originalFileName + " (max 50MB)");
 
         // Return relative path (for storing in database)
         return filePath;
@@ -300,7 +202,7 @@ public class FileUploadService {
             Path path = Paths.get(filePath);
             return Files.deleteIfExists(path);
         } catch (IOException e) {
-            System.err.println("Failed to delete file: " + filePath + " - " + e.getMessage());
+            log.warn("Failed to delete file {}: {}", filePath, e.getMessage());
             return false;
         }
     }
@@ -1,8 +1,14 @@
 package services;
 
+import exceptions.UploadRejectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.multipart.MultipartFile;
+
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -13,6 +19,9 @@ import java.util.UUID;
  * Stores documents in the file system for admin verification
  */
 public class IDUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(IDUploadService.class);
+
     private static final String UPLOAD_BASE_DIR = "uploads/id_documents/";
     private static final String[] ALLOWED_EXTENSIONS = { ".pdf", ".jpg", ".jpeg", ".png" };
     private static final long MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
@@ -24,39 +33,19 @@ public class IDUploadService {
     /**
      * Upload an ID document file
      * 
-     * @param userId           - ID of the user uploading the document
-     * @param fileData         - File content as bytes
-     * @param originalFileName - Original file name
+     * @param userId - ID of the user uploading the document
+     * @param file   - Uploaded file, already spooled to disk by the container
      * @return Path where the file was saved
      */
-    public String uploadIDDocument(Long userId, byte[] fileData, String originalFileName) throws IOException {
-        // Validate file size
-        if (fileData.length > MAX_FILE_SIZE) {
-            throw new IOException("File too large: " + originalFileName + " (max 10MB)");
-        }
-
-        // Validate file extension
-        if (!isValidDocumentFile(originalFileName)) {
-            throw new IOException("Invalid file type: " + originalFileName + ". Allowed: PDF, JPG, PNG");
-        }
-
-        // Generate unique file name
-        String extension = getFileExtension(originalFileName);
-        String uniqueFileName = "ID_" + userId + "_" + UUID.randomUUID().toString() + extension;
+    public String uploadIDDocument(Long userId, MultipartFile file) throws IOException {
+        String originalFileName = file.getOriginalFilename();
+        String filePath = newDocumentPath(userId, originalFileName);
 
-        // Create user-specific directory
-        String userDir = UPLOAD_BASE_DIR + userId + "/";
-        createDirectory(userDir);
-
-        // Full file path
-        String filePath = userDir + uniqueFileName;
-
-        // Save file to disk
-        try (FileOutputStream fos = new FileOutputStream(filePath)) {
-            fos.write(fileData);
-        }
+        // Rejected on its size before anything is moved
+        UploadFileWriter.move(file, Paths.get(filePath), MAX_FILE_SIZE,
+                "File too large: " + originalFileName + " (max 10MB)");
 
-        System.out.println("ID document uploaded successfully: " + filePath);
+        log.info("ID document uploaded userId={} path={}", userId, filePath);
         return filePath;
     }
 
@@ -70,8 +59,30 @@ public class IDUploadService {
             throw new IOException("File not found: " + sourceFilePath);
         }
 
-        byte[] fileData = Files.readAllBytes(sourceFile.toPath());
-        return uploadIDDocument(userId, fileData, sourceFile.getName());
+        String filePath = newDocumentPath(userId, sourceFile.getName());
+        try (InputStream in = new FileInputStream(sourceFile)) {
+            // Size is enforced while copying
+            UploadFileWriter.write(in, Paths.get(filePath), MAX_FILE_SIZE,
+                    "File too large: " + sourceFile.getName() + " (max 10MB)");
+        }
+
+        log.info("ID document uploaded userId={} path={}", userId, filePath);
+        return filePath;
+    }
+
+    /**
+     * Validate the file type and pick a unique path in the user-specific directory
+     */
+    private String newDocumentPath(Long userId, String originalFileName) throws UploadRejectedException {
+        // Validate file extension
+        if (!isValidDocumentFile(originalFileName)) {
+            throw new UploadRejectedException(
+                    "Invalid file type: " + originalFileName + ". Allowed: PDF, JPG, PNG");
+        }
+
+        String extension = getFileExtension(originalFileName);
+        String uniqueFileName = "ID_" + userId + "_" + UUID.randomUUID().toString() + extension;
+        return UPLOAD_BASE_DIR + userId + "/" + uniqueFileName;
     }
 
     /**
@@ -123,7 +134,7 @@ public class IDUploadService {
             Path path = Paths.get(filePath);
             return Files.deleteIfExists(path);
         } catch (IOException e) {
-            System.err.println("Failed to delete document: " + filePath + " - " + e.getMessage());
+            log.warn("Failed to delete document {}: {}", filePath, e.getMessage());
             return false;
         }
     }
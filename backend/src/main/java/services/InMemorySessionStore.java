@@ -0,0 +1,95 @@
+package services;
+
+import models.SessionToken;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sessions in a ConcurrentHashMap (lock-free reads), expired by a
+ * TimingWheel so eviction only touches the sessions that are due.
+ */
+public class InMemorySessionStore implements SessionStore {
+
+    private final ConcurrentHashMap<String, SessionToken> sessions = new ConcurrentHashMap<>();
+    private final TimingWheel<SessionToken> expiryWheel;
+    // tokenId -> expiry of access tokens revoked before they expired
+    private final ConcurrentHashMap<Long, Long> revokedAccessTokens = new ConcurrentHashMap<>();
+    // userId -> tokens of that user expiring up to this time are revoked
+    private final ConcurrentHashMap<Long, Long> revokedUsers = new ConcurrentHashMap<>();
+
+    public InMemorySessionStore(long expiryTickMillis) {
+        this.expiryWheel = new TimingWheel<>(expiryTickMillis, System.currentTimeMillis());
+    }
+
+    @Override
+    public void save(SessionToken token) {
+        sessions.put(token.getToken(), token);
+        expiryWheel.schedule(token, token.getExpiresAtMillis());
+    }
+
+    @Override
+    public SessionToken find(String token) {
+        return sessions.get(token);
+    }
+
+    @Override
+    public boolean remove(String token) {
+        return sessions.remove(token) != null;
+    }
+
+    /**
+     * Scans every session; only runs on a password reset
+     */
+    @Override
+    public int removeAllForUser(long userId) {
+        int removed = 0;
+        for (SessionToken token : sessions.values()) {
+            if (token.getUserId() == userId && sessions.remove(token.getToken(), token)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public int evictExpired(long nowMillis) {
+        if (!revokedAccessTokens.isEmpty()) {
+            revokedAccessTokens.values().removeIf(expiresAt -> expiresAt < nowMillis);
+        }
+        if (!revokedUsers.isEmpty()) {
+            revokedUsers.values().removeIf(expiresUntil -> expiresUntil < nowMillis);
+        }
+        int evicted = 0;
+        for (SessionToken token : expiryWheel.advance(nowMillis)) {
+            // Skip tokens already logged out (the wheel has no cancel)
+            if (sessions.remove(token.getToken(), token)) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    @Override
+    public int size() {
+        return sessions.size();
+    }
+
+    @Override
+    public void revokeAccessToken(long tokenId, long expiresAtMillis) {
+        revokedAccessTokens.put(tokenId, expiresAtMillis);
+    }
+
+    @Override
+    public void revokeAccessTokensOfUser(long userId, long expiresUntilMillis) {
+        revokedUsers.merge(userId, expiresUntilMillis, Math::max);
+    }
+
+    @Override
+    public boolean isAccessTokenRevoked(long tokenId, long userId, long expiresAtMillis) {
+        if (!revokedAccessTokens.isEmpty() && revokedAccessTokens.containsKey(tokenId)) {
+            return true;
+        }
+        Long expiresUntil = revokedUsers.isEmpty() ? null : revokedUsers.get(userId);
+        return expiresUntil != null && expiresAtMillis <= expiresUntil;
+    }
+}
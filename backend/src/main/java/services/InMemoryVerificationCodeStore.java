@@ -0,0 +1,101 @@
+package services;
+
+import exceptions.ServiceOverloadedException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codes in a ConcurrentHashMap keyed by user id and purpose, expired by a
+ * TimingWheel.
+ *
+ * At most maxEntries codes are held. Codes live for minutes, so the map only
+ * fills up under a registration flood; new codes are then refused with a
+ * ServiceOverloadedException (503 + Retry-After) until old ones expire.
+ */
+public class InMemoryVerificationCodeStore implements VerificationCodeStore {
+
+    private final ConcurrentHashMap<Key, PendingCode> codes = new ConcurrentHashMap<>();
+    private final TimingWheel<PendingCode> expiryWheel;
+    private final int maxEntries;
+
+    private record Key(long userId, Purpose purpose) {
+    }
+
+    private static final class PendingCode {
+        final Key key;
+        final byte[] code;
+        final long expiresAtMillis;
+        int attempts;
+
+        PendingCode(Key key, String code, long expiresAtMillis) {
+            this.key = key;
+            this.code = code.getBytes(StandardCharsets.UTF_8);
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    public InMemoryVerificationCodeStore(long expiryTickMillis, int maxEntries) {
+        this.expiryWheel = new TimingWheel<>(expiryTickMillis, System.currentTimeMillis());
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    @Override
+    public void issue(long userId, Purpose purpose, String code, long expiresAtMillis) {
+        Key key = new Key(userId, purpose);
+        if (codes.size() >= maxEntries && !codes.containsKey(key)) {
+            throw new ServiceOverloadedException("Too many pending verification codes, please retry");
+        }
+        PendingCode pending = new PendingCode(key, code, expiresAtMillis);
+        codes.put(key, pending);
+        expiryWheel.schedule(pending, expiresAtMillis);
+    }
+
+    @Override
+    public Result check(long userId, Purpose purpose, String code, int maxAttempts, long nowMillis) {
+        Result[] result = { Result.MISSING };
+        byte[] entered = code != null ? code.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        // compute runs atomically per key, so concurrent guesses are all counted
+        codes.computeIfPresent(new Key(userId, purpose), (key, pending) -> {
+            if (pending.expiresAtMillis < nowMillis) {
+                result[0] = Result.EXPIRED;
+                return null;
+            }
+            if (MessageDigest.isEqual(pending.code, entered)) {
+                result[0] = Result.VERIFIED;
+                return null;
+            }
+            pending.attempts++;
+            if (pending.attempts >= maxAttempts) {
+                result[0] = Result.TOO_MANY_ATTEMPTS;
+                return null;
+            }
+            result[0] = Result.MISMATCH;
+            return pending;
+        });
+        return result[0];
+    }
+
+    @Override
+    public int evictExpired(long nowMillis) {
+        int evicted = 0;
+        for (PendingCode pending : expiryWheel.advance(nowMillis)) {
+            // Skip codes already used or replaced (the wheel has no cancel)
+            if (codes.remove(pending.key, pending)) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    @Override
+    public boolean hasCapacity() {
+        return codes.size() < maxEntries;
+    }
+
+    @Override
+    public int size() {
+        return codes.size();
+    }
+}
@@ -0,0 +1,50 @@
+package services;
+
+import models.Message;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-process registry of clients waiting for new inbox messages (long-poll).
+ * Waiters are plain callbacks keyed by recipient id, so a parked request costs
+ * only the memory of its entry here and never a servlet thread.
+ */
+public class InboxNotifier {
+
+    private final ConcurrentHashMap<Long, Set<Consumer<Message>>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * Register a listener for the next messages delivered to a user.
+     *
+     * @return handle that removes the listener again (call on completion/timeout)
+     */
+    public Runnable subscribe(Long userId, Consumer<Message> listener) {
+        waiters.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(listener);
+        return () -> waiters.computeIfPresent(userId, (k, set) -> {
+            set.remove(listener);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * Wake every client currently waiting on the message's recipient
+     */
+    public void publish(Message message) {
+        Set<Consumer<Message>> listeners = waiters.get(message.getRecipientId());
+        if (listeners == null) {
+            return;
+        }
+        for (Consumer<Message> listener : listeners) {
+            listener.accept(message);
+        }
+    }
+
+    /**
+     * Number of requests currently parked (all users)
+     */
+    public int getWaitingCount() {
+        return waiters.values().stream().mapToInt(Set::size).sum();
+    }
+}
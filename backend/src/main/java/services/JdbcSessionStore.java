@@ -0,0 +1,201 @@
+package services;
+
+import models.SessionToken;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sessions in the user_sessions table, shared by every backend node and kept
+ * across restarts.
+ *
+ * Each node keeps a small near-cache of sessions it has seen, valid for
+ * nearCacheTtlMillis, so validating a token on a warm node needs no database
+ * call. Logout removes the row and this node's cache entry. Other nodes
+ * notice the logout when their cache entry's TTL runs out, so keep the TTL
+ * short.
+ *
+ * Misses (unknown or expired tokens) are near-cached as well, for the same
+ * TTL and in their own map, so a client replaying a bad token does not reach
+ * the database on every request, and a flood of random tokens cannot push
+ * real sessions out of the cache. save() clears the miss on this node; the
+ * TTL bounds how long another node can miss a token created elsewhere.
+ *
+ * Revoked access tokens go to the revoked_access_tokens table, and users
+ * whose tokens were all revoked to revoked_user_access_tokens. Each node
+ * checks a local copy of both, reloaded at most every nearCacheTtlMillis from
+ * evictExpired, so a logout reaches the other nodes within the same TTL.
+ * removeAllForUser reaches other nodes' near-caches within that TTL as well.
+ */
+public class JdbcSessionStore implements SessionStore {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long nearCacheTtlMillis;
+    private final int nearCacheMaxEntries;
+    private final ConcurrentHashMap<String, CachedSession> nearCache = new ConcurrentHashMap<>();
+    // token -> time until which it is known not to exist
+    private final ConcurrentHashMap<String, Long> nearMisses = new ConcurrentHashMap<>();
+    // tokenId -> expiry, this node's copy of revoked_access_tokens
+    private volatile ConcurrentHashMap<Long, Long> revokedAccessTokens = new ConcurrentHashMap<>();
+    // userId -> expires_until_ms, this node's copy of revoked_user_access_tokens
+    private volatile ConcurrentHashMap<Long, Long> revokedUsers = new ConcurrentHashMap<>();
+    private long revocationsLoadedAtMillis;
+
+    private record CachedSession(SessionToken session, long cachedUntilMillis) {
+    }
+
+    public JdbcSessionStore(JdbcTemplate jdbcTemplate, long nearCacheTtlMillis, int nearCacheMaxEntries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nearCacheTtlMillis = Math.max(0, nearCacheTtlMillis);
+        this.nearCacheMaxEntries = Math.max(1, nearCacheMaxEntries);
+    }
+
+    @Override
+    public void save(SessionToken token) {
+        jdbcTemplate.update("INSERT INTO user_sessions (token, user_id, created_at_ms, expires_at_ms) "
+                + "VALUES (?, ?, ?, ?)", token.getToken(), token.getUserId(),
+                token.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                token.getExpiresAtMillis());
+        nearMisses.remove(token.getToken());
+        cache(token, System.currentTimeMillis());
+    }
+
+    @Override
+    public SessionToken find(String token) {
+        long now = System.currentTimeMillis();
+        CachedSession cached = nearCache.get(token);
+        if (cached != null && cached.cachedUntilMillis() > now) {
+            return cached.session();
+        }
+        Long missUntil = nearMisses.get(token);
+        if (missUntil != null && missUntil > now) {
+            return null;
+        }
+
+        List<SessionToken> rows = jdbcTemplate.query(
+                "SELECT token, user_id, created_at_ms, expires_at_ms FROM user_sessions WHERE token = ?",
+                (rs, rowNum) -> new SessionToken(rs.getString("token"), rs.getLong("user_id"),
+                        toLocalDateTime(rs.getLong("created_at_ms")), toLocalDateTime(rs.getLong("expires_at_ms"))),
+                token);
+        if (rows.isEmpty()) {
+            nearCache.remove(token);
+            cacheMiss(token, now);
+            return null;
+        }
+        SessionToken session = rows.get(0);
+        cache(session, now);
+        return session;
+    }
+
+    @Override
+    public boolean remove(String token) {
+        nearCache.remove(token);
+        return jdbcTemplate.update("DELETE FROM user_sessions WHERE token = ?", token) > 0;
+    }
+
+    @Override
+    public int removeAllForUser(long userId) {
+        nearCache.values().removeIf(c -> c.session().getUserId() == userId);
+        return jdbcTemplate.update("DELETE FROM user_sessions WHERE user_id = ?", userId);
+    }
+
+    /**
+     * Every node runs this; the DELETE is cheap thanks to idx_user_sessions_expires
+     */
+    @Override
+    public int evictExpired(long nowMillis) {
+        nearCache.values().removeIf(c -> c.cachedUntilMillis() <= nowMillis || c.session().isExpired(nowMillis));
+        nearMisses.values().removeIf(until -> until <= nowMillis);
+        if (nowMillis - revocationsLoadedAtMillis >= nearCacheTtlMillis) {
+            reloadRevocations(nowMillis);
+        }
+        return jdbcTemplate.update("DELETE FROM user_sessions WHERE expires_at_ms < ?", nowMillis);
+    }
+
+    @Override
+    public int size() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_sessions", Integer.class);
+        return count != null ? count : 0;
+    }
+
+    @Override
+    public void revokeAccessToken(long tokenId, long expiresAtMillis) {
+        jdbcTemplate.update("INSERT INTO revoked_access_tokens (token_id, expires_at_ms) VALUES (?, ?) "
+                + "ON CONFLICT (token_id) DO NOTHING", tokenId, expiresAtMillis);
+        revokedAccessTokens.put(tokenId, expiresAtMillis);
+    }
+
+    @Override
+    public void revokeAccessTokensOfUser(long userId, long expiresUntilMillis) {
+        jdbcTemplate.update("INSERT INTO revoked_user_access_tokens (user_id, expires_until_ms) VALUES (?, ?) "
+                + "ON CONFLICT (user_id) DO UPDATE SET expires_until_ms = "
+                + "GREATEST(revoked_user_access_tokens.expires_until_ms, EXCLUDED.expires_until_ms)",
+                userId, expiresUntilMillis);
+        revokedUsers.merge(userId, expiresUntilMillis, Math::max);
+    }
+
+    @Override
+    public boolean isAccessTokenRevoked(long tokenId, long userId, long expiresAtMillis) {
+        Map<Long, Long> revoked = revokedAccessTokens;
+        if (!revoked.isEmpty() && revoked.containsKey(tokenId)) {
+            return true;
+        }
+        Map<Long, Long> users = revokedUsers;
+        Long expiresUntil = users.isEmpty() ? null : users.get(userId);
+        return expiresUntil != null && expiresAtMillis <= expiresUntil;
+    }
+
+    // Replace the local copies, one swap each; only runs on the scheduler thread
+    private void reloadRevocations(long nowMillis) {
+        jdbcTemplate.update("DELETE FROM revoked_access_tokens WHERE expires_at_ms < ?", nowMillis);
+        ConcurrentHashMap<Long, Long> loaded = new ConcurrentHashMap<>();
+        jdbcTemplate.query("SELECT token_id, expires_at_ms FROM revoked_access_tokens", rs -> {
+            loaded.put(rs.getLong("token_id"), rs.getLong("expires_at_ms"));
+        });
+        revokedAccessTokens = loaded;
+
+        jdbcTemplate.update("DELETE FROM revoked_user_access_tokens WHERE expires_until_ms < ?", nowMillis);
+        ConcurrentHashMap<Long, Long> users = new ConcurrentHashMap<>();
+        jdbcTemplate.query("SELECT user_id, expires_until_ms FROM revoked_user_access_tokens", rs -> {
+            users.put(rs.getLong("user_id"), rs.getLong("expires_until_ms"));
+        });
+        revokedUsers = users;
+        revocationsLoadedAtMillis = nowMillis;
+    }
+
+    private void cache(SessionToken session, long now) {
+        if (nearCacheTtlMillis == 0) {
+            return;
+        }
+        if (nearCache.size() >= nearCacheMaxEntries) {
+            // Full: drop what is stale; if nothing is, start over (entries are cheap to refetch)
+            nearCache.values().removeIf(c -> c.cachedUntilMillis() <= now);
+            if (nearCache.size() >= nearCacheMaxEntries) {
+                nearCache.clear();
+            }
+        }
+        nearCache.put(session.getToken(), new CachedSession(session, now + nearCacheTtlMillis));
+    }
+
+    private void cacheMiss(String token, long now) {
+        if (nearCacheTtlMillis == 0) {
+            return;
+        }
+        if (nearMisses.size() >= nearCacheMaxEntries) {
+            nearMisses.values().removeIf(until -> until <= now);
+            if (nearMisses.size() >= nearCacheMaxEntries) {
+                nearMisses.clear();
+            }
+        }
+        nearMisses.put(token, now + nearCacheTtlMillis);
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
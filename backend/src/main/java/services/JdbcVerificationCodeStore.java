@@ -0,0 +1,81 @@
+package services;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Codes in the verification_codes table (one small row per user and purpose
+ * with a pending code), shared by every backend node and kept across restarts.
+ * Issuing and checking a code never touch the users table.
+ */
+public class JdbcVerificationCodeStore implements VerificationCodeStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private record PendingCode(String code, long expiresAtMillis, int attempts) {
+    }
+
+    public JdbcVerificationCodeStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void issue(long userId, Purpose purpose, String code, long expiresAtMillis) {
+        jdbcTemplate.update("INSERT INTO verification_codes (user_id, purpose, code, expires_at_ms, attempts) "
+                + "VALUES (?, ?, ?, ?, 0) ON CONFLICT (user_id, purpose) DO UPDATE "
+                + "SET code = EXCLUDED.code, expires_at_ms = EXCLUDED.expires_at_ms, attempts = 0",
+                userId, purpose.name(), code, expiresAtMillis);
+    }
+
+    @Override
+    public Result check(long userId, Purpose purpose, String code, int maxAttempts, long nowMillis) {
+        // Count the attempt first, in the same statement that reads the code,
+        // so concurrent guesses cannot share one attempt
+        List<PendingCode> rows = jdbcTemplate.query("UPDATE verification_codes SET attempts = attempts + 1 "
+                + "WHERE user_id = ? AND purpose = ? RETURNING code, expires_at_ms, attempts",
+                (rs, rowNum) -> new PendingCode(rs.getString("code"), rs.getLong("expires_at_ms"),
+                        rs.getInt("attempts")),
+                userId, purpose.name());
+        if (rows.isEmpty()) {
+            return Result.MISSING;
+        }
+        PendingCode pending = rows.get(0);
+        Result result;
+        if (pending.expiresAtMillis() < nowMillis) {
+            result = Result.EXPIRED;
+        } else if (code != null && MessageDigest.isEqual(pending.code().getBytes(StandardCharsets.UTF_8),
+                code.getBytes(StandardCharsets.UTF_8))) {
+            result = Result.VERIFIED;
+        } else if (pending.attempts() >= maxAttempts) {
+            result = Result.TOO_MANY_ATTEMPTS;
+        } else {
+            return Result.MISMATCH;
+        }
+        jdbcTemplate.update("DELETE FROM verification_codes WHERE user_id = ? AND purpose = ? AND code = ?",
+                userId, purpose.name(), pending.code());
+        return result;
+    }
+
+    /**
+     * Every node runs this; the DELETE is cheap thanks to idx_verification_codes_expires
+     */
+    @Override
+    public int evictExpired(long nowMillis) {
+        return jdbcTemplate.update("DELETE FROM verification_codes WHERE expires_at_ms < ?", nowMillis);
+    }
+
+    @Override
+    public boolean hasCapacity() {
+        // Bounded only by the database
+        return true;
+    }
+
+    @Override
+    public int size() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM verification_codes", Integer.class);
+        return count != null ? count : 0;
+    }
+}
@@ -0,0 +1,38 @@
+package services;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+/**
+ * One keyset page of an id-ordered listing (the admin queues).
+ *
+ * Ids grow with creation time, so "newest" is id descending and "oldest" id
+ * ascending. The page is the rows strictly between afterId and beforeId in
+ * that order; the cursor is the id of the last row of the previous page.
+ * Queries take both bounds, so one query serves both directions and every
+ * page is an index range scan however deep it is.
+ */
+public record KeysetPage(long afterId, long beforeId, Pageable pageable) {
+
+    public static final int MAX_LIMIT = 100;
+
+    /**
+     * @param cursor    id of the last row of the previous page, null for the first page
+     * @param ascending true for oldest first, false for newest first
+     * @param limit     page size, clamped to 1..MAX_LIMIT
+     */
+    public static KeysetPage of(Long cursor, boolean ascending, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_LIMIT));
+        if (ascending) {
+            return new KeysetPage(cursor != null ? cursor : 0L, Long.MAX_VALUE,
+                    PageRequest.of(0, size, Sort.by(Sort.Direction.ASC, "id")));
+        }
+        return new KeysetPage(0L, cursor != null ? cursor : Long.MAX_VALUE,
+                PageRequest.of(0, size, Sort.by(Sort.Direction.DESC, "id")));
+    }
+
+    public int limit() {
+        return pageable.getPageSize();
+    }
+}
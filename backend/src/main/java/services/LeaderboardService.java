@@ -0,0 +1,192 @@
+package services;
+
+import models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory "top agents" ranking of sellers and agents, overall and per city.
+ *
+ * Users are ranked by a Bayesian average, which pulls the average of users
+ * with few reviews towards the global mean:
+ *
+ * score = (priorWeight * globalMean + ratingSum) / (priorWeight + reviewCount)
+ *
+ * so a single 5-star review does not outrank a hundred 4.8 ones. Each board
+ * keeps only the best topK users.
+ *
+ * Review events update the reviewed user's entry right away. The whole
+ * ranking is rebuilt periodically from the aggregates on the users table
+ * (never from raw reviews), which refreshes the global mean and brings back
+ * users who were pushed off a board.
+ */
+public class LeaderboardService {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardService.class);
+
+    public static final String ALL_CITIES = "";
+
+    private static final Comparator<Entry> RANKING = Comparator.comparingDouble(Entry::score).reversed()
+            .thenComparing(Comparator.comparingInt(Entry::reviewCount).reversed())
+            .thenComparingLong(Entry::userId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int topK;
+    private final double priorWeight;
+
+    private volatile Map<String, Board> boards = new ConcurrentHashMap<>();
+    private volatile double globalMean;
+
+    /**
+     * One ranked user, as served to clients
+     */
+    public record Entry(Long userId, String name, String role, String city, double averageRating, int reviewCount,
+            double score) {
+    }
+
+    public LeaderboardService(JdbcTemplate jdbcTemplate, int topK, double priorWeight) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.topK = Math.max(1, topK);
+        this.priorWeight = Math.max(0.0, priorWeight);
+    }
+
+    /**
+     * Rebuild every board from the users table (startup and periodically).
+     * Rows are streamed into bounded boards, so memory is O(topK * cities).
+     */
+    @Scheduled(initialDelayString = "${dreamstay.leaderboard.rebuild-interval-ms:600000}",
+            fixedDelayString = "${dreamstay.leaderboard.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        long started = System.currentTimeMillis();
+        Map<String, Object> totals = jdbcTemplate.queryForMap(
+                "SELECT COALESCE(SUM(rating_sum), 0) AS total_sum, COALESCE(SUM(review_count), 0) AS total_count "
+                        + "FROM users WHERE LOWER(role) IN ('seller', 'agent')");
+        long totalSum = ((Number) totals.get("total_sum")).longValue();
+        long totalCount = ((Number) totals.get("total_count")).longValue();
+        double mean = totalCount > 0 ? (double) totalSum / totalCount : 0.0;
+
+        Map<String, Board> fresh = new ConcurrentHashMap<>();
+        jdbcTemplate.query("SELECT id, name, role, city, COALESCE(rating_sum, 0) AS rating_sum, review_count "
+                + "FROM users WHERE LOWER(role) IN ('seller', 'agent') AND review_count > 0",
+                rs -> {
+                    offer(fresh, toEntry(rs.getLong("id"), rs.getString("name"), rs.getString("role"),
+                            rs.getString("city"), rs.getLong("rating_sum"), rs.getInt("review_count"), mean));
+                });
+
+        globalMean = mean;
+        boards = fresh;
+        log.info("Leaderboard rebuilt: {} ranked users, global mean {}, {} ms", getBoardSize(ALL_CITIES),
+                String.format(Locale.ROOT, "%.2f", mean), System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Re-rank a user after their rating aggregates changed (review event).
+     * Uses the global mean of the last rebuild.
+     */
+    public void onRatingChanged(User user) {
+        if (user == null || !isRanked(user.getRole()) || user.getReviewCount() == 0) {
+            return;
+        }
+        offer(boards, toEntry(user.getId(), user.getName(), user.getRole(), user.getCity(), user.getRatingSum(),
+                user.getReviewCount(), globalMean));
+    }
+
+    /**
+     * One page of a board, best first
+     *
+     * @param city city name, or null for the overall board
+     */
+    public List<Entry> getPage(String city, int page, int size) {
+        Board board = boards.get(cityKey(city));
+        if (board == null) {
+            return new ArrayList<>();
+        }
+        return board.page(Math.max(0, page) * size, size);
+    }
+
+    public int getBoardSize(String city) {
+        Board board = boards.get(cityKey(city));
+        return board != null ? board.size() : 0;
+    }
+
+    private void offer(Map<String, Board> target, Entry entry) {
+        target.computeIfAbsent(ALL_CITIES, k -> new Board(topK)).offer(entry);
+        String city = cityKey(entry.city());
+        if (!city.equals(ALL_CITIES)) {
+            target.computeIfAbsent(city, k -> new Board(topK)).offer(entry);
+        }
+    }
+
+    private Entry toEntry(long userId, String name, String role, String city, long ratingSum, int reviewCount,
+            double mean) {
+        double average = reviewCount > 0 ? (double) ratingSum / reviewCount : 0.0;
+        double score = (priorWeight * mean + ratingSum) / (priorWeight + reviewCount);
+        return new Entry(userId, name, role, city, average, reviewCount, score);
+    }
+
+    private static boolean isRanked(String role) {
+        return role != null && (role.equalsIgnoreCase("seller") || role.equalsIgnoreCase("agent"));
+    }
+
+    private static String cityKey(String city) {
+        return city == null ? ALL_CITIES : city.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Bounded ranking: at most capacity entries, at most one per user
+     */
+    private static final class Board {
+        private final int capacity;
+        private final TreeSet<Entry> ranked = new TreeSet<>(RANKING);
+        private final Map<Long, Entry> byUser = new HashMap<>();
+
+        Board(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void offer(Entry entry) {
+            Entry previous = byUser.remove(entry.userId());
+            if (previous != null) {
+                ranked.remove(previous);
+            }
+            // Full board and not better than the last place: not ranked
+            if (ranked.size() >= capacity && RANKING.compare(entry, ranked.last()) >= 0) {
+                return;
+            }
+            ranked.add(entry);
+            byUser.put(entry.userId(), entry);
+            if (ranked.size() > capacity) {
+                byUser.remove(ranked.pollLast().userId());
+            }
+        }
+
+        synchronized List<Entry> page(int offset, int limit) {
+            List<Entry> result = new ArrayList<>(Math.min(limit, ranked.size()));
+            int index = 0;
+            for (Entry entry : ranked) {
+                if (index >= offset + limit) {
+                    break;
+                }
+                if (index++ >= offset) {
+                    result.add(entry);
+                }
+            }
+            return result;
+        }
+
+        synchronized int size() {
+            return ranked.size();
+        }
+    }
+}
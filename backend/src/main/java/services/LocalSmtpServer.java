@@ -0,0 +1,227 @@
+package services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal SMTP server on the loopback interface, standing in for a real mail
+ * server in development and tests (dreamstay.mail.transport=local).
+ *
+ * The app then delivers through SmtpEmailTransport exactly as in production,
+ * pooled connections included, but nothing leaves the machine: accepted
+ * messages are logged (sender, recipients and subject; the content, which
+ * carries codes, only at DEBUG) and the last maxKept are available from
+ * getReceived.
+ * Speaks just enough SMTP for that (EHLO/HELO, MAIL, RCPT, DATA, RSET, NOOP,
+ * QUIT); no TLS or authentication.
+ */
+public class LocalSmtpServer {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalSmtpServer.class);
+
+    private final boolean enabled;
+    private final int port;
+    private final int maxKept;
+    private final Deque<ReceivedEmail> received = new ArrayDeque<>();
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    /**
+     * A message as accepted by the server; data is the raw message (headers and body)
+     */
+    public record ReceivedEmail(String from, List<String> recipients, String data) {
+    }
+
+    /**
+     * @param port 0 picks a free port (see getPort)
+     */
+    public LocalSmtpServer(boolean enabled, int port, int maxKept) {
+        this.enabled = enabled;
+        this.port = port;
+        this.maxKept = Math.max(1, maxKept);
+    }
+
+    public void start() throws IOException {
+        if (!enabled || running) {
+            return;
+        }
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        running = true;
+        Thread acceptor = new Thread(this::accept, "local-smtp-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Local SMTP server listening on {}:{}", serverSocket.getInetAddress().getHostAddress(), getPort());
+    }
+
+    public void stop() {
+        running = false;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    public List<ReceivedEmail> getReceived() {
+        synchronized (received) {
+            return new ArrayList<>(received);
+        }
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread handler = new Thread(() -> converse(socket), "local-smtp-session");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (SocketException e) {
+                // Server socket closed by stop()
+                return;
+            } catch (IOException e) {
+                log.warn("Local SMTP accept failed", e);
+            }
+        }
+    }
+
+    private void converse(Socket socket) {
+        try (socket;
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1)) {
+            socket.setSoTimeout((int) TimeUnit.MINUTES.toMillis(5));
+            reply(out, "220 localhost DreamStay local SMTP");
+            String from = null;
+            List<String> recipients = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String verb = (line.length() > 4 ? line.substring(0, 4) : line).trim().toUpperCase(Locale.ROOT);
+                switch (verb) {
+                    case "EHLO" -> reply(out, "250-localhost\r\n250 8BITMIME");
+                    case "HELO" -> reply(out, "250 localhost");
+                    case "MAIL" -> {
+                        from = address(line);
+                        recipients.clear();
+                        reply(out, "250 OK");
+                    }
+                    case "RCPT" -> {
+                        if (from == null) {
+                            reply(out, "503 MAIL first");
+                        } else {
+                            recipients.add(address(line));
+                            reply(out, "250 OK");
+                        }
+                    }
+                    case "DATA" -> {
+                        if (recipients.isEmpty()) {
+                            reply(out, "503 RCPT first");
+                            continue;
+                        }
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        String data = readData(in);
+                        if (data == null) {
+                            return;
+                        }
+                        store(new ReceivedEmail(from, List.copyOf(recipients), data));
+                        from = null;
+                        recipients.clear();
+                        reply(out, "250 OK");
+                    }
+                    case "RSET" -> {
+                        from = null;
+                        recipients.clear();
+                        reply(out, "250 OK");
+                    }
+                    case "NOOP" -> reply(out, "250 OK");
+                    case "QUIT" -> {
+                        reply(out, "221 Bye");
+                        return;
+                    }
+                    default -> reply(out, "502 Command not implemented");
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Local SMTP session ended: {}", e.getMessage());
+        }
+    }
+
+    // Lines up to the lone ".", with dot-stuffing undone; null if the client hung up
+    private static String readData(BufferedReader in) throws IOException {
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.equals(".")) {
+                return data.toString();
+            }
+            data.append(line.startsWith(".") ? line.substring(1) : line).append("\r\n");
+        }
+        return null;
+    }
+
+    private void store(ReceivedEmail email) {
+        synchronized (received) {
+            if (received.size() >= maxKept) {
+                received.removeFirst();
+            }
+            received.addLast(email);
+        }
+        log.atInfo().addKeyValue("event", "local_smtp").addKeyValue("from", email.from())
+                .addKeyValue("to", email.recipients()).addKeyValue("subject", subject(email.data()))
+                .log("Local SMTP accepted message");
+        log.debug("Local SMTP message content:\n{}", email.data());
+    }
+
+    // The Subject header of a message, or null
+    private static String subject(String data) {
+        for (String line : data.split("\r\n")) {
+            if (line.isEmpty()) {
+                // End of the headers
+                return null;
+            }
+            if (line.regionMatches(true, 0, "Subject:", 0, 8)) {
+                return line.substring(8).trim();
+            }
+        }
+        return null;
+    }
+
+    // "MAIL FROM:<a@b>" -> "a@b"
+    private static String address(String line) {
+        int colon = line.indexOf(':');
+        String value = colon >= 0 ? line.substring(colon + 1).trim() : "";
+        int space = value.indexOf(' ');
+        if (space > 0) {
+            value = value.substring(0, space);
+        }
+        return value.replace("<", "").replace(">", "");
+    }
+
+    private static void reply(Writer out, String text) throws IOException {
+        out.write(text);
+        out.write("\r\n");
+        out.flush();
+    }
+}
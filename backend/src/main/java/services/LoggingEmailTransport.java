@@ -0,0 +1,32 @@
+package services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transport that only logs each email (dreamstay.mail.transport=log).
+ *
+ * Bodies carry verification and password reset codes, so only the id,
+ * recipient and subject are logged at INFO. The body is logged at DEBUG, for
+ * local development only: set logging.level.services.LoggingEmailTransport=DEBUG
+ * to read codes from the console.
+ */
+public class LoggingEmailTransport implements EmailTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(LoggingEmailTransport.class);
+
+    @Override
+    public Map<Long, String> send(List<OutboundEmail> batch, Runnable beforeEach) {
+        for (OutboundEmail email : batch) {
+            beforeEach.run();
+            log.atInfo().addKeyValue("event", "email").addKeyValue("id", email.id())
+                    .addKeyValue("to", email.recipient()).addKeyValue("subject", email.subject())
+                    .log("Email (not sent, log transport)");
+            log.debug("Email {} body:\n{}", email.id(), email.body());
+        }
+        return Map.of();
+    }
+}
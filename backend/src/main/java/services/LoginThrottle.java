@@ -0,0 +1,168 @@
+package services;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throttles logins by recent failures per email and per client IP.
+ *
+ * Failures are counted in count-min sketches, one per time bucket, so memory
+ * is fixed (2 * (buckets + 1) * 4 * width ints) however many emails or IPs an
+ * attacker cycles through. Counts can only be overestimated, never missed.
+ * The window slides: the current buckets count fully and the bucket that is
+ * just leaving the window counts in proportion to how much of it is still
+ * inside (the usual sliding-window-counter approximation).
+ *
+ * Checking a key is a handful of array reads, so normal logins pay nothing
+ * noticeable; blocked keys are refused before any database lookup or hashing.
+ */
+public class LoginThrottle {
+
+    private static final int DEPTH = 4;
+
+    private final boolean enabled;
+    private final long bucketMillis;
+    private final int buckets;
+    private final int width;
+    private final int maxFailuresPerEmail;
+    private final int maxFailuresPerIp;
+    private final long seed = new SecureRandom().nextLong();
+
+    private final Sketch emailFailures;
+    private final Sketch ipFailures;
+    private final LongAdder rejected = new LongAdder();
+
+    public LoginThrottle(boolean enabled, long windowMillis, int buckets, int width, int maxFailuresPerEmail,
+            int maxFailuresPerIp) {
+        this.enabled = enabled;
+        this.buckets = Math.max(1, buckets);
+        this.bucketMillis = Math.max(1, windowMillis / this.buckets);
+        this.width = Math.max(16, width);
+        this.maxFailuresPerEmail = Math.max(1, maxFailuresPerEmail);
+        this.maxFailuresPerIp = Math.max(1, maxFailuresPerIp);
+        this.emailFailures = new Sketch();
+        this.ipFailures = new Sketch();
+    }
+
+    /**
+     * Whether a login attempt may go ahead
+     *
+     * @param email normalized email (may be null)
+     * @param ip    client address (may be null)
+     */
+    public boolean allow(String email, String ip) {
+        if (!enabled) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        boolean blocked = (email != null && emailFailures.estimate(email, now) >= maxFailuresPerEmail)
+                || (ip != null && ipFailures.estimate(ip, now) >= maxFailuresPerIp);
+        if (blocked) {
+            rejected.increment();
+        }
+        return !blocked;
+    }
+
+    public void recordFailure(String email, String ip) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (email != null) {
+            emailFailures.add(email, now);
+        }
+        if (ip != null) {
+            ipFailures.add(ip, now);
+        }
+    }
+
+    /**
+     * Seconds after which a blocked key has shed at least one bucket of failures
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, bucketMillis / 1000);
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Count-min sketch per time bucket; slots are reused round-robin
+     */
+    private final class Sketch {
+        private final AtomicIntegerArray[] counts = new AtomicIntegerArray[buckets + 1];
+        private final AtomicLongArray epochs = new AtomicLongArray(buckets + 1);
+
+        Sketch() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new AtomicIntegerArray(DEPTH * width);
+                epochs.set(i, -1);
+            }
+        }
+
+        void add(String key, long now) {
+            long epoch = now / bucketMillis;
+            int slot = (int) (epoch % counts.length);
+            if (epochs.get(slot) != epoch) {
+                rotate(slot, epoch);
+            }
+            AtomicIntegerArray bucket = counts[slot];
+            long h = hash(key);
+            for (int row = 0; row < DEPTH; row++) {
+                bucket.incrementAndGet(index(h, row));
+            }
+        }
+
+        double estimate(String key, long now) {
+            long epoch = now / bucketMillis;
+            long h = hash(key);
+            double total = 0;
+            for (int age = 0; age <= buckets; age++) {
+                int slot = (int) ((epoch - age) % counts.length);
+                if (epoch - age < 0 || epochs.get(slot) != epoch - age) {
+                    continue;
+                }
+                int min = Integer.MAX_VALUE;
+                for (int row = 0; row < DEPTH; row++) {
+                    min = Math.min(min, counts[slot].get(index(h, row)));
+                }
+                if (age < buckets) {
+                    total += min;
+                } else {
+                    // Oldest bucket: only the part still inside the window counts
+                    total += min * (1.0 - (double) (now % bucketMillis) / bucketMillis);
+                }
+            }
+            return total;
+        }
+
+        private synchronized void rotate(int slot, long epoch) {
+            if (epochs.get(slot) == epoch) {
+                return;
+            }
+            AtomicIntegerArray bucket = counts[slot];
+            for (int i = 0; i < bucket.length(); i++) {
+                bucket.set(i, 0);
+            }
+            epochs.set(slot, epoch);
+        }
+
+        private int index(long h, int row) {
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32) | 1;
+            return row * width + Math.floorMod(h1 + row * h2, width);
+        }
+
+        // Seeded FNV-1a, so colliding keys cannot be precomputed
+        private long hash(String key) {
+            long h = seed ^ 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                h = (h ^ key.charAt(i)) * 0x100000001b3L;
+            }
+            return h ^ (h >>> 29);
+        }
+    }
+}
@@ -1,22 +1,42 @@
 package services;
 
 import models.Block;
+import models.ConversationSequence;
 import models.Message;
 import models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import repositories.BlockRepository;
+import repositories.MessageThreadView;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 public class MailService {
+
+    private static final Logger log = LoggerFactory.getLogger(MailService.class);
+
     private MessageRepository messageRepository;
     private AuthService authService;
     private BlockRepository blockRepository;
-
-    public MailService(AuthService authService, MessageRepository messageRepository, BlockRepository blockRepository) {
+    private InboxNotifier inboxNotifier;
+    private MessageIngestionPipeline ingestionPipeline;
+    private BlockIndex blockIndex;
+    private BlockChangeChannel blockChangeChannel;
+    private PropertyManager propertyManager;
+
+    public MailService(AuthService authService, MessageRepository messageRepository, BlockRepository blockRepository,
+            InboxNotifier inboxNotifier, MessageIngestionPipeline ingestionPipeline, BlockIndex blockIndex,
+            BlockChangeChannel blockChangeChannel, PropertyManager propertyManager) {
         this.authService = authService;
         this.messageRepository = messageRepository;
         this.blockRepository = blockRepository;
+        this.inboxNotifier = inboxNotifier;
+        this.ingestionPipeline = ingestionPipeline;
+        this.blockIndex = blockIndex;
+        this.blockChangeChannel = blockChangeChannel;
+        this.propertyManager = propertyManager;
     }
 
     public AuthService getAuthService() {
@@ -28,67 +48,134 @@ public class MailService {
         if (recipient != null) {
             sendMessage(sender, recipient, text);
         } else {
-            System.out.println("Recipient not found: " + recipientEmail);
+            log.info("Recipient not found email={}", recipientEmail);
         }
     }
 
-    public void sendMessage(User sender, User recipient, String text) {
+    public Message sendMessage(User sender, User recipient, String text) {
+        return sendMessage(sender, recipient, text, null);
+    }
+
+    // propertyId ties the message to a listing (null for general conversation)
+    public Message sendMessage(User sender, User recipient, String text, Long propertyId) {
         if (recipient == null) {
-            System.out.println("Recipient is null, cannot send message.");
-            return;
+            log.warn("Recipient is null, cannot send message");
+            return null;
         }
+        checkPropertyContext(sender, recipient, propertyId);
 
         boolean blocked = false;
         if (isBlocked(recipient.getId(), sender.getId())) {
-            System.out
-                    .println("Message silently blocked: " + sender.getName() + " is blocked by " + recipient.getName());
+            log.debug("Message silently blocked senderId={} recipientId={}", sender.getId(), recipient.getId());
             blocked = true;
         }
 
-        messageRepository.saveMessage(sender.getId(), recipient.getId(), null, text, blocked);
-        System.out.println("Message sent (blocked=" + blocked + ") to " + recipient.getName());
+        Message saved = messageRepository.saveMessage(sender.getId(), recipient.getId(), propertyId, text,
+                blocked);
+        log.debug("Message sent senderId={} recipientId={} blocked={}", sender.getId(), recipient.getId(), blocked);
+
+        // Blocked messages are never shown to the recipient, so don't wake their pollers
+        if (!blocked) {
+            inboxNotifier.publish(saved);
+        }
+        return saved;
+    }
+
+    /**
+     * Send through the group-commit pipeline when it is enabled, otherwise save
+     * synchronously. The future completes once the message is durable.
+     */
+    public CompletableFuture<Message> sendMessageAsync(User sender, User recipient, String text, Long propertyId) {
+        if (!ingestionPipeline.isEnabled()) {
+            // sendMessage checks the property itself
+            return CompletableFuture.completedFuture(sendMessage(sender, recipient, text, propertyId));
+        }
+        checkPropertyContext(sender, recipient, propertyId);
+        return ingestionPipeline.submit(sender.getId(), recipient.getId(), propertyId, text)
+                .thenApply(saved -> {
+                    if (!saved.isBlocked()) {
+                        inboxNotifier.publish(saved);
+                    }
+                    return saved;
+                });
+    }
+
+    /**
+     * A message can only be about a listing that exists and belongs to one of
+     * the two participants (the buyer asks the owner, the owner replies)
+     *
+     * @throws IllegalArgumentException otherwise
+     */
+    private void checkPropertyContext(User sender, User recipient, Long propertyId) {
+        if (propertyId == null) {
+            return;
+        }
+        Long ownerId = propertyManager.getPropertyById(propertyId)
+                .map(models.Property::getOwnerId)
+                .orElseThrow(() -> new IllegalArgumentException("Property not found"));
+        if (!ownerId.equals(recipient.getId()) && !ownerId.equals(sender.getId())) {
+            throw new IllegalArgumentException("Property does not belong to this conversation");
+        }
     }
 
     public List<Message> getInbox(Long userId) {
         return messageRepository.getMessagesForUser(userId);
     }
 
+    // Messages received after the given message id, plus any stamped since
+    // overlapSince (ids are not commit-ordered), by id (long-poll catch-up)
+    public List<Message> getInboxAfter(Long userId, Long afterId, LocalDateTime overlapSince) {
+        return messageRepository.getMessagesForUserAfter(userId, afterId, overlapSince);
+    }
+
+    // Messages of a conversation after a known sequence number (incremental sync)
+    public List<Message> getChatHistoryAfterSeq(Long userId, Long otherUserId, long afterSeq) {
+        return messageRepository.getConversationAfterSeq(userId, otherUserId, afterSeq);
+    }
+
+    public List<ConversationSequence> getChangedConversations(Long userId, LocalDateTime since) {
+        return messageRepository.getChangedConversations(userId, since);
+    }
+
+    public List<MessageThreadView> getThreads(Long userId, Long propertyId, int page, int size) {
+        return messageRepository.getThreads(userId, propertyId, page, size);
+    }
+
     public List<Message> getChatHistory(Long userId, Long otherUserId) {
         return messageRepository.getConversation(userId, otherUserId);
     }
 
-    // Returns list of Users that the current user has a chat history with
+    // Returns list of Users that the current user has a chat history with,
+    // most recent conversation first (one id query + one batch user load)
     public List<User> getChatPartners(Long userId) {
-        List<Message> all = messageRepository.getAllMessages();
-        return all.stream()
-                .filter(m -> m.getSenderId().equals(userId) || m.getRecipientId().equals(userId))
-                .map(m -> m.getSenderId().equals(userId) ? m.getRecipientId() : m.getSenderId())
-                .distinct()
-                .map(id -> authService.getUserById(id))
-                .filter(u -> u != null)
-                .collect(Collectors.toList());
+        return authService.getUsersByIds(messageRepository.getChatPartnerIds(userId));
     }
 
     // Blocking Logic
 
     public void blockUser(Long blockerId, Long blockedId) {
-        if (!blockRepository.existsByBlockerIdAndBlockedId(blockerId, blockedId)) {
+        if (!blockIndex.isBlocked(blockerId, blockedId)) {
             blockRepository.save(new Block(blockerId, blockedId));
+            blockIndex.add(blockerId, blockedId);
+            blockChangeChannel.publish(blockerId);
         }
     }
 
     public void unblockUser(Long blockerId, Long blockedId) {
         blockRepository.deleteByBlockerIdAndBlockedId(blockerId, blockedId);
+        blockIndex.remove(blockerId, blockedId);
+        blockChangeChannel.publish(blockerId);
     }
 
+    // Served from the in-memory BlockIndex, no database round-trip
     public boolean isBlocked(Long blockerId, Long blockedId) {
-        return blockRepository.existsByBlockerIdAndBlockedId(blockerId, blockedId);
+        return blockIndex.isBlocked(blockerId, blockedId);
     }
 
     // New Features
 
-    public List<Message> searchMessages(Long userId, String query) {
-        return messageRepository.searchMessages(userId, query);
+    public List<Message> searchMessages(Long userId, String query, int page, int size) {
+        return messageRepository.searchMessages(userId, query, page, size);
     }
 
     public void deleteConversation(Long userId, Long otherUserId) {
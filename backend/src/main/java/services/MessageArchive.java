@@ -0,0 +1,349 @@
+package services;
+
+import models.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only cold storage for old conversations.
+ *
+ * A conversation between users A and B (A < B) lives in the segment file of
+ * A: user_A.seg holds gzip-compressed blocks of messages, user_A.idx holds
+ * fixed-size entries (partnerId, offset, length, senders) pointing into it.
+ * senders records who wrote in the block (SENT_BY_OWNER, SENT_BY_PARTNER).
+ * Deleting a conversation appends a tombstone entry (length -1) that hides
+ * every earlier block of that partner.
+ *
+ * Which conversations have archived data, and in which direction messages
+ * went, is kept in memory from the index alone, so reading a conversation
+ * that was never archived or asking who contacted whom does not touch the
+ * segments.
+ */
+public class MessageArchive {
+
+    private static final int INDEX_ENTRY_BYTES = 8 + 8 + 4 + 1;
+    private static final int TOMBSTONE = -1;
+    private static final byte SENT_BY_OWNER = 1;
+    private static final byte SENT_BY_PARTNER = 2;
+
+    private final Path baseDir;
+    // userId -> users they have an archived conversation with
+    private final ConcurrentHashMap<Long, Set<Long>> archivedPartners = new ConcurrentHashMap<>();
+    // userId -> users they sent at least one archived message to
+    private final ConcurrentHashMap<Long, Set<Long>> archivedRecipients = new ConcurrentHashMap<>();
+
+    public MessageArchive(String baseDir) {
+        this.baseDir = Paths.get(baseDir);
+    }
+
+    /**
+     * Scan the index files once at startup
+     */
+    public void load() throws IOException {
+        Files.createDirectories(baseDir);
+        try (DirectoryStream<Path> indexes = Files.newDirectoryStream(baseDir, "user_*.idx")) {
+            for (Path index : indexes) {
+                String name = index.getFileName().toString();
+                long owner = Long.parseLong(name.substring(5, name.length() - 4));
+                for (IndexEntry entry : readIndex(owner)) {
+                    if (entry.length == TOMBSTONE) {
+                        forget(owner, entry.partnerId);
+                    } else {
+                        remember(owner, entry.partnerId, entry.senders);
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean hasArchived(Long user1Id, Long user2Id) {
+        Set<Long> partners = archivedPartners.get(user1Id);
+        return partners != null && partners.contains(user2Id);
+    }
+
+    /**
+     * Users a user has an archived conversation with
+     */
+    public Set<Long> archivedPartnersOf(Long userId) {
+        Set<Long> partners = archivedPartners.get(userId);
+        return partners != null ? Set.copyOf(partners) : Set.of();
+    }
+
+    /**
+     * Whether the archive holds a message from senderId to recipientId
+     */
+    public boolean hasArchivedMessageFrom(Long senderId, Long recipientId) {
+        Set<Long> recipients = archivedRecipients.get(senderId);
+        return recipients != null && recipients.contains(recipientId);
+    }
+
+    /**
+     * Users a user sent at least one archived message to
+     */
+    public Set<Long> archivedRecipientsOf(Long userId) {
+        Set<Long> recipients = archivedRecipients.get(userId);
+        return recipients != null ? Set.copyOf(recipients) : Set.of();
+    }
+
+    /**
+     * Append one block of messages of a conversation. The data is forced to
+     * disk before its index entry is written, so a crash never leaves an
+     * index entry pointing at missing data.
+     */
+    public synchronized void append(Long user1Id, Long user2Id, List<Message> messages) throws IOException {
+        long owner = Math.min(user1Id, user2Id);
+        long partner = Math.max(user1Id, user2Id);
+        byte[] block = encode(messages);
+        byte senders = senders(owner, messages);
+        long offset = appendBlock(owner, block);
+
+        appendIndexEntries(owner, new IndexEntry(partner, offset, block.length, senders));
+        remember(owner, partner, senders);
+    }
+
+    /**
+     * Replace all archived messages of a conversation with the given ones
+     * (none: same as delete). The new block is forced to disk first; then the
+     * tombstone hiding the old blocks and the entry of the new one go to the
+     * index together, in one write.
+     */
+    public synchronized void replace(Long user1Id, Long user2Id, List<Message> messages) throws IOException {
+        if (messages.isEmpty()) {
+            delete(user1Id, user2Id);
+            return;
+        }
+        long owner = Math.min(user1Id, user2Id);
+        long partner = Math.max(user1Id, user2Id);
+        byte[] block = encode(messages);
+        byte senders = senders(owner, messages);
+        long offset = appendBlock(owner, block);
+
+        appendIndexEntries(owner, new IndexEntry(partner, 0, TOMBSTONE, (byte) 0),
+                new IndexEntry(partner, offset, block.length, senders));
+        forget(owner, partner);
+        remember(owner, partner, senders);
+    }
+
+    /**
+     * All archived messages of a conversation (unordered)
+     */
+    public List<Message> read(Long user1Id, Long user2Id) throws IOException {
+        List<Message> messages = new ArrayList<>();
+        if (!hasArchived(user1Id, user2Id)) {
+            return messages;
+        }
+        long owner = Math.min(user1Id, user2Id);
+        long partner = Math.max(user1Id, user2Id);
+
+        List<IndexEntry> blocks = new ArrayList<>();
+        for (IndexEntry entry : readIndex(owner)) {
+            if (entry.partnerId != partner) {
+                continue;
+            }
+            if (entry.length == TOMBSTONE) {
+                blocks.clear();
+            } else {
+                blocks.add(entry);
+            }
+        }
+
+        try (FileChannel segment = FileChannel.open(segmentPath(owner), StandardOpenOption.READ)) {
+            for (IndexEntry entry : blocks) {
+                ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+                long position = entry.offset;
+                while (buffer.hasRemaining()) {
+                    int read = segment.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException("Truncated archive segment for user " + owner);
+                    }
+                    position += read;
+                }
+                messages.addAll(decode(buffer.array()));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Hide every archived message of a conversation
+     */
+    public synchronized void delete(Long user1Id, Long user2Id) throws IOException {
+        if (!hasArchived(user1Id, user2Id)) {
+            return;
+        }
+        long owner = Math.min(user1Id, user2Id);
+        long partner = Math.max(user1Id, user2Id);
+        appendIndexEntries(owner, new IndexEntry(partner, 0, TOMBSTONE, (byte) 0));
+        forget(owner, partner);
+    }
+
+    private void remember(long owner, long partner, byte senders) {
+        add(archivedPartners, owner, partner);
+        add(archivedPartners, partner, owner);
+        if ((senders & SENT_BY_OWNER) != 0) {
+            add(archivedRecipients, owner, partner);
+        }
+        if ((senders & SENT_BY_PARTNER) != 0) {
+            add(archivedRecipients, partner, owner);
+        }
+    }
+
+    private void forget(long owner, long partner) {
+        remove(archivedPartners, owner, partner);
+        remove(archivedPartners, partner, owner);
+        remove(archivedRecipients, owner, partner);
+        remove(archivedRecipients, partner, owner);
+    }
+
+    private static void add(ConcurrentHashMap<Long, Set<Long>> index, long key, long value) {
+        index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(value);
+    }
+
+    private static void remove(ConcurrentHashMap<Long, Set<Long>> index, long key, long value) {
+        index.computeIfPresent(key, (k, values) -> {
+            values.remove(value);
+            return values.isEmpty() ? null : values;
+        });
+    }
+
+    private static byte senders(long owner, List<Message> messages) {
+        byte senders = 0;
+        for (Message m : messages) {
+            senders |= m.getSenderId() == owner ? SENT_BY_OWNER : SENT_BY_PARTNER;
+        }
+        return senders;
+    }
+
+    private Path segmentPath(long owner) {
+        return baseDir.resolve("user_" + owner + ".seg");
+    }
+
+    private Path indexPath(long owner) {
+        return baseDir.resolve("user_" + owner + ".idx");
+    }
+
+    // Append a block to the owner's segment and force it to disk; returns its offset
+    private long appendBlock(long owner, byte[] block) throws IOException {
+        try (FileChannel segment = FileChannel.open(segmentPath(owner), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long offset = segment.size();
+            ByteBuffer buffer = ByteBuffer.wrap(block);
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            segment.force(true);
+            return offset;
+        }
+    }
+
+    private void appendIndexEntries(long owner, IndexEntry... entries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_BYTES * entries.length);
+        for (IndexEntry entry : entries) {
+            buffer.putLong(entry.partnerId).putLong(entry.offset).putInt(entry.length).put(entry.senders);
+        }
+        buffer.flip();
+        try (FileChannel index = FileChannel.open(indexPath(owner), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                index.write(buffer);
+            }
+            index.force(true);
+        }
+    }
+
+    private List<IndexEntry> readIndex(long owner) throws IOException {
+        List<IndexEntry> entries = new ArrayList<>();
+        Path path = indexPath(owner);
+        if (!Files.exists(path)) {
+            return entries;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        // Ignore a partially written trailing entry
+        while (buffer.remaining() >= INDEX_ENTRY_BYTES) {
+            entries.add(new IndexEntry(buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.get()));
+        }
+        return entries;
+    }
+
+    private static byte[] encode(List<Message> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(messages.size());
+            for (Message m : messages) {
+                out.writeLong(m.getId());
+                out.writeLong(m.getSenderId());
+                out.writeLong(m.getRecipientId());
+                out.writeBoolean(m.getPropertyId() != null);
+                if (m.getPropertyId() != null) {
+                    out.writeLong(m.getPropertyId());
+                }
+                byte[] text = m.getText() != null ? m.getText().getBytes(StandardCharsets.UTF_8) : new byte[0];
+                out.writeInt(text.length);
+                out.write(text);
+                out.writeLong(m.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(m.getTimestamp().getNano());
+                out.writeBoolean(m.isRead());
+                out.writeBoolean(m.isBlocked());
+                out.writeLong(m.getSeq() != null ? m.getSeq() : 0L);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Message> decode(byte[] block) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(block)))) {
+            int count = in.readInt();
+            List<Message> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                long senderId = in.readLong();
+                long recipientId = in.readLong();
+                Long propertyId = in.readBoolean() ? in.readLong() : null;
+                byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+                Message m = new Message(id, senderId, recipientId, propertyId, new String(text, StandardCharsets.UTF_8));
+                m.setTimestamp(LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+                m.setRead(in.readBoolean());
+                m.setBlocked(in.readBoolean());
+                long seq = in.readLong();
+                m.setSeq(seq != 0L ? seq : null);
+                messages.add(m);
+            }
+            return messages;
+        }
+    }
+
+    private static final class IndexEntry {
+        final long partnerId;
+        final long offset;
+        final int length;
+        final byte senders;
+
+        IndexEntry(long partnerId, long offset, int length, byte senders) {
+            this.partnerId = partnerId;
+            this.offset = offset;
+            this.length = length;
+            this.senders = senders;
+        }
+    }
+}
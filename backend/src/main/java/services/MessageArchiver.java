@@ -0,0 +1,91 @@
+package services;
+
+import models.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import repositories.ConversationKey;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Background job moving conversations that have been idle for longer than
+ * idleMonths out of the messages table into the MessageArchive, keeping the
+ * hot table and its indexes small. Archived conversations stay visible through
+ * MessageRepository (history, chat partners and the "has contacted" checks) as
+ * read-only history, so their messages are archived as read.
+ *
+ * Each run handles one batch and remembers where it stopped; the next run
+ * continues from there and a sweep that reaches the end starts over. A
+ * conversation that fails to archive is passed over until the next sweep
+ * instead of blocking the ones behind it.
+ */
+public class MessageArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageArchiver.class);
+
+    private final repositories.MessageRepository jpaMessageRepository;
+    private final MessageArchive messageArchive;
+    private final boolean enabled;
+    private final int idleMonths;
+    private final int batchSize;
+    // Last conversation of the previous batch; (0, 0) starts a new sweep
+    private long afterUserA;
+    private long afterUserB;
+
+    public MessageArchiver(repositories.MessageRepository jpaMessageRepository, MessageArchive messageArchive,
+            boolean enabled, int idleMonths, int batchSize) {
+        this.jpaMessageRepository = jpaMessageRepository;
+        this.messageArchive = messageArchive;
+        this.enabled = enabled;
+        this.idleMonths = idleMonths;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(initialDelayString = "${dreamstay.messages.archive.initial-delay-ms:60000}",
+            fixedDelayString = "${dreamstay.messages.archive.interval-ms:3600000}")
+    public void archiveIdleConversations() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusMonths(idleMonths);
+        List<ConversationKey> idle = jpaMessageRepository.findIdleConversations(cutoff, afterUserA, afterUserB,
+                PageRequest.of(0, batchSize));
+        if (idle.size() < batchSize) {
+            afterUserA = 0;
+            afterUserB = 0;
+        } else {
+            ConversationKey last = idle.get(idle.size() - 1);
+            afterUserA = last.getUserA();
+            afterUserB = last.getUserB();
+        }
+
+        int archived = 0;
+        for (ConversationKey conversation : idle) {
+            List<Message> messages = jpaMessageRepository.findConversationMessages(conversation.getUserA(),
+                    conversation.getUserB());
+            // Skip if someone wrote in the meantime; it is no longer idle
+            if (messages.isEmpty() || messages.stream().anyMatch(m -> !m.getTimestamp().isBefore(cutoff))) {
+                continue;
+            }
+            // Read-only from here on: nothing will mark them read later
+            messages.forEach(m -> m.setRead(true));
+            try {
+                messageArchive.append(conversation.getUserA(), conversation.getUserB(), messages);
+            } catch (IOException e) {
+                log.error("Failed to archive conversation {}-{}", conversation.getUserA(), conversation.getUserB(), e);
+                continue;
+            }
+            // Only delete what was written to the archive
+            jpaMessageRepository.deleteByIdIn(messages.stream().map(Message::getId).collect(Collectors.toList()));
+            archived++;
+        }
+        if (archived > 0) {
+            log.info("Archived {} idle conversations (idle since {})", archived, cutoff);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package services;
+
+import exceptions.ServiceOverloadedException;
+import models.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional group-commit write path for outgoing messages.
+ *
+ * Callers enqueue messages on a bounded queue and get a future back. A single
+ * writer thread drains the queue in micro-batches (up to batchSize messages, or
+ * whatever arrived within lingerMs of the first one), resolves block status
+ * from the in-memory BlockIndex, numbers the visible messages, inserts the
+ * batch with one JDBC batch and commits once. Each future completes only after its batch is durable.
+ *
+ * Larger batches / longer linger favour throughput, smaller favour latency.
+ */
+public class MessageIngestionPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageIngestionPipeline.class);
+
+    private static final String INSERT_SQL = "INSERT INTO messages "
+            + "(id, sender_id, recipient_id, property_id, text, timestamp, is_read, is_blocked, seq) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockIndex blockIndex;
+    private final ConversationSequencer conversationSequencer;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<PendingMessage> queue;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    private static final class PendingMessage {
+        final Message message;
+        final CompletableFuture<Message> future = new CompletableFuture<>();
+
+        PendingMessage(Message message) {
+            this.message = message;
+        }
+    }
+
+    public MessageIngestionPipeline(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+            BlockIndex blockIndex, ConversationSequencer conversationSequencer, boolean enabled, int batchSize,
+            long lingerMs, int queueCapacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.blockIndex = blockIndex;
+        this.conversationSequencer = conversationSequencer;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMs));
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::runWriter, "message-ingestion-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stop accepting messages and flush what is already queued. Messages the
+     * writer did not get to within the timeout are failed, never left hanging.
+     */
+    public void shutdown() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<PendingMessage> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (PendingMessage pending : left) {
+            pending.future.completeExceptionally(new ServiceOverloadedException("Message ingestion stopped"));
+        }
+        if (!left.isEmpty()) {
+            log.warn("Message ingestion stopped with {} unwritten messages", left.size());
+        }
+    }
+
+    /**
+     * Queue a message for the next batch. Fails fast (without blocking the
+     * caller) with a ServiceOverloadedException when the pipeline is stopped
+     * or the queue is full.
+     */
+    public CompletableFuture<Message> submit(Long senderId, Long recipientId, Long propertyId, String text) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new ServiceOverloadedException("Message ingestion is not running"));
+        }
+        PendingMessage pending = new PendingMessage(new Message(null, senderId, recipientId, propertyId, text));
+        if (!queue.offer(pending)) {
+            return CompletableFuture.failedFuture(new ServiceOverloadedException("Message queue is full"));
+        }
+        // Shutdown may have started since the check above, and the writer may
+        // already be gone: take the message back unless someone else has it
+        if (!running && queue.remove(pending)) {
+            return CompletableFuture.failedFuture(new ServiceOverloadedException("Message ingestion is not running"));
+        }
+        return pending.future;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void runWriter() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Linger briefly so concurrent senders can share this commit
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                running = false;
+                writeBatch(batch);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertBatch(batch));
+            for (PendingMessage pending : batch) {
+                pending.future.complete(pending.message);
+            }
+        } catch (RuntimeException e) {
+            if (batch.size() > 1) {
+                // One bad message (e.g. its recipient was just deleted) must not
+                // fail the others: write them one by one to find it
+                log.warn("Failed to write message batch of {}, retrying one by one", batch.size(), e);
+                for (PendingMessage pending : batch) {
+                    writeBatch(List.of(pending));
+                }
+                return;
+            }
+            log.error("Failed to write message", e);
+            batch.get(0).future.completeExceptionally(e);
+        }
+    }
+
+    private void insertBatch(List<PendingMessage> batch) {
+        // Reserve ids up front so the saved messages can be handed back with their ids
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT nextval(pg_get_serial_sequence('messages', 'id')) FROM generate_series(1, ?)",
+                Long.class, batch.size());
+
+        // One sequence reservation per conversation in the batch, numbered in arrival order.
+        // Blocked messages are never shown to the recipient, so they take no number.
+        Map<List<Long>, List<Message>> byConversation = new LinkedHashMap<>();
+        for (PendingMessage pending : batch) {
+            Message m = pending.message;
+            // Silently drop to the recipient if they blocked the sender (same as MailService)
+            m.setBlocked(blockIndex.isBlocked(m.getRecipientId(), m.getSenderId()));
+            if (m.isBlocked()) {
+                continue;
+            }
+            List<Long> key = List.of(Math.min(m.getSenderId(), m.getRecipientId()),
+                    Math.max(m.getSenderId(), m.getRecipientId()));
+            byConversation.computeIfAbsent(key, k -> new ArrayList<>()).add(m);
+        }
+        byConversation.forEach((key, messages) -> {
+            long next = conversationSequencer.reserve(key.get(0), key.get(1), messages.size()) - messages.size() + 1;
+            for (Message m : messages) {
+                m.setSeq(next++);
+            }
+        });
+
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Message m = batch.get(i).message;
+            m.setId(ids.get(i));
+            rows.add(new Object[] { m.getId(), m.getSenderId(), m.getRecipientId(), m.getPropertyId(), m.getText(),
+                    Timestamp.valueOf(m.getTimestamp()), m.isRead(), m.isBlocked(), m.getSeq() });
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        byConversation.keySet().forEach(key -> conversationSequencer.touch(key.get(0), key.get(1)));
+    }
+}
@@ -1,30 +1,73 @@
 package services;
 
+import models.ConversationSequence;
 import models.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import repositories.ConversationSequenceRepository;
+import repositories.MessageThreadView;
+import java.time.LocalDateTime;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * Repository for message storage and retrieval with conversation grouping
+ *
+ * Conversations moved to the MessageArchive are read-only history. They are
+ * served by getConversation / getConversationAfterSeq, the chat partner list
+ * and the contact checks. Threads, search and unread counts cover live
+ * messages only: archived messages are stored as read, and a conversation
+ * shows up in threads again once someone writes in it. Deleting a listing
+ * removes its messages from the archive too (deletePropertyMessages).
  */
 public class MessageRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(MessageRepository.class);
+
     private final repositories.MessageRepository jpaMessageRepository;
+    private final MessageArchive messageArchive;
+    private final ConversationSequencer conversationSequencer;
+    private final ConversationSequenceRepository conversationSequenceRepository;
+    private final TransactionTemplate transactionTemplate;
 
-    public MessageRepository(repositories.MessageRepository jpaMessageRepository) {
+    public MessageRepository(repositories.MessageRepository jpaMessageRepository, MessageArchive messageArchive,
+            ConversationSequencer conversationSequencer,
+            ConversationSequenceRepository conversationSequenceRepository,
+            TransactionTemplate transactionTemplate) {
         this.jpaMessageRepository = jpaMessageRepository;
+        this.messageArchive = messageArchive;
+        this.conversationSequencer = conversationSequencer;
+        this.conversationSequenceRepository = conversationSequenceRepository;
+        this.transactionTemplate = transactionTemplate;
     }
 
     public Message saveMessage(Long senderId, Long recipientId, Long propertyId, String text, boolean isBlocked) {
         Message message = new Message(null, senderId, recipientId, propertyId, text);
         message.setBlocked(isBlocked);
-        return jpaMessageRepository.save(message);
+        // Sequence number and insert share one transaction so a failed insert leaves no gap.
+        // Blocked messages take no number: the recipient never sees them, so it would be a gap too.
+        return transactionTemplate.execute(status -> {
+            if (isBlocked) {
+                return jpaMessageRepository.save(message);
+            }
+            message.setSeq(conversationSequencer.reserve(senderId, recipientId, 1));
+            Message saved = jpaMessageRepository.save(message);
+            conversationSequencer.touch(senderId, recipientId);
+            return saved;
+        });
     }
 
     // Overload for backward compatibility if needed, though we should update
@@ -37,42 +80,96 @@ public class MessageRepository {
         return jpaMessageRepository.findByRecipientId(userId);
     }
 
-    public List<Message> getConversation(Long user1Id, Long user2Id) {
-        List<Message> sent = jpaMessageRepository.findBySenderId(user1Id).stream()
-                .filter(m -> m.getRecipientId().equals(user2Id))
+    public List<Message> getMessagesForUserAfter(Long userId, Long afterId, LocalDateTime overlapSince) {
+        return jpaMessageRepository.findInboxAfter(userId, afterId, overlapSince).stream()
+                .filter(m -> !m.isBlocked())
                 .collect(Collectors.toList());
+    }
 
-        List<Message> received = jpaMessageRepository.findBySenderId(user2Id).stream()
-                .filter(m -> m.getRecipientId().equals(user1Id))
-                .filter(m -> !m.isBlocked()) // Filter out blocked messages for recipient
-                .collect(Collectors.toList());
+    public List<Message> getConversation(Long user1Id, Long user2Id) {
+        List<Message> hot = jpaMessageRepository.findConversationMessages(user1Id, user2Id);
+        List<Message> archived = readArchived(user1Id, user2Id);
 
-        return Stream.concat(sent.stream(), received.stream())
+        // A message can briefly exist in both places if archiving was interrupted
+        Map<Long, Message> byId = new LinkedHashMap<>();
+        Stream.concat(archived.stream(), hot.stream()).forEach(m -> byId.put(m.getId(), m));
+
+        return byId.values().stream()
+                .filter(m -> m.getSenderId().equals(user1Id) || !m.isBlocked()) // Filter out blocked messages for recipient
                 .sorted(Comparator.comparing(Message::getTimestamp))
                 .collect(Collectors.toList());
     }
 
-    public List<Message> getMessagesByProperty(Long propertyId) {
-        return jpaMessageRepository.findByPropertyId(propertyId);
+    /**
+     * Messages of a conversation newer than afterSeq, in sequence order.
+     * Archived conversations are served from the merged history, since old
+     * numbers may live in the archive.
+     */
+    public List<Message> getConversationAfterSeq(Long user1Id, Long user2Id, long afterSeq) {
+        if (messageArchive.hasArchived(user1Id, user2Id)) {
+            return getConversation(user1Id, user2Id).stream()
+                    .filter(m -> m.getSeq() != null && m.getSeq() > afterSeq)
+                    .sorted(Comparator.comparing(Message::getSeq))
+                    .collect(Collectors.toList());
+        }
+        return jpaMessageRepository.findConversationAfterSeq(user1Id, user2Id, afterSeq).stream()
+                .filter(m -> m.getSenderId().equals(user1Id) || !m.isBlocked())
+                .collect(Collectors.toList());
     }
 
-    public Map<Long, List<Message>> getConversationsByProperty(Long userId) {
-        Map<Long, List<Message>> grouped = new HashMap<>();
+    /**
+     * Conversations of a user that changed after the given time
+     */
+    public List<ConversationSequence> getChangedConversations(Long userId, LocalDateTime since) {
+        return conversationSequenceRepository.findChangedSince(userId, since);
+    }
 
-        // Get all messages where user is sender or recipient
-        List<Message> inbox = jpaMessageRepository.findByRecipientId(userId);
-        List<Message> outbox = jpaMessageRepository.findBySenderId(userId);
+    private List<Message> readArchived(Long user1Id, Long user2Id) {
+        try {
+            return messageArchive.read(user1Id, user2Id);
+        } catch (IOException e) {
+            log.error("Failed to read archived conversation {}-{}", user1Id, user2Id, e);
+            return new ArrayList<>();
+        }
+    }
 
-        List<Message> all = Stream.concat(inbox.stream(), outbox.stream())
-                .distinct()
-                .collect(Collectors.toList());
+    public List<Message> getMessagesByProperty(Long propertyId) {
+        return jpaMessageRepository.findByPropertyId(propertyId);
+    }
 
-        for (Message msg : all) {
-            Long propId = msg.getPropertyId() != null ? msg.getPropertyId() : 0L;
-            grouped.computeIfAbsent(propId, k -> new ArrayList<>()).add(msg);
+    /**
+     * Delete every message about a listing, live and archived. Listing
+     * messages always involve the owner, so only the owner's archived
+     * conversations are read; those that mention the listing are rewritten
+     * without its messages.
+     */
+    public void deletePropertyMessages(Long propertyId, Long ownerId) {
+        for (Message msg : jpaMessageRepository.findByPropertyId(propertyId)) {
+            jpaMessageRepository.deleteById(msg.getId());
+        }
+        for (Long partnerId : messageArchive.archivedPartnersOf(ownerId)) {
+            try {
+                List<Message> archived = messageArchive.read(ownerId, partnerId);
+                List<Message> kept = archived.stream()
+                        .filter(m -> !propertyId.equals(m.getPropertyId()))
+                        .collect(Collectors.toList());
+                if (kept.size() < archived.size()) {
+                    messageArchive.replace(ownerId, partnerId, kept);
+                }
+            } catch (IOException e) {
+                log.error("Failed to remove listing {} from archived conversation {}-{}", propertyId, ownerId,
+                        partnerId, e);
+            }
         }
+    }
 
-        return grouped;
+    /**
+     * Conversation threads per (listing, partner), grouped in the database.
+     * Pass propertyId to only get the threads about one listing. Live
+     * messages only (see the class comment).
+     */
+    public List<MessageThreadView> getThreads(Long userId, Long propertyId, int page, int size) {
+        return jpaMessageRepository.findThreads(userId, propertyId, PageRequest.of(page, size));
     }
 
     public void markAsRead(Long messageId) {
@@ -104,7 +201,24 @@ public class MessageRepository {
     }
 
     public boolean hasUserContactedSeller(Long buyerId, Long sellerId) {
-        return jpaMessageRepository.existsBySenderIdAndRecipientId(buyerId, sellerId);
+        return jpaMessageRepository.existsBySenderIdAndRecipientId(buyerId, sellerId)
+                || messageArchive.hasArchivedMessageFrom(buyerId, sellerId);
+    }
+
+    /**
+     * Chat partners, most recent conversation first. Conversations that only
+     * exist in the archive have been idle the longest, so they come last.
+     */
+    public List<Long> getChatPartnerIds(Long userId) {
+        Set<Long> partners = new LinkedHashSet<>(jpaMessageRepository.findChatPartnerIds(userId));
+        partners.addAll(messageArchive.archivedPartnersOf(userId));
+        return new ArrayList<>(partners);
+    }
+
+    public List<Long> getContactedUserIds(Long userId) {
+        Set<Long> contacted = new LinkedHashSet<>(jpaMessageRepository.findContactedUserIds(userId));
+        contacted.addAll(messageArchive.archivedRecipientsOf(userId));
+        return new ArrayList<>(contacted);
     }
 
     public List<Message> getMessagesSentByUser(Long userId) {
@@ -119,11 +233,41 @@ public class MessageRepository {
         return jpaMessageRepository.findAll();
     }
 
-    public List<Message> searchMessages(Long userId, String query) {
-        return jpaMessageRepository.searchMessages(userId, query);
+    /**
+     * Full-text search over live messages (archived ones are not indexed)
+     */
+    public List<Message> searchMessages(Long userId, String query, int page, int size) {
+        String tsQuery = toPrefixTsQuery(query);
+        if (tsQuery.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return jpaMessageRepository.searchMessages(userId, tsQuery, PageRequest.of(page, size));
+    }
+
+    /**
+     * Turn free text into a Postgres tsquery where every word must match as a
+     * prefix, e.g. "Hello, wor" -> "hello:* & wor:*". Anything that is not a
+     * letter or digit is treated as a separator, so user input can never
+     * produce tsquery syntax errors.
+     */
+    static String toPrefixTsQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+        return Arrays.stream(query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(t -> !t.isEmpty())
+                .map(t -> t + ":*")
+                .collect(Collectors.joining(" & "));
     }
 
     public void deleteConversation(Long userId, Long otherUserId) {
         jpaMessageRepository.deleteConversation(userId, otherUserId);
+        // Let syncing clients know this conversation changed
+        conversationSequencer.touch(userId, otherUserId);
+        try {
+            messageArchive.delete(userId, otherUserId);
+        } catch (IOException e) {
+            log.error("Failed to delete archived conversation {}-{}", userId, otherUserId, e);
+        }
     }
 }
@@ -0,0 +1,9 @@
+package services;
+
+/**
+ * One row of the outbound_emails queue, as handed to an EmailTransport
+ *
+ * @param attempts delivery attempts made before this one
+ */
+public record OutboundEmail(long id, String recipient, String subject, String body, int attempts) {
+}
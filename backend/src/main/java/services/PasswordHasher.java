@@ -0,0 +1,231 @@
+package services;
+
+import exceptions.ServiceOverloadedException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Password hashing with PBKDF2-HMAC-SHA256 on a dedicated, bounded pool.
+ *
+ * Format: pbkdf2$iterations$salt$hash (base64). The iteration count is stored
+ * with each hash, so it can be raised in configuration at any time: older
+ * hashes still verify, and needsRehash tells the login path to upgrade them.
+ * The same goes for the legacy salted SHA-256 format ("salt:hash"), which is
+ * only accepted for that upgrade. The older "SIMPLE:" and bare hashCode
+ * formats are never accepted (String.hashCode collisions are trivial to
+ * find); accounts still holding one must reset their password.
+ *
+ * Each hash costs tens to hundreds of milliseconds of CPU, so hashing runs on
+ * at most `threads` threads with at most `queueCapacity` waiting jobs. When
+ * both are full the caller gets a ServiceOverloadedException at once rather
+ * than piling up request threads behind the CPU. A caller that times out
+ * cancels its job, and the PBKDF2 loop checks for that interruption every
+ * few thousand rounds, so abandoned hashes stop using the pool's threads.
+ */
+public class PasswordHasher {
+
+    private static final String PREFIX = "pbkdf2$";
+    private static final String HMAC = "HmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+    // Rounds between interruption checks (well under a millisecond)
+    private static final int ROUNDS_PER_CHECK = 4096;
+
+    private final int iterations;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor pool;
+    private final SecureRandom random = new SecureRandom();
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+
+    /**
+     * Pool and cost counters, as reported by getStats
+     */
+    public record Stats(int iterations, int threads, int active, int queued, long completed, long rejected,
+            double avgMillisPerHash) {
+    }
+
+    public PasswordHasher(int iterations, int threads, int queueCapacity, long timeoutMillis) {
+        this.iterations = Math.max(1, iterations);
+        this.timeoutMillis = Math.max(1, timeoutMillis);
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r, "password-hasher-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = run(() -> pbkdf2(password, salt, iterations));
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    public boolean verify(String password, String storedHash) {
+        if (storedHash == null || password == null) {
+            return false;
+        }
+        if (storedHash.startsWith(PREFIX)) {
+            String[] parts = storedHash.split("\\$");
+            if (parts.length != 4) {
+                return false;
+            }
+            int storedIterations;
+            byte[] salt;
+            byte[] expected;
+            try {
+                storedIterations = Integer.parseInt(parts[1]);
+                salt = Base64.getDecoder().decode(parts[2]);
+                expected = Base64.getDecoder().decode(parts[3]);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            byte[] actual = run(() -> pbkdf2(password, salt, storedIterations));
+            return MessageDigest.isEqual(expected, actual);
+        }
+
+        // Salted SHA-256, accepted only so the login path can upgrade it
+        if (requiresReset(storedHash)) {
+            return false;
+        }
+        String[] parts = storedHash.split(":", 2);
+        return constantTimeEquals(parts[1], sha256WithSalt(password, parts[0]));
+    }
+
+    /**
+     * Whether a stored hash is in a format verify() refuses, so the account
+     * can only be recovered through a password reset
+     */
+    public boolean requiresReset(String storedHash) {
+        if (storedHash == null) {
+            return true;
+        }
+        if (storedHash.startsWith(PREFIX)) {
+            return false;
+        }
+        return storedHash.startsWith("SIMPLE:") || !storedHash.contains(":");
+    }
+
+    /**
+     * Whether a stored hash is weaker than what hash() produces now
+     */
+    public boolean needsRehash(String storedHash) {
+        if (storedHash == null || !storedHash.startsWith(PREFIX)) {
+            return true;
+        }
+        String[] parts = storedHash.split("\\$");
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    public Stats getStats() {
+        long done = completed.sum();
+        return new Stats(iterations, pool.getMaximumPoolSize(), pool.getActiveCount(), pool.getQueue().size(), done,
+                rejected.sum(), done > 0 ? cpuNanos.sum() / 1_000_000.0 / done : 0.0);
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private byte[] run(Callable<byte[]> job) {
+        Future<byte[]> future;
+        try {
+            future = pool.submit(job);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceOverloadedException("Too many concurrent logins, please retry");
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new ServiceOverloadedException("Too many concurrent logins, please retry");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA256 with one output block (RFC 8018), the same result as
+     * the JDK's PBKDF2WithHmacSHA256, written out so the loop can stop when
+     * the job is cancelled.
+     */
+    private byte[] pbkdf2(String password, byte[] salt, int rounds)
+            throws GeneralSecurityException, InterruptedException {
+        long started = System.nanoTime();
+        byte[] key = password.getBytes(StandardCharsets.UTF_8);
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            // HMAC zero-pads its key, so an empty password is the same as one zero byte
+            // (SecretKeySpec refuses empty keys)
+            mac.init(new SecretKeySpec(key.length > 0 ? key : new byte[1], HMAC));
+            byte[] u = new byte[HASH_BYTES];
+            mac.update(salt);
+            mac.update(new byte[] { 0, 0, 0, 1 });
+            mac.doFinal(u, 0);
+            byte[] result = u.clone();
+            for (int i = 1; i < rounds; i++) {
+                if (i % ROUNDS_PER_CHECK == 0 && Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Password hash cancelled");
+                }
+                mac.update(u);
+                mac.doFinal(u, 0);
+                for (int j = 0; j < HASH_BYTES; j++) {
+                    result[j] ^= u[j];
+                }
+            }
+            return result;
+        } finally {
+            Arrays.fill(key, (byte) 0);
+            completed.increment();
+            cpuNanos.add(System.nanoTime() - started);
+        }
+    }
+
+    private static String sha256WithSalt(String password, String salt) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(salt.getBytes());
+            return Base64.getEncoder().encodeToString(md.digest(password.getBytes()));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static boolean constantTimeEquals(String a, String b) {
+        return MessageDigest.isEqual(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,10 +1,13 @@
 package services;
 
 import models.Property;
+import org.springframework.data.domain.Sort;
 import repositories.PropertyRepository;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 public class PropertyManager {
     private final PropertyRepository propertyRepository;
@@ -48,11 +51,26 @@ public class PropertyManager {
         return propertyRepository.findById(id);
     }
 
+    /**
+     * Get properties for many ids with a single query, keyed by id
+     */
+    public Map<Long, Property> getPropertiesMapByIds(Collection<Long> ids) {
+        return BatchLoader.loadById(ids, propertyRepository::findAllById, Property::getId);
+    }
+
+    /**
+     * Atomically apply a listing review change to the property's aggregates
+     *
+     * @param oldRating previous rating of the review, 0 for a new review
+     * @param newRating rating after the change
+     */
+    public void applyRatingChange(Long propertyId, int oldRating, int newRating) {
+        propertyRepository.applyRatingChange(propertyId, newRating - oldRating, oldRating == 0 ? 1 : 0,
+                newRating, oldRating);
+    }
+
     public void deleteProperty(Long id) {
-        List<models.Message> messages = messageRepository.getMessagesByProperty(id);
-        for (models.Message msg : messages) {
-            messageRepository.deleteMessage(msg.getId());
-        }
+        getPropertyById(id).ifPresent(p -> messageRepository.deletePropertyMessages(id, p.getOwnerId()));
         propertyRepository.deleteById(id);
     }
 
@@ -64,25 +82,38 @@ public class PropertyManager {
     }
 
     public List<Property> search(String keyword, Double minPrice, Double maxPrice, Integer rooms, Integer floor,
-            Double minArea, Double maxArea, Double maxDistanceToMetro, Double maxDistanceToUniversity) {
-        // Fetch all verified non-archived properties and filter in memory (or use
-        // custom query)
-        // For simplicity migrating existing logic:
-        return propertyRepository.findByIsVerifiedTrue().stream()
-                .filter(p -> !p.isArchived())
-                .filter(p -> keyword == null || p.getTitle().toLowerCase().contains(keyword.toLowerCase())
-                        || p.getLocation().toLowerCase().contains(keyword.toLowerCase()))
-                .filter(p -> minPrice == null || p.getPrice() >= minPrice)
-                .filter(p -> maxPrice == null || p.getPrice() <= maxPrice)
-                .filter(p -> rooms == null || p.getRooms() == rooms)
-                .filter(p -> floor == null || p.getFloor() == floor)
-                .filter(p -> minArea == null || (p.getArea() != null && p.getArea() >= minArea))
-                .filter(p -> maxArea == null || (p.getArea() != null && p.getArea() <= maxArea))
-                .filter(p -> maxDistanceToMetro == null
-                        || (p.getDistanceToMetro() != null && p.getDistanceToMetro() <= maxDistanceToMetro))
-                .filter(p -> maxDistanceToUniversity == null || (p.getDistanceToUniversity() != null
-                        && p.getDistanceToUniversity() <= maxDistanceToUniversity))
-                .collect(Collectors.toList());
+            Double minArea, Double maxArea, Double maxDistanceToMetro, Double maxDistanceToUniversity,
+            Double minRating, String sort) {
+        // Filtered and ordered in the database (PropertyRepository.search)
+        String pattern = keyword == null ? null : "%" + escapeLike(keyword.toLowerCase(Locale.ROOT)) + "%";
+        return propertyRepository.search(pattern, minPrice, maxPrice, rooms, floor, minArea, maxArea,
+                maxDistanceToMetro, maxDistanceToUniversity, minRating, searchOrder(sort));
+    }
+
+    /**
+     * Result order for search: "rating" (best rated first), "price_asc",
+     * "price_desc", ties by id; anything else keeps the stored order
+     */
+    private static Sort searchOrder(String sort) {
+        if (sort == null) {
+            return Sort.unsorted();
+        }
+        switch (sort) {
+            case "rating":
+                // Matches idx_properties_verified_rating
+                return Sort.by(Sort.Direction.DESC, "ratingAverage").and(Sort.by("id"));
+            case "price_asc":
+                return Sort.by(Sort.Direction.ASC, "price").and(Sort.by("id"));
+            case "price_desc":
+                return Sort.by(Sort.Direction.DESC, "price").and(Sort.by("id"));
+            default:
+                return Sort.unsorted();
+        }
+    }
+
+    // LIKE treats % and _ as wildcards; match them literally (backslash is the default escape)
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 
     public List<Property> getMyProperties(Long ownerId) {
@@ -93,6 +124,20 @@ public class PropertyManager {
         return propertyRepository.findByIsVerifiedFalse();
     }
 
+    /**
+     * One page of unverified properties (admin queue)
+     */
+    public List<Property> getUnverifiedProperties(KeysetPage page) {
+        return propertyRepository.findUnverifiedPage(page.afterId(), page.beforeId(), page.pageable());
+    }
+
+    /**
+     * One page of all properties (admin listing)
+     */
+    public List<Property> getPropertiesPage(KeysetPage page) {
+        return propertyRepository.findPage(page.afterId(), page.beforeId(), page.pageable());
+    }
+
     // Photo management methods
     public void addPhotoToProperty(Long propertyId, String photoPath) {
         getPropertyById(propertyId).ifPresent(p -> {
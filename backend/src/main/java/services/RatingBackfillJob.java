@@ -0,0 +1,114 @@
+package services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recomputes every listing's rating aggregates (sum, count, average, star
+ * histogram) from the reviews table, e.g. after a bug or a manual data fix.
+ *
+ * Reviews are streamed in property order through a server-side cursor
+ * (fetchSize rows at a time) and folded per property, so memory stays
+ * constant regardless of table size. Results are written back in JDBC
+ * batches on a separate connection. A review written while the job runs may
+ * be overwritten by the recomputed value; run it when traffic is low.
+ */
+public class RatingBackfillJob {
+
+    private static final Logger log = LoggerFactory.getLogger(RatingBackfillJob.class);
+
+    private static final String STREAM_SQL = "SELECT p.id, r.rating FROM properties p "
+            + "LEFT JOIN reviews r ON r.property_id = p.id ORDER BY p.id";
+
+    private static final String UPDATE_SQL = "UPDATE properties SET rating_sum = ?, rating_count = ?, "
+            + "rating_average = ?, stars1 = ?, stars2 = ?, stars3 = ?, stars4 = ?, stars5 = ? WHERE id = ?";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    public RatingBackfillJob(DataSource dataSource, JdbcTemplate jdbcTemplate, int batchSize) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @return number of properties updated
+     */
+    public synchronized int run() throws SQLException {
+        long started = System.currentTimeMillis();
+        List<Object[]> pending = new ArrayList<>(batchSize);
+        int updated = 0;
+
+        try (Connection connection = dataSource.getConnection()) {
+            // Postgres only uses a cursor (instead of loading the whole result)
+            // when autocommit is off and a fetch size is set
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try (PreparedStatement statement = connection.prepareStatement(STREAM_SQL)) {
+                statement.setFetchSize(batchSize);
+                try (ResultSet rs = statement.executeQuery()) {
+                    long currentId = -1;
+                    long sum = 0;
+                    int[] stars = new int[6];
+                    while (rs.next()) {
+                        long propertyId = rs.getLong(1);
+                        if (propertyId != currentId) {
+                            if (currentId != -1) {
+                                pending.add(toRow(currentId, sum, stars));
+                                updated += flushIfFull(pending);
+                            }
+                            currentId = propertyId;
+                            sum = 0;
+                            stars = new int[6];
+                        }
+                        int rating = rs.getInt(2);
+                        if (!rs.wasNull() && rating >= 1 && rating <= 5) {
+                            sum += rating;
+                            stars[rating]++;
+                        }
+                    }
+                    if (currentId != -1) {
+                        pending.add(toRow(currentId, sum, stars));
+                    }
+                }
+            } finally {
+                connection.rollback();
+            }
+        }
+        updated += flush(pending);
+
+        log.info("Rating backfill updated {} properties in {} ms", updated, System.currentTimeMillis() - started);
+        return updated;
+    }
+
+    private int flushIfFull(List<Object[]> pending) {
+        return pending.size() >= batchSize ? flush(pending) : 0;
+    }
+
+    private int flush(List<Object[]> pending) {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(UPDATE_SQL, pending);
+        int flushed = pending.size();
+        pending.clear();
+        return flushed;
+    }
+
+    private static Object[] toRow(long propertyId, long sum, int[] stars) {
+        int count = stars[1] + stars[2] + stars[3] + stars[4] + stars[5];
+        double average = count > 0 ? (double) sum / count : 0.0;
+        return new Object[] { sum, count, average, stars[1], stars[2], stars[3], stars[4], stars[5], propertyId };
+    }
+}
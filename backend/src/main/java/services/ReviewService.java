@@ -1,10 +1,14 @@
 package services;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
 
+import models.Property;
 import models.Review;
 import models.User;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionTemplate;
 import repositories.ReviewRepository;
 
 public class ReviewService {
@@ -13,11 +17,19 @@ public class ReviewService {
     private final MessageRepository messageManager; // Renamed for clarity in my mind, but class is still
                                                     // MessageRepository
     private final ReviewRepository reviewRepository;
+    private final PropertyManager propertyManager;
+    private final LeaderboardService leaderboardService;
+    private final TransactionTemplate transactionTemplate;
 
-    public ReviewService(AuthService authService, MessageRepository messageManager, ReviewRepository reviewRepository) {
+    public ReviewService(AuthService authService, MessageRepository messageManager, ReviewRepository reviewRepository,
+            PropertyManager propertyManager, LeaderboardService leaderboardService,
+            TransactionTemplate transactionTemplate) {
         this.authService = authService;
         this.messageManager = messageManager;
         this.reviewRepository = reviewRepository;
+        this.propertyManager = propertyManager;
+        this.leaderboardService = leaderboardService;
+        this.transactionTemplate = transactionTemplate;
     }
 
     public void addReview(User reviewer, Long targetUserId, int rating, String comment) {
@@ -35,71 +47,78 @@ public class ReviewService {
             throw new IllegalArgumentException("You can only review users you have interacted with.");
         }
 
-        // Check if user has already reviewed this target
-        if (reviewRepository.existsByReviewerIdAndTargetUserId(reviewer.getId(), targetUserId)) {
-            // For simplicity, let's say we update it if it exists, or just block.
-            // The old code updated it.
-            Review existing = reviewRepository.findByReviewerId(reviewer.getId()).stream()
-                    .filter(r -> r.getTargetUserId().equals(targetUserId))
-                    .findFirst().orElse(null);
+        // The review and the aggregate change commit together
+        transactionTemplate.executeWithoutResult(status -> {
+            Review existing = reviewRepository.findByReviewerIdAndTargetUserIdAndPropertyIdIsNull(reviewer.getId(), targetUserId)
+                    .orElse(null);
 
             if (existing != null) {
+                // Editing a review only shifts the sum, the count stays the same
+                int oldRating = existing.getRating();
                 existing.setRating(rating);
                 existing.setComment(comment);
                 reviewRepository.save(existing);
-                updateUserRating(targetUserId);
+                if (oldRating != rating) {
+                    authService.applyRatingChange(targetUserId, oldRating, rating);
+                }
                 return;
             }
-        }
 
-        Review review = new Review(reviewer.getId(), targetUserId, rating, comment);
-        reviewRepository.save(review);
+            reviewRepository.save(new Review(reviewer.getId(), targetUserId, rating, comment));
+            authService.applyRatingChange(targetUserId, 0, rating);
+        });
 
-        // Update user's average rating
-        updateUserRating(targetUserId);
+        // Committed; re-rank the seller with the new aggregates
+        leaderboardService.onRatingChanged(authService.refreshUser(targetUserId));
     }
 
     /**
-     * Compute and update average rating for a user
+     * Review a listing. Aggregates go to the listing (Property.ratingAverage,
+     * ratingCount), not to its owner; one review per reviewer and listing.
      */
-    private void updateUserRating(Long userId) {
-        List<Review> userReviews = getReviewsForUser(userId);
+    public void addPropertyReview(User reviewer, Long propertyId, int rating, String comment) {
+        if (rating < 1 || rating > 5) {
+            throw new IllegalArgumentException("Rating must be between 1 and 5.");
+        }
 
-        if (userReviews.isEmpty()) {
-            return; // Or set to 0? Keeping old logic.
+        Property property = propertyManager.getPropertyById(propertyId)
+                .orElseThrow(() -> new IllegalArgumentException("Property not found."));
+        Long ownerId = property.getOwnerId();
+
+        if (reviewer.getId().equals(ownerId)) {
+            throw new IllegalArgumentException("You cannot review your own listing.");
         }
 
-        double totalRating = userReviews.stream()
-                .mapToInt(Review::getRating)
-                .sum();
+        if (!messageManager.hasUserContactedSeller(reviewer.getId(), ownerId)) {
+            throw new IllegalArgumentException("You can only review listings whose owner you have contacted.");
+        }
 
-        double averageRating = totalRating / userReviews.size();
+        transactionTemplate.executeWithoutResult(status -> {
+            Review existing = reviewRepository.findByReviewerIdAndPropertyId(reviewer.getId(), propertyId)
+                    .orElse(null);
 
-        User target = authService.getUserById(userId);
+            if (existing != null) {
+                int oldRating = existing.getRating();
+                existing.setRating(rating);
+                existing.setComment(comment);
+                reviewRepository.save(existing);
+                if (oldRating != rating) {
+                    propertyManager.applyRatingChange(propertyId, oldRating, rating);
+                }
+                return;
+            }
 
-        if (target != null) {
-            target.setAverageRating(averageRating);
-            target.setReviewCount(userReviews.size());
-            // Persist rating changes via AuthService
-            authService.updateUser(target);
-        }
+            reviewRepository.save(new Review(reviewer.getId(), ownerId, propertyId, rating, comment));
+            propertyManager.applyRatingChange(propertyId, 0, rating);
+        });
     }
 
     /**
-     * Get average rating for a user
+     * Get average rating for a user (from the maintained aggregates)
      */
     public double computeAverageRatingForUser(Long userId) {
-        List<Review> userReviews = getReviewsForUser(userId);
-
-        if (userReviews.isEmpty()) {
-            return 0.0;
-        }
-
-        double totalRating = userReviews.stream()
-                .mapToInt(Review::getRating)
-                .sum();
-
-        return totalRating / userReviews.size();
+        User target = authService.getUserById(userId);
+        return target != null ? target.getAverageRating() : 0.0;
     }
 
     /**
@@ -109,17 +128,38 @@ public class ReviewService {
         return getReviewsForUser(userId);
     }
 
+    /**
+     * One page of a user's reviews, newest first. Pass the creation time and
+     * id of the last review of the previous page to get the next one (keyset
+     * pagination, so deep pages cost the same as the first).
+     */
+    public List<Review> getReviewsPage(Long userId, LocalDateTime beforeTime, Long beforeId, int limit) {
+        Pageable page = PageRequest.of(0, limit);
+        if (beforeTime == null || beforeId == null) {
+            return reviewRepository.findByTargetUserIdAndPropertyIdIsNullOrderByCreatedAtDescIdDesc(userId, page);
+        }
+        return reviewRepository.findPageBefore(userId, beforeTime, beforeId, page);
+    }
+
+    /**
+     * One page of a listing's reviews, newest first (same paging as getReviewsPage)
+     */
+    public List<Review> getPropertyReviewsPage(Long propertyId, LocalDateTime beforeTime, Long beforeId, int limit) {
+        Pageable page = PageRequest.of(0, limit);
+        if (beforeTime == null || beforeId == null) {
+            return reviewRepository.findByPropertyIdOrderByCreatedAtDescIdDesc(propertyId, page);
+        }
+        return reviewRepository.findPropertyPageBefore(propertyId, beforeTime, beforeId, page);
+    }
+
     public List<Review> getReviewsForUser(Long userId) {
-        return reviewRepository.findByTargetUserId(userId);
+        return reviewRepository.findByTargetUserIdAndPropertyIdIsNull(userId);
     }
 
     /**
      * Get list of users (sellers/agents) that the buyer has contacted
      */
     public List<User> getContactedSellers(Long buyerId) {
-        return authService.getAllUsers().stream()
-                .filter(u -> !u.getId().equals(buyerId)) // Exclude self
-                .filter(u -> messageManager.hasUserContactedSeller(buyerId, u.getId()))
-                .collect(Collectors.toList());
+        return authService.getUsersByIds(messageManager.getContactedUserIds(buyerId));
     }
 }
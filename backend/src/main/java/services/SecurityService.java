@@ -1,104 +1,105 @@
 package services;
 
 import models.SessionToken;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import org.springframework.scheduling.annotation.Scheduled;
+
 import java.security.SecureRandom;
-import java.util.Base64;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 
 /**
  * Security service for password hashing, validation, and session management
  * (NFR-03)
- * Uses SHA-256 with salt for password hashing (BCrypt alternative for
- * simplicity)
+ * Passwords are hashed with PBKDF2 on a bounded pool (PasswordHasher); older
+ * SHA-256 hashes are upgraded when their owner logs in.
+ *
+ * Sessions are kept in a SessionStore (in memory or shared via JDBC); expired
+ * ones are evicted once per tick by cleanupExpiredTokens.
+ *
+ * Alongside sessions it issues short-lived signed access tokens
+ * (AccessTokenCodec) that can be checked without any lookup. Logged-out access
+ * tokens go on a small revocation list in the SessionStore (shared between
+ * nodes with the jdbc store) until they would have expired anyway.
  */
 public class SecurityService {
-    private static final int SALT_LENGTH = 16;
     private static final int SESSION_EXPIRY_MINUTES = 120; // 2 hours
     private static final Pattern EMAIL_PATTERN = Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
     private static final Pattern PASSWORD_PATTERN = Pattern.compile("^(?=.*[A-Za-z])(?=.*\\d).{6,}$");
 
-    private Map<String, SessionToken> activeSessions;
+    private final SessionStore sessionStore;
+    private final PasswordHasher passwordHasher;
+    private final AccessTokenCodec accessTokenCodec;
+    private final long accessTokenTtlMillis;
     private SecureRandom random;
 
+    // Session metrics
+    private final LongAdder sessionsCreated = new LongAdder();
+    private final LongAdder sessionsExpired = new LongAdder();
+    private final LongAdder sessionsInvalidated = new LongAdder();
+    private long expiryWindowStart = System.currentTimeMillis();
+    private long expiredInWindow;
+    private volatile long expiredLastMinute;
+
+    /**
+     * Session counters, as reported by getSessionStats
+     */
+    public record SessionStats(int active, long created, long expired, long invalidated, long expiredLastMinute) {
+    }
+
     public SecurityService() {
-        this.activeSessions = new HashMap<>();
+        this(new InMemorySessionStore(1000), new PasswordHasher(600_000, 0, 64, 5000), randomKeyCodec(),
+                15 * 60_000L);
+    }
+
+    public SecurityService(SessionStore sessionStore, PasswordHasher passwordHasher,
+            AccessTokenCodec accessTokenCodec, long accessTokenTtlMillis) {
+        this.sessionStore = sessionStore;
+        this.passwordHasher = passwordHasher;
+        this.accessTokenCodec = accessTokenCodec;
+        this.accessTokenTtlMillis = accessTokenTtlMillis;
         this.random = new SecureRandom();
     }
 
+    private static AccessTokenCodec randomKeyCodec() {
+        AccessTokenCodec codec = new AccessTokenCodec();
+        codec.configure(null, 1);
+        return codec;
+    }
+
     /**
-     * Hash a password with a random salt using SHA-256
-     * Format: salt:hash
+     * Hash a password for storage (PBKDF2 on the hashing pool)
+     *
+     * @throws exceptions.ServiceOverloadedException if the pool is saturated
      */
     public String hashPassword(String password) {
-        try {
-            // Generate random salt
-            byte[] salt = new byte[SALT_LENGTH];
-            random.nextBytes(salt);
-            String saltString = Base64.getEncoder().encodeToString(salt);
-
-            // Hash password with salt
-            String hash = hashWithSalt(password, saltString);
-
-            // Return salt:hash format
-            return saltString + ":" + hash;
-        } catch (NoSuchAlgorithmException e) {
-            System.err.println("Error hashing password: " + e.getMessage());
-            // Fallback to simple hash
-            return "SIMPLE:" + Integer.toHexString(password.hashCode());
-        }
+        return passwordHasher.hash(password);
     }
 
     /**
-     * Verify a password against a stored hash
+     * Verify a password against a stored hash (current or legacy format)
+     *
+     * @throws exceptions.ServiceOverloadedException if the pool is saturated
      */
     public boolean verifyPassword(String password, String storedHash) {
-        if (storedHash == null || password == null) {
-            return false;
-        }
-
-        // Handle old simple hash format for backward compatibility
-        if (storedHash.startsWith("SIMPLE:")) {
-            String oldHash = storedHash.substring(7);
-            return oldHash.equals(Integer.toHexString(password.hashCode()));
-        }
-
-        // Handle legacy hash (no salt)
-        if (!storedHash.contains(":")) {
-            return storedHash.equals(Integer.toHexString(password.hashCode()));
-        }
-
-        try {
-            // Split salt and hash
-            String[] parts = storedHash.split(":", 2);
-            if (parts.length != 2) {
-                return false;
-            }
-
-            String salt = parts[0];
-            String expectedHash = parts[1];
-
-            // Hash the provided password with the stored salt
-            String actualHash = hashWithSalt(password, salt);
+        return passwordHasher.verify(password, storedHash);
+    }
 
-            return expectedHash.equals(actualHash);
-        } catch (NoSuchAlgorithmException e) {
-            System.err.println("Error verifying password: " + e.getMessage());
-            return false;
-        }
+    /**
+     * Whether a stored hash is in a retired format that no password can match
+     */
+    public boolean requiresPasswordReset(String storedHash) {
+        return passwordHasher.requiresReset(storedHash);
     }
 
     /**
-     * Hash a password with a given salt
+     * Whether a stored hash should be replaced after the next successful login
      */
-    private String hashWithSalt(String password, String salt) throws NoSuchAlgorithmException {
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        md.update(salt.getBytes());
-        byte[] hashedBytes = md.digest(password.getBytes());
-        return Base64.getEncoder().encodeToString(hashedBytes);
+    public boolean needsRehash(String storedHash) {
+        return passwordHasher.needsRehash(storedHash);
+    }
+
+    public PasswordHasher.Stats getHashingStats() {
+        return passwordHasher.getStats();
     }
 
     /**
@@ -145,7 +146,8 @@ public class SecurityService {
      */
     public SessionToken generateSessionToken(Long userId) {
         SessionToken token = new SessionToken(userId, SESSION_EXPIRY_MINUTES);
-        activeSessions.put(token.getToken(), token);
+        sessionStore.save(token);
+        sessionsCreated.increment();
         return token;
     }
 
@@ -153,42 +155,104 @@ public class SecurityService {
      * Validate a session token
      */
     public boolean validateToken(String tokenString) {
-        SessionToken token = activeSessions.get(tokenString);
+        return getUserIdFromToken(tokenString) != null;
+    }
+
+    /**
+     * Get user ID from a valid token
+     */
+    public Long getUserIdFromToken(String tokenString) {
+        if (tokenString == null) {
+            return null;
+        }
+        SessionToken token = sessionStore.find(tokenString);
         if (token == null) {
-            return false;
+            return null;
         }
+        if (token.isExpired(System.currentTimeMillis())) {
+            // Expired but not evicted yet; cleanupExpiredTokens will count it
+            return null;
+        }
+        return token.getUserId();
+    }
 
-        if (token.isExpired()) {
-            activeSessions.remove(tokenString);
-            return false;
+    /**
+     * Invalidate a session token (logout)
+     */
+    public void invalidateToken(String tokenString) {
+        if (tokenString != null && sessionStore.remove(tokenString)) {
+            sessionsInvalidated.increment();
         }
+    }
 
-        return true;
+    /**
+     * Issue a signed access token carrying the user id, role and expiry
+     */
+    public String issueAccessToken(Long userId, String role) {
+        return accessTokenCodec.issue(userId, role, System.currentTimeMillis() + accessTokenTtlMillis);
     }
 
     /**
-     * Get user ID from a valid token
+     * Check an access token without touching the session store
+     *
+     * @return the token's claims, or null if invalid, expired or revoked
      */
-    public Long getUserIdFromToken(String tokenString) {
-        SessionToken token = activeSessions.get(tokenString);
-        if (token != null && !token.isExpired()) {
-            return token.getUserId();
+    public AccessTokenCodec.Claims verifyAccessToken(String token) {
+        AccessTokenCodec.Claims claims = accessTokenCodec.verify(token, System.currentTimeMillis());
+        if (claims == null) {
+            return null;
+        }
+        if (sessionStore.isAccessTokenRevoked(claims.tokenId(), claims.userId(), claims.expiresAtMillis())) {
+            return null;
         }
-        return null;
+        return claims;
     }
 
     /**
-     * Invalidate a session token (logout)
+     * Revoke an access token (logout). Kept only until the token expires.
      */
-    public void invalidateToken(String tokenString) {
-        activeSessions.remove(tokenString);
+    public void revokeAccessToken(String token) {
+        AccessTokenCodec.Claims claims = accessTokenCodec.verify(token, System.currentTimeMillis());
+        if (claims != null) {
+            sessionStore.revokeAccessToken(claims.tokenId(), claims.expiresAtMillis());
+        }
+    }
+
+    /**
+     * Log a user out everywhere (password reset): remove every session and
+     * revoke every access token issued so far, which all expire within the
+     * access token TTL
+     */
+    public void invalidateAllTokens(Long userId) {
+        int removed = sessionStore.removeAllForUser(userId);
+        sessionsInvalidated.add(removed);
+        sessionStore.revokeAccessTokensOfUser(userId, System.currentTimeMillis() + accessTokenTtlMillis);
     }
 
     /**
      * Clean up expired tokens
      */
+    @Scheduled(fixedDelayString = "${dreamstay.sessions.expiry-tick-ms:1000}")
     public void cleanupExpiredTokens() {
-        activeSessions.entrySet().removeIf(entry -> entry.getValue().isExpired());
+        long now = System.currentTimeMillis();
+        int expired = sessionStore.evictExpired(now);
+        sessionsExpired.add(expired);
+
+        expiredInWindow += expired;
+        if (now - expiryWindowStart >= 60_000) {
+            expiredLastMinute = expiredInWindow;
+            expiredInWindow = 0;
+            expiryWindowStart = now;
+        }
+    }
+
+    public int getActiveSessionCount() {
+        return sessionStore.size();
+    }
+
+    public SessionStats getSessionStats() {
+        return new SessionStats(sessionStore.size(), sessionsCreated.sum(), sessionsExpired.sum(),
+                sessionsInvalidated.sum(), expiredLastMinute);
     }
 
     /**
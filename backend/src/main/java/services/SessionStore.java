@@ -0,0 +1,63 @@
+package services;
+
+import models.SessionToken;
+
+/**
+ * Where SecurityService keeps its sessions.
+ *
+ * InMemorySessionStore is local to one JVM (single node, fastest).
+ * JdbcSessionStore shares sessions between nodes and survives restarts.
+ * Access token revocations are kept in the same place, so a logout applies
+ * on every node that shares the store.
+ * Selected with dreamstay.sessions.store.
+ */
+public interface SessionStore {
+
+    void save(SessionToken token);
+
+    /**
+     * The session for a token string, or null. May return a session that has
+     * expired but not yet been evicted; callers check isExpired.
+     */
+    SessionToken find(String token);
+
+    /**
+     * @return true if the session existed
+     */
+    boolean remove(String token);
+
+    /**
+     * Remove every session of a user (password reset)
+     *
+     * @return number of sessions removed
+     */
+    int removeAllForUser(long userId);
+
+    /**
+     * Evict sessions that expired before nowMillis
+     *
+     * @return number of sessions evicted
+     */
+    int evictExpired(long nowMillis);
+
+    int size();
+
+    /**
+     * Remember a revoked (logged out) access token until it would have
+     * expired anyway
+     */
+    void revokeAccessToken(long tokenId, long expiresAtMillis);
+
+    /**
+     * Revoke every access token of a user that expires at or before
+     * expiresUntilMillis; with now + the access token TTL that is every token
+     * issued so far. Kept until that time has passed.
+     */
+    void revokeAccessTokensOfUser(long userId, long expiresUntilMillis);
+
+    /**
+     * Whether an access token was revoked, on its own or with all of its
+     * user's tokens
+     */
+    boolean isAccessTokenRevoked(long tokenId, long userId, long expiresAtMillis);
+}
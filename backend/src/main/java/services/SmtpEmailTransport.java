@@ -0,0 +1,144 @@
+package services;
+
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * SMTP delivery with pooled connections.
+ *
+ * A batch is sent over one connection (one handshake and login for the whole
+ * batch). Afterwards the connection goes back to a pool of at most
+ * maxIdleConnections, so the next batch skips the handshake as long as the
+ * server keeps it open; Transport.isConnected checks that with a NOOP before
+ * reuse. A connection that failed mid-batch is closed, never pooled.
+ */
+public class SmtpEmailTransport implements EmailTransport {
+
+    private final Session session;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final InternetAddress from;
+    private final BlockingQueue<Transport> idle;
+
+    public SmtpEmailTransport(String host, int port, String username, String password, boolean startTls,
+            String from, int maxIdleConnections, long timeoutMillis) throws MessagingException {
+        boolean auth = username != null && !username.isBlank();
+        Properties props = new Properties();
+        props.put("mail.smtp.host", host);
+        props.put("mail.smtp.port", String.valueOf(port));
+        props.put("mail.smtp.auth", String.valueOf(auth));
+        props.put("mail.smtp.starttls.enable", String.valueOf(startTls));
+        props.put("mail.smtp.starttls.required", String.valueOf(startTls));
+        props.put("mail.smtp.connectiontimeout", String.valueOf(timeoutMillis));
+        props.put("mail.smtp.timeout", String.valueOf(timeoutMillis));
+        props.put("mail.smtp.writetimeout", String.valueOf(timeoutMillis));
+        this.session = Session.getInstance(props);
+        this.host = host;
+        this.port = port;
+        this.username = auth ? username : null;
+        this.password = auth ? password : null;
+        this.from = new InternetAddress(from, true);
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, maxIdleConnections));
+    }
+
+    @Override
+    public Map<Long, String> send(List<OutboundEmail> batch, Runnable beforeEach) throws MessagingException {
+        Map<Long, String> failures = new LinkedHashMap<>();
+        Transport transport = borrow();
+        boolean healthy = true;
+        int accepted = 0;
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                OutboundEmail email = batch.get(i);
+                beforeEach.run();
+                MimeMessage message;
+                try {
+                    message = toMessage(email);
+                } catch (MessagingException e) {
+                    failures.put(email.id(), "Invalid message: " + e.getMessage());
+                    continue;
+                }
+                try {
+                    transport.sendMessage(message, message.getAllRecipients());
+                    accepted++;
+                } catch (SendFailedException e) {
+                    // Recipient rejected; the connection is still fine
+                    failures.put(email.id(), e.getMessage());
+                } catch (MessagingException e) {
+                    // Connection trouble: give up on the rest of the batch
+                    healthy = false;
+                    if (accepted == 0 && failures.isEmpty()) {
+                        throw e;
+                    }
+                    for (OutboundEmail rest : batch.subList(i, batch.size())) {
+                        failures.put(rest.id(), e.getMessage());
+                    }
+                    break;
+                }
+            }
+        } finally {
+            release(transport, healthy);
+        }
+        return failures;
+    }
+
+    @Override
+    public void close() {
+        Transport transport;
+        while ((transport = idle.poll()) != null) {
+            closeQuietly(transport);
+        }
+    }
+
+    private MimeMessage toMessage(OutboundEmail email) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(from);
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(email.recipient(), true));
+        message.setSubject(email.subject(), StandardCharsets.UTF_8.name());
+        message.setText(email.body(), StandardCharsets.UTF_8.name());
+        message.saveChanges();
+        return message;
+    }
+
+    private Transport borrow() throws MessagingException {
+        Transport transport;
+        while ((transport = idle.poll()) != null) {
+            if (transport.isConnected()) {
+                return transport;
+            }
+            closeQuietly(transport);
+        }
+        transport = session.getTransport("smtp");
+        transport.connect(host, port, username, password);
+        return transport;
+    }
+
+    private void release(Transport transport, boolean healthy) {
+        if (!healthy || !idle.offer(transport)) {
+            closeQuietly(transport);
+        }
+    }
+
+    private static void closeQuietly(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            // Already broken, nothing to do
+        }
+    }
+}
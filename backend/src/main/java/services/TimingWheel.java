@@ -0,0 +1,121 @@
+package services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel for expiring items at a deadline.
+ *
+ * Four levels of 64 slots each. Level 0 slots are one tick wide, level 1
+ * slots 64 ticks, level 2 slots 4096 ticks and so on, so with 1 s ticks the
+ * wheel covers ~194 days without ever scanning all items. Scheduling is O(1).
+ * Advancing one tick expires one level-0 slot; every 64 ticks the next slot
+ * of the level above is cascaded down. Each item is moved at most once per
+ * level, so expiry is O(1) amortised.
+ *
+ * Items expire on the first advance at or after their deadline (at most one
+ * tick late, never early). There is no cancel: callers check on expiry
+ * whether the item is still current.
+ *
+ * Thread-safe; all methods are synchronized (adds are cheap and advance is
+ * called from a single scheduler thread).
+ */
+public class TimingWheel<T> {
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long MAX_SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private final long tickMillis;
+    private final ArrayDeque<Node<T>>[][] wheels;
+    private final List<T> overdue = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    private record Node<T>(T item, long deadlineTick) {
+    }
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = Math.max(1, tickMillis);
+        this.currentTick = startMillis / this.tickMillis;
+        this.wheels = new ArrayDeque[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheels[level][slot] = new ArrayDeque<>();
+            }
+        }
+    }
+
+    /**
+     * Schedule an item to expire at deadlineMillis (epoch millis)
+     */
+    public synchronized void schedule(T item, long deadlineMillis) {
+        long deadlineTick = Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis);
+        size++;
+        if (deadlineTick <= currentTick) {
+            overdue.add(item);
+            return;
+        }
+        place(new Node<>(item, deadlineTick));
+    }
+
+    /**
+     * Move the wheel forward to nowMillis
+     *
+     * @return items whose deadline has passed, in no particular order
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>(overdue);
+        overdue.clear();
+
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Cascade higher levels whose slot boundary we just crossed
+            for (int level = 1; level < LEVELS; level++) {
+                long lowerMask = (1L << (SLOT_BITS * level)) - 1;
+                if ((currentTick & lowerMask) != 0) {
+                    break;
+                }
+                ArrayDeque<Node<T>> bucket = wheels[level][slotIndex(currentTick, level)];
+                int count = bucket.size();
+                for (int i = 0; i < count; i++) {
+                    place(bucket.poll());
+                }
+            }
+            ArrayDeque<Node<T>> due = wheels[0][slotIndex(currentTick, 0)];
+            for (Node<T> node : due) {
+                expired.add(node.item());
+            }
+            due.clear();
+        }
+        size -= expired.size();
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void place(Node<T> node) {
+        long delta = node.deadlineTick() - currentTick;
+        if (delta >= MAX_SPAN) {
+            // Beyond the wheel: park in the farthest top-level slot, re-placed when it cascades
+            wheels[LEVELS - 1][slotIndex(currentTick + MAX_SPAN - 1, LEVELS - 1)].add(node);
+            return;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        wheels[level][slotIndex(node.deadlineTick(), level)].add(node);
+    }
+
+    private static int slotIndex(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    }
+}
@@ -0,0 +1,116 @@
+package services;
+
+import exceptions.UploadRejectedException;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Puts an uploaded file in place without holding it in memory.
+ *
+ * Multipart uploads: by the time a controller runs, the servlet container has
+ * already spooled the whole part to its temp directory (file-size-threshold=0B)
+ * and cut off anything over spring.servlet.multipart.max-file-size. So the
+ * per-type limit is checked against the part's size up front, and the spooled
+ * file is then moved, not copied: MultipartFile.transferTo(File) with an
+ * absolute path hands it to Part.write, which Tomcat implements as a rename
+ * when spring.servlet.multipart.location is on the same filesystem as the
+ * uploads (a copy otherwise).
+ *
+ * Other streams (console uploads from a path) are copied through
+ * FileChannel.transferFrom in chunks, with the limit checked while reading,
+ * so an oversized file is cut off after maxBytes + 1 bytes.
+ *
+ * Either way the file lands in a temp file next to the target, is fsynced and
+ * moved into place atomically: readers see either no file or the whole file,
+ * and a failed upload leaves nothing behind.
+ */
+public final class UploadFileWriter {
+
+    private static final long CHUNK_BYTES = 1024 * 1024;
+
+    private UploadFileWriter() {
+    }
+
+    /**
+     * @param tooLargeMessage message of the UploadRejectedException thrown past maxBytes
+     * @return number of bytes written
+     */
+    public static long move(MultipartFile file, Path target, long maxBytes, String tooLargeMessage)
+            throws IOException {
+        long size = file.getSize();
+        if (size > maxBytes) {
+            throw new UploadRejectedException(tooLargeMessage);
+        }
+        Path temp = createTemp(target);
+        boolean moved = false;
+        try {
+            // Absolute path: Part.write resolves relative ones against the multipart location
+            file.transferTo(temp.toFile());
+            publish(temp, target);
+            moved = true;
+            return size;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * @param tooLargeMessage message of the UploadRejectedException thrown past maxBytes
+     * @return number of bytes written
+     */
+    public static long write(InputStream in, Path target, long maxBytes, String tooLargeMessage)
+            throws IOException {
+        Path temp = createTemp(target);
+        boolean moved = false;
+        try {
+            long written;
+            try (ReadableByteChannel source = in instanceof FileInputStream file ? file.getChannel()
+                    : Channels.newChannel(in);
+                    FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                written = 0;
+                long copied;
+                // Ask for one byte more than allowed so an oversized upload is noticed
+                while ((copied = out.transferFrom(source, written,
+                        Math.min(CHUNK_BYTES, maxBytes + 1 - written))) > 0) {
+                    written += copied;
+                    if (written > maxBytes) {
+                        throw new UploadRejectedException(tooLargeMessage);
+                    }
+                }
+            }
+            publish(temp, target);
+            moved = true;
+            return written;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static Path createTemp(Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        // Same directory as the target, so the final move is a rename
+        return Files.createTempFile(dir, ".upload-", ".part");
+    }
+
+    private static void publish(Path temp, Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            out.force(false);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,145 @@
+package services;
+
+import models.User;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of users, reachable by id and by normalized email.
+ *
+ * AuthService is the only writer of users, so it keeps the cache current:
+ * saves put the saved user back, deletes and bulk updates invalidate. Entries
+ * also expire after ttlMillis, which bounds how stale a node can be when
+ * another node changed the user.
+ *
+ * The cache keeps its own copy of each user and every lookup returns a fresh
+ * copy (User.copy), so a request can change the user it got without other
+ * requests seeing it, and a change that is never saved does not stick.
+ * Writers should still start from AuthService.getUserForUpdate, which reads
+ * the row itself rather than a possibly stale cached copy.
+ */
+public class UserCache {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<Long, CachedUser> byId;
+    private final Map<String, Long> idByEmail = new HashMap<>();
+
+    private final LongAdder idHits = new LongAdder();
+    private final LongAdder idMisses = new LongAdder();
+    private final LongAdder emailHits = new LongAdder();
+    private final LongAdder emailMisses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private record CachedUser(User user, String email, long cachedUntilMillis) {
+    }
+
+    /**
+     * Hit counters since startup, for the admin stats endpoint
+     */
+    public record Stats(int size, long idHits, long idMisses, double idHitRatio, long emailHits, long emailMisses,
+            double emailHitRatio, long evictions) {
+    }
+
+    public UserCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = Math.max(0, ttlMillis);
+        this.byId = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public User getById(Long id) {
+        User user = id != null ? lookup(id) : null;
+        (user != null ? idHits : idMisses).increment();
+        return user;
+    }
+
+    /**
+     * @param email an already normalized email (User.normalizeEmail)
+     */
+    public User getByEmail(String email) {
+        User user = null;
+        if (email != null) {
+            Long id;
+            synchronized (this) {
+                id = idByEmail.get(email);
+            }
+            if (id != null) {
+                user = lookup(id);
+            }
+        }
+        (user != null ? emailHits : emailMisses).increment();
+        return user;
+    }
+
+    public synchronized void put(User user) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        remove(user.getId());
+        String email = User.normalizeEmail(user.getEmail());
+        byId.put(user.getId(), new CachedUser(user.copy(), email, System.currentTimeMillis() + ttlMillis));
+        if (email != null) {
+            idByEmail.put(email, user.getId());
+        }
+
+        Iterator<Map.Entry<Long, CachedUser>> eldest = byId.entrySet().iterator();
+        while (byId.size() > maxEntries && eldest.hasNext()) {
+            CachedUser evicted = eldest.next().getValue();
+            eldest.remove();
+            removeEmail(evicted);
+            evictions.increment();
+        }
+    }
+
+    public synchronized void invalidate(Long id) {
+        if (id != null) {
+            remove(id);
+        }
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    public Stats getStats() {
+        long ih = idHits.sum();
+        long im = idMisses.sum();
+        long eh = emailHits.sum();
+        long em = emailMisses.sum();
+        return new Stats(size(), ih, im, ratio(ih, im), eh, em, ratio(eh, em), evictions.sum());
+    }
+
+    private synchronized User lookup(Long id) {
+        CachedUser cached = byId.get(id);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.cachedUntilMillis() <= System.currentTimeMillis()) {
+            remove(id);
+            return null;
+        }
+        return cached.user().copy();
+    }
+
+    private void remove(Long id) {
+        CachedUser removed = byId.remove(id);
+        if (removed != null) {
+            removeEmail(removed);
+        }
+    }
+
+    private void removeEmail(CachedUser cached) {
+        if (cached.email() != null) {
+            idByEmail.remove(cached.email(), cached.user().getId());
+        }
+    }
+
+    private static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total > 0 ? (double) hits / total : 0.0;
+    }
+}
@@ -0,0 +1,57 @@
+package services;
+
+/**
+ * Where EmailVerificationService keeps pending email verification and
+ * password reset codes, one per user and purpose, outside the users table.
+ *
+ * InMemoryVerificationCodeStore is local to one JVM and bounded in size.
+ * JdbcVerificationCodeStore shares codes between nodes and survives restarts.
+ * Selected with dreamstay.verification.store.
+ */
+public interface VerificationCodeStore {
+
+    /**
+     * What a code proves. Each purpose has its own slot, so issuing a reset
+     * code leaves a pending verification code alone and the other way round.
+     */
+    enum Purpose {
+        EMAIL_VERIFICATION,
+        PASSWORD_RESET
+    }
+
+    enum Result {
+        VERIFIED,
+        MISMATCH,
+        EXPIRED,
+        // No pending code (never issued, already used or evicted)
+        MISSING,
+        // This wrong guess used up the last attempt; the code is discarded
+        TOO_MANY_ATTEMPTS
+    }
+
+    /**
+     * Store a new code for a user, replacing any pending one for the same
+     * purpose (and its attempt count)
+     */
+    void issue(long userId, Purpose purpose, String code, long expiresAtMillis);
+
+    /**
+     * Check a code, counting the attempt. The code is discarded when it
+     * matches, has expired or reaches maxAttempts wrong guesses.
+     */
+    Result check(long userId, Purpose purpose, String code, int maxAttempts, long nowMillis);
+
+    /**
+     * Drop codes that expired before nowMillis
+     *
+     * @return number of codes dropped
+     */
+    int evictExpired(long nowMillis);
+
+    /**
+     * Whether a code for a new user would currently be accepted
+     */
+    boolean hasCapacity();
+
+    int size();
+}
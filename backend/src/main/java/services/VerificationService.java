@@ -2,9 +2,14 @@ package services;
 
 import models.User;
 import models.Property;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.util.List;
 
 public class VerificationService {
+
+    private static final Logger log = LoggerFactory.getLogger(VerificationService.class);
+
     private AuthService authService;
     private PropertyManager propertyManager;
 
@@ -18,8 +23,8 @@ public class VerificationService {
         return authService.getAllUsers();
     }
 
-    public List<User> getUnverifiedUsers() {
-        return authService.getUnverifiedUsers();
+    public List<User> getUnverifiedUsers(KeysetPage page) {
+        return authService.getUnverifiedUsers(page);
     }
 
     public void verifyUser(Long userId) {
@@ -28,7 +33,7 @@ public class VerificationService {
 
     public void rejectUser(Long userId) {
         // Implement rejection (maybe delete or mark rejected)
-        System.out.println("User " + userId + " rejected.");
+        log.info("User rejected userId={}", userId);
         // authService.deleteUser(userId); // If implemented
     }
 
@@ -42,12 +47,12 @@ public class VerificationService {
     }
 
     public void rejectProperty(Long propertyId) {
-        System.out.println("Property " + propertyId + " rejected.");
+        log.info("Property rejected propertyId={}", propertyId);
         propertyManager.deleteProperty(propertyId);
     }
 
-    public List<User> getUnverifiedAdmins() {
-        return authService.getUnverifiedAdmins();
+    public List<User> getUnverifiedAdmins(KeysetPage page) {
+        return authService.getUnverifiedAdmins(page);
     }
 
     public void verifyAdmin(Long userId) {
@@ -0,0 +1,187 @@
+-- Extra indexes that Hibernate's ddl-auto=update cannot create.
+-- Runs on every startup (spring.sql.init.mode=always), so every statement must be idempotent.
+
+-- Full-text message search (repositories.MessageRepository.searchMessages).
+-- Postgres maintains the index on every insert/delete, so saveMessage and
+-- deleteConversation need no extra work to keep search up to date.
+CREATE INDEX IF NOT EXISTS idx_messages_text_fts
+    ON messages USING GIN (to_tsvector('simple', coalesce(text, '')));
+
+-- Conversation lookups in both directions (chat partners, contacted sellers,
+-- conversation history, hasUserContactedSeller).
+CREATE INDEX IF NOT EXISTS idx_messages_sender_recipient ON messages (sender_id, recipient_id);
+CREATE INDEX IF NOT EXISTS idx_messages_recipient_sender ON messages (recipient_id, sender_id);
+
+-- Incremental sync: a conversation's messages after a known sequence number
+-- (findConversationAfterSeq), one range scan per direction.
+CREATE INDEX IF NOT EXISTS idx_messages_sender_recipient_seq ON messages (sender_id, recipient_id, seq);
+
+-- Long-poll catch-up: a recipient's messages after a known id, or stamped
+-- recently (the overlap that covers ids committed out of order).
+CREATE INDEX IF NOT EXISTS idx_messages_recipient_id ON messages (recipient_id, id);
+CREATE INDEX IF NOT EXISTS idx_messages_recipient_timestamp ON messages (recipient_id, timestamp);
+
+-- Listing-scoped threads and cleanup when a listing is deleted.
+CREATE INDEX IF NOT EXISTS idx_messages_property ON messages (property_id);
+
+-- Reviews of a user, newest first (keyset pages in ReviewRepository.findPageBefore).
+-- Reviews written before created_at existed sort as the oldest.
+UPDATE reviews SET created_at = TIMESTAMP '1970-01-01 00:00:00' WHERE created_at IS NULL;
+CREATE INDEX IF NOT EXISTS idx_reviews_target_created ON reviews (target_user_id, created_at DESC, id DESC);
+
+-- Reviews of a listing, newest first; also gives RatingBackfillJob its property order.
+CREATE INDEX IF NOT EXISTS idx_reviews_property_created ON reviews (property_id, created_at DESC, id DESC);
+
+-- One-time seed of the running rating sum for users that existed before it
+-- (ReviewService maintains it incrementally from then on). Property reviews
+-- count toward the property, not the owner, so they are left out here too.
+UPDATE users u SET
+    rating_sum = COALESCE((SELECT SUM(r.rating) FROM reviews r WHERE r.target_user_id = u.id AND r.property_id IS NULL), 0),
+    review_count = (SELECT COUNT(*) FROM reviews r WHERE r.target_user_id = u.id AND r.property_id IS NULL)
+WHERE u.rating_sum IS NULL;
+
+-- One-time seed of the star histogram, same idea as rating_sum above.
+UPDATE users u SET
+    stars1 = (SELECT COUNT(*) FROM reviews r WHERE r.target_user_id = u.id AND r.property_id IS NULL AND r.rating = 1),
+    stars2 = (SELECT COUNT(*) FROM reviews r WHERE r.target_user_id = u.id AND r.property_id IS NULL AND r.rating = 2),
+    stars3 = (SELECT COUNT(*) FROM reviews r WHERE r.target_user_id = u.id AND r.property_id IS NULL AND r.rating = 3),
+    stars4 = (SELECT COUNT(*) FROM reviews r WHERE r.target_user_id = u.id AND r.property_id IS NULL AND r.rating = 4),
+    stars5 = (SELECT COUNT(*) FROM reviews r WHERE r.target_user_id = u.id AND r.property_id IS NULL AND r.rating = 5)
+WHERE u.stars1 IS NULL;
+
+-- Case-insensitive email lookups (UserRepository.findByEmailNormalized).
+-- Seeds the column for users created before it existed. Older registrations
+-- may have accepted emails that differ only in case; those would make the
+-- unique index fail with a bare SQL error, so check first and stop startup
+-- with the ids of the accounts to merge or rename.
+UPDATE users SET email_normalized = LOWER(TRIM(email)) WHERE email_normalized IS NULL;
+DO '
+DECLARE
+    duplicates TEXT;
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_indexes WHERE indexname = ''idx_users_email_normalized'') THEN
+        SELECT string_agg(ids, ''; '') INTO duplicates FROM (
+            SELECT string_agg(id::TEXT, '','' ORDER BY id) AS ids FROM users
+            WHERE email_normalized IS NOT NULL
+            GROUP BY email_normalized HAVING COUNT(*) > 1
+            ORDER BY MIN(id) LIMIT 20) d;
+        IF duplicates IS NOT NULL THEN
+            RAISE EXCEPTION ''Cannot create idx_users_email_normalized: these users share an email that differs only in case or spacing (user ids: %). Merge or rename them, then restart.'', duplicates;
+        END IF;
+    END IF;
+END';
+CREATE UNIQUE INDEX IF NOT EXISTS idx_users_email_normalized ON users (email_normalized);
+
+-- Startup admin check (UserRepository.existsByRole)
+CREATE INDEX IF NOT EXISTS idx_users_role ON users (LOWER(role));
+
+-- Admin queues (UserRepository/PropertyRepository find*Page). Partial indexes
+-- on id: each holds only the rows waiting in that queue and is read as an id
+-- range in either direction, so pages stay cheap as the tables grow.
+CREATE INDEX IF NOT EXISTS idx_users_unverified ON users (id) WHERE NOT is_verified;
+CREATE INDEX IF NOT EXISTS idx_users_pending_approval ON users (id) WHERE NOT is_approved;
+CREATE INDEX IF NOT EXISTS idx_users_id_pending ON users (id)
+    WHERE id_document_path IS NOT NULL AND NOT id_verified;
+CREATE INDEX IF NOT EXISTS idx_users_admin_pending ON users (id) WHERE LOWER(role) = 'admin' AND NOT is_approved;
+CREATE INDEX IF NOT EXISTS idx_properties_unverified ON properties (id) WHERE NOT is_verified;
+
+-- Public search (PropertyRepository.search): the minRating filter and the
+-- "rating" order (rating_average DESC, id) read this index in order.
+CREATE INDEX IF NOT EXISTS idx_properties_verified_rating ON properties (is_verified, rating_average DESC, id);
+
+-- Shared sessions (services.JdbcSessionStore, dreamstay.sessions.store=jdbc).
+-- Plain JDBC, no entity, so Hibernate does not manage this table.
+CREATE TABLE IF NOT EXISTS user_sessions (
+    token         VARCHAR(64) PRIMARY KEY,
+    user_id       BIGINT NOT NULL,
+    created_at_ms BIGINT NOT NULL,
+    expires_at_ms BIGINT NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_user_sessions_expires ON user_sessions (expires_at_ms);
+-- Logging a user out everywhere (SessionStore.removeAllForUser, password reset)
+CREATE INDEX IF NOT EXISTS idx_user_sessions_user ON user_sessions (user_id);
+
+-- Access tokens logged out before they expired (same store). Rows are
+-- deleted once the token would have expired anyway.
+CREATE TABLE IF NOT EXISTS revoked_access_tokens (
+    token_id      BIGINT PRIMARY KEY,
+    expires_at_ms BIGINT NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_revoked_access_tokens_expires ON revoked_access_tokens (expires_at_ms);
+
+-- Users whose access tokens were all revoked at once (password reset): every
+-- token of the user expiring at or before expires_until_ms is refused. Rows
+-- are deleted once that time has passed.
+CREATE TABLE IF NOT EXISTS revoked_user_access_tokens (
+    user_id          BIGINT PRIMARY KEY,
+    expires_until_ms BIGINT NOT NULL
+);
+
+-- Pending email verification codes (services.JdbcVerificationCodeStore,
+-- dreamstay.verification.store=jdbc). Plain JDBC, no entity.
+-- One row per user and purpose (VerificationCodeStore.Purpose).
+CREATE TABLE IF NOT EXISTS verification_codes (
+    user_id       BIGINT NOT NULL,
+    purpose       VARCHAR(32) NOT NULL DEFAULT 'EMAIL_VERIFICATION',
+    code          VARCHAR(16) NOT NULL,
+    expires_at_ms BIGINT NOT NULL,
+    attempts      INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, purpose)
+);
+CREATE INDEX IF NOT EXISTS idx_verification_codes_expires ON verification_codes (expires_at_ms);
+-- Tables created before codes had a purpose are keyed by user_id alone:
+-- add the column (existing codes are verification codes) and widen the key.
+ALTER TABLE verification_codes ADD COLUMN IF NOT EXISTS purpose VARCHAR(32) NOT NULL DEFAULT 'EMAIL_VERIFICATION';
+DO '
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.key_column_usage
+                   WHERE table_name = ''verification_codes'' AND constraint_name = ''verification_codes_pkey''
+                     AND column_name = ''purpose'') THEN
+        ALTER TABLE verification_codes DROP CONSTRAINT verification_codes_pkey;
+        ALTER TABLE verification_codes ADD PRIMARY KEY (user_id, purpose);
+    END IF;
+END';
+
+-- Codes used to be the users.verification_code / verification_code_expiry
+-- columns. One-time migration: copy the codes still pending there into
+-- verification_codes, where the jdbc store finds them, and give the expiry a
+-- default, since User no longer writes it and it was created NOT NULL. That
+-- default also marks the copy as done, so later startups skip it.
+-- The columns stay until a later release, once no running node maps them:
+-- dropping them here would break old nodes in the middle of a rolling deploy.
+-- The body is a single-quoted string so the script splitter keeps it whole.
+DO '
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_name = ''users'' AND column_name = ''verification_code_expiry''
+                 AND column_default IS NULL) THEN
+        INSERT INTO verification_codes (user_id, code, expires_at_ms)
+        SELECT id, verification_code, verification_code_expiry FROM users
+        WHERE verification_code IS NOT NULL AND NOT email_verified
+          AND verification_code_expiry > (EXTRACT(EPOCH FROM now()) * 1000)::BIGINT
+        ON CONFLICT (user_id, purpose) DO NOTHING;
+        ALTER TABLE users ALTER COLUMN verification_code_expiry SET DEFAULT 0;
+    END IF;
+END';
+
+-- Outbound email queue (services.EmailOutbox). Plain JDBC, no entity.
+-- status: PENDING (due at next_attempt_at_ms), SENDING (claimed until
+-- locked_until_ms), SENT (purged after dreamstay.mail.retention-days), FAILED.
+CREATE TABLE IF NOT EXISTS outbound_emails (
+    id                 BIGSERIAL PRIMARY KEY,
+    recipient          VARCHAR(320) NOT NULL,
+    subject            VARCHAR(998) NOT NULL,
+    body               TEXT NOT NULL,
+    status             VARCHAR(16) NOT NULL,
+    attempts           INT NOT NULL DEFAULT 0,
+    next_attempt_at_ms BIGINT NOT NULL,
+    locked_until_ms    BIGINT,
+    last_error         VARCHAR(1000),
+    created_at_ms      BIGINT NOT NULL,
+    sent_at_ms         BIGINT
+);
+CREATE INDEX IF NOT EXISTS idx_outbound_emails_due ON outbound_emails (next_attempt_at_ms)
+    WHERE status = 'PENDING';
+CREATE INDEX IF NOT EXISTS idx_outbound_emails_leased ON outbound_emails (locked_until_ms)
+    WHERE status = 'SENDING';
+CREATE INDEX IF NOT EXISTS idx_outbound_emails_sent ON outbound_emails (sent_at_ms) WHERE status = 'SENT';
@@ -0,0 +1,155 @@
+package services;
+
+import models.SessionToken;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccessTokenCodecTest {
+
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    private static AccessTokenCodec codec(int keyId, byte fill) {
+        AccessTokenCodec codec = new AccessTokenCodec();
+        codec.addKey(keyId, key(fill));
+        codec.setActiveKey(keyId);
+        return codec;
+    }
+
+    private static byte[] key(byte fill) {
+        byte[] secret = new byte[32];
+        Arrays.fill(secret, fill);
+        return secret;
+    }
+
+    @Test
+    void verifiesIssuedToken() {
+        AccessTokenCodec codec = codec(1, (byte) 7);
+        long expiresAt = System.currentTimeMillis() + 60_000;
+
+        String token = codec.issue(42L, "seller", expiresAt);
+        AccessTokenCodec.Claims claims = codec.verify(token, System.currentTimeMillis());
+
+        assertEquals(AccessTokenCodec.TOKEN_LENGTH, token.length());
+        assertNotNull(claims);
+        assertEquals(42L, claims.userId());
+        assertEquals("seller", claims.role());
+        assertEquals(expiresAt, claims.expiresAtMillis());
+        assertNull(codec.verify(token, expiresAt + 1));
+    }
+
+    @Test
+    void rejectsTokenWithChangedPayloadOrMac() {
+        AccessTokenCodec codec = codec(1, (byte) 7);
+        String token = codec.issue(42L, "buyer", System.currentTimeMillis() + 60_000);
+
+        assertNull(codec.verify(replaceChar(token, 10, token.charAt(10) == 'A' ? 'B' : 'A'),
+                System.currentTimeMillis()));
+        assertNull(codec.verify(replaceChar(token, 40, token.charAt(40) == 'A' ? 'B' : 'A'),
+                System.currentTimeMillis()));
+    }
+
+    @Test
+    void rejectsMacWithNonCanonicalTrailingBits() {
+        AccessTokenCodec codec = codec(1, (byte) 7);
+        String token = codec.issue(42L, "buyer", System.currentTimeMillis() + 60_000);
+
+        // The last of the 22 MAC chars carries 2 bits of data and 4 zero bits
+        int last = token.length() - 1;
+        int value = ALPHABET.indexOf(token.charAt(last));
+        assertEquals(0, value & 0x0F);
+        String variant = replaceChar(token, last, ALPHABET.charAt(value | 1));
+
+        assertNotNull(codec.verify(token, System.currentTimeMillis()));
+        assertNull(codec.verify(variant, System.currentTimeMillis()));
+    }
+
+    @Test
+    void acceptsOldKeyAfterRotationUntilRemoved() {
+        AccessTokenCodec codec = codec(1, (byte) 7);
+        String oldToken = codec.issue(42L, "buyer", System.currentTimeMillis() + 60_000);
+
+        codec.addKey(2, key((byte) 9));
+        codec.setActiveKey(2);
+        String newToken = codec.issue(42L, "buyer", System.currentTimeMillis() + 60_000);
+
+        assertNotNull(codec.verify(oldToken, System.currentTimeMillis()));
+        assertNotNull(codec.verify(newToken, System.currentTimeMillis()));
+
+        codec.removeKey(1);
+        assertNull(codec.verify(oldToken, System.currentTimeMillis()));
+        assertNotNull(codec.verify(newToken, System.currentTimeMillis()));
+    }
+
+    /**
+     * Rough benchmark of token verification against the session map lookup it
+     * replaces. It prints both costs; the only bound asserted is loose, so the
+     * test stays stable on slow build machines.
+     */
+    @Test
+    void verifyCostComparedToSessionLookup() {
+        AccessTokenCodec codec = codec(1, (byte) 7);
+        InMemorySessionStore store = new InMemorySessionStore(1000);
+        int users = 1024;
+        String[] accessTokens = new String[users];
+        String[] sessionTokens = new String[users];
+        for (int i = 0; i < users; i++) {
+            accessTokens[i] = codec.issue(i, "buyer", System.currentTimeMillis() + 600_000);
+            SessionToken session = new SessionToken((long) i, 10);
+            store.save(session);
+            sessionTokens[i] = session.getToken();
+        }
+        long now = System.currentTimeMillis();
+
+        // Warm up both paths so the JIT has compiled them before measuring
+        int warmupRounds = 200;
+        long sink = 0;
+        for (int round = 0; round < warmupRounds; round++) {
+            sink += verifyAll(codec, accessTokens, now) + findAll(store, sessionTokens);
+        }
+
+        int rounds = 100;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            sink += verifyAll(codec, accessTokens, now);
+        }
+        double verifyNanos = (System.nanoTime() - start) / (double) (rounds * users);
+
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            sink += findAll(store, sessionTokens);
+        }
+        double lookupNanos = (System.nanoTime() - start) / (double) (rounds * users);
+
+        System.out.printf("AccessTokenCodec.verify: %.0f ns/op, InMemorySessionStore.find: %.0f ns/op%n",
+                verifyNanos, lookupNanos);
+        assertEquals((long) (warmupRounds + rounds) * 2 * users * (users - 1) / 2, sink);
+        assertTrue(verifyNanos < 50_000, "verify took " + verifyNanos + " ns");
+    }
+
+    // Sum of the user ids, so the work cannot be optimised away
+    private static long verifyAll(AccessTokenCodec codec, String[] tokens, long now) {
+        long sum = 0;
+        for (String token : tokens) {
+            sum += codec.verify(token, now).userId();
+        }
+        return sum;
+    }
+
+    private static long findAll(InMemorySessionStore store, String[] tokens) {
+        long sum = 0;
+        for (String token : tokens) {
+            sum += store.find(token).getUserId();
+        }
+        return sum;
+    }
+
+    private static String replaceChar(String s, int index, char c) {
+        return s.substring(0, index) + c + s.substring(index + 1);
+    }
+}
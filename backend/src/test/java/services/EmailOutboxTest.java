@@ -0,0 +1,195 @@
+package services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailOutboxTest {
+
+    private final List<Runnable> cleanup = new ArrayList<>();
+
+    @AfterEach
+    void stopEverything() {
+        for (int i = cleanup.size() - 1; i >= 0; i--) {
+            cleanup.get(i).run();
+        }
+    }
+
+    @Test
+    void deliversQueuedEmailToSmtpServer() throws Exception {
+        LocalSmtpServer server = new LocalSmtpServer(true, 0, 10);
+        server.start();
+        cleanup.add(server::stop);
+        SmtpEmailTransport transport = new SmtpEmailTransport("localhost", server.getPort(), null, null, false,
+                "no-reply@dreamstay.local", 1, 5000);
+        cleanup.add(transport::close);
+        OutboxTable table = new OutboxTable();
+        EmailOutbox outbox = start(new EmailOutbox(table, transport, 1, 20, 50, 3, 1000, 60_000, 120_000, 0));
+
+        long id = outbox.enqueue("guest@example.com", "Your DreamStay code", "Your code is 123456");
+
+        waitFor(() -> "SENT".equals(table.rows.get(id).status), () -> "last error: " + table.rows.get(id).lastError);
+        List<LocalSmtpServer.ReceivedEmail> received = server.getReceived();
+        assertEquals(1, received.size());
+        assertEquals("no-reply@dreamstay.local", received.get(0).from());
+        assertEquals(List.of("guest@example.com"), received.get(0).recipients());
+        assertTrue(received.get(0).data().contains("Subject: Your DreamStay code"));
+        assertTrue(received.get(0).data().contains("Your code is 123456"));
+    }
+
+    @Test
+    void renewsLeaseWhileSlowBatchIsSent() throws Exception {
+        OutboxTable table = new OutboxTable();
+        // 300 ms per email; five of them outlast the (minimum) one second lease
+        EmailTransport slow = (batch, beforeEach) -> {
+            for (OutboundEmail email : batch) {
+                beforeEach.run();
+                Thread.sleep(300);
+            }
+            return Map.of();
+        };
+        // The second worker is idle and would re-claim the batch if its lease ran out
+        EmailOutbox outbox = start(new EmailOutbox(table, slow, 2, 5, 50, 3, 1000, 60_000, 1000, 0));
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(outbox.enqueue("guest" + i + "@example.com", "Code", "Your code is " + i));
+        }
+
+        waitFor(() -> ids.stream().allMatch(id -> "SENT".equals(table.rows.get(id).status)), () -> "not all sent");
+        assertTrue(table.leaseRenewals.size() >= 2, "lease renewed " + table.leaseRenewals.size() + " times");
+        assertEquals(ids.size(), table.claims.get(), "no email claimed twice");
+    }
+
+    private EmailOutbox start(EmailOutbox outbox) {
+        outbox.start();
+        cleanup.add(outbox::shutdown);
+        return outbox;
+    }
+
+    private static void waitFor(BooleanSupplier condition, Supplier<String> state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, () -> "timed out, " + state.get());
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Just enough of the outbound_emails table for EmailOutbox: the insert,
+     * the claim (due or with an expired lease) and the status and lease
+     * updates. A retried email is parked rather than made due again, so a
+     * failed send ends the test quickly with its error.
+     */
+    private static final class OutboxTable extends JdbcTemplate {
+
+        static final class Row {
+            final long id;
+            final String recipient;
+            final String subject;
+            final String body;
+            volatile String status = "PENDING";
+            volatile int attempts;
+            volatile long lockedUntil;
+            volatile String lastError;
+
+            Row(long id, String recipient, String subject, String body) {
+                this.id = id;
+                this.recipient = recipient;
+                this.subject = subject;
+                this.body = body;
+            }
+        }
+
+        final Map<Long, Row> rows = new ConcurrentHashMap<>();
+        final List<Object[]> leaseRenewals = new CopyOnWriteArrayList<>();
+        final AtomicLong claims = new AtomicLong();
+        private final AtomicLong nextId = new AtomicLong(1);
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+            long id = nextId.getAndIncrement();
+            rows.put(id, new Row(id, (String) args[0], (String) args[1], (String) args[2]));
+            return (T) Long.valueOf(id);
+        }
+
+        @Override
+        public synchronized <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            long lockedUntil = (Long) args[0];
+            long now = (Long) args[2];
+            int limit = ((Number) args[3]).intValue();
+            List<T> claimed = new ArrayList<>();
+            for (Row row : rows.values()) {
+                boolean due = "PENDING".equals(row.status) || ("SENDING".equals(row.status) && row.lockedUntil < now);
+                if (claimed.size() < limit && due) {
+                    row.status = "SENDING";
+                    row.lockedUntil = lockedUntil;
+                    claims.incrementAndGet();
+                    try {
+                        claimed.add(rowMapper.mapRow(resultSet(row), claimed.size()));
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+            return claimed;
+        }
+
+        @Override
+        public synchronized int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            if (sql.contains("SET locked_until_ms = ?")) {
+                for (Object[] args : batchArgs) {
+                    rows.get((Long) args[1]).lockedUntil = (Long) args[0];
+                }
+                leaseRenewals.addAll(batchArgs);
+            } else if (sql.contains("status = 'SENT'")) {
+                for (Object[] args : batchArgs) {
+                    Row row = rows.get((Long) args[2]);
+                    row.attempts = (Integer) args[0];
+                    row.status = "SENT";
+                }
+            } else if (sql.contains("status = 'PENDING'")) {
+                for (Object[] args : batchArgs) {
+                    Row row = rows.get((Long) args[3]);
+                    row.attempts = (Integer) args[0];
+                    row.lastError = (String) args[2];
+                    row.status = "RETRY_LATER";
+                }
+            } else if (sql.contains("status = 'FAILED'")) {
+                for (Object[] args : batchArgs) {
+                    Row row = rows.get((Long) args[2]);
+                    row.attempts = (Integer) args[0];
+                    row.lastError = (String) args[1];
+                    row.status = "FAILED";
+                }
+            } else {
+                throw new UnsupportedOperationException(sql);
+            }
+            return new int[batchArgs.size()];
+        }
+
+        private static ResultSet resultSet(Row row) {
+            Map<String, Object> columns = Map.of("id", row.id, "recipient", row.recipient, "subject", row.subject,
+                    "body", row.body, "attempts", row.attempts);
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class }, (proxy, method, methodArgs) -> columns.get(methodArgs[0]));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package services;
+
+import exceptions.UploadRejectedException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UploadFileWriterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void movesMultipartFileIntoPlace() throws IOException {
+        byte[] data = randomBytes(300_000);
+        Path target = dir.resolve("photos/a.jpg");
+
+        long written = UploadFileWriter.move(new MockMultipartFile("file", "a.jpg", "image/jpeg", data),
+                target, data.length, "too large");
+
+        assertEquals(data.length, written);
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertNoTempFiles(target.getParent());
+    }
+
+    @Test
+    void rejectsOversizedMultipartFileBeforeWriting() {
+        byte[] data = randomBytes(1001);
+        Path target = dir.resolve("a.jpg");
+
+        UploadRejectedException e = assertThrows(UploadRejectedException.class, () -> UploadFileWriter.move(
+                new MockMultipartFile("file", "a.jpg", "image/jpeg", data), target, 1000, "too large"));
+
+        assertEquals("too large", e.getMessage());
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void copiesStreamsFromMemoryAndFromFiles() throws IOException {
+        // More than one transferFrom chunk
+        byte[] data = randomBytes(3 * 1024 * 1024 + 17);
+        Path source = dir.resolve("source.pdf");
+        Files.write(source, data);
+
+        Path fromMemory = dir.resolve("docs/memory.pdf");
+        Path fromFile = dir.resolve("docs/file.pdf");
+        UploadFileWriter.write(new ByteArrayInputStream(data), fromMemory, data.length, "too large");
+        try (InputStream in = new FileInputStream(source.toFile())) {
+            UploadFileWriter.write(in, fromFile, data.length, "too large");
+        }
+
+        assertArrayEquals(data, Files.readAllBytes(fromMemory));
+        assertArrayEquals(data, Files.readAllBytes(fromFile));
+        assertNoTempFiles(fromMemory.getParent());
+    }
+
+    @Test
+    void cutsOffOversizedStreamAndLeavesNothingBehind() {
+        Path target = dir.resolve("docs/big.pdf");
+
+        assertThrows(UploadRejectedException.class, () -> UploadFileWriter.write(
+                new ByteArrayInputStream(randomBytes(5000)), target, 4096, "too large"));
+
+        assertFalse(Files.exists(target));
+        assertNoTempFiles(target.getParent());
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static void assertNoTempFiles(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            assertFalse(files.anyMatch(p -> p.getFileName().toString().endsWith(".part")));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -7,13 +7,15 @@ const AdminDashboard = () => {
     const [stats, setStats] = useState({ users: 0, props: 0 });
     const [activeTab, setActiveTab] = useState('unverified_users');
     const [data, setData] = useState([]);
+    const [nextCursor, setNextCursor] = useState(null);
 
     // Data Loading
     useEffect(() => {
         loadData();
     }, [activeTab]);
 
-    const loadData = async () => {
+    // Lists are paged: the first call loads page one, loadMore appends the next
+    const loadData = async (cursor = null) => {
         try {
             let endpoint = '';
             switch (activeTab) {
@@ -25,8 +27,9 @@ const AdminDashboard = () => {
                 case 'pending_id_verification': endpoint = '/admin/users/id-pending'; break;
                 default: return;
             }
-            const res = await api.get(endpoint);
-            setData(res.data);
+            const res = await api.get(endpoint, { params: cursor ? { cursor } : {} });
+            setData(prev => (cursor ? [...prev, ...res.data.items] : res.data.items));
+            setNextCursor(res.data.nextCursor);
         } catch (error) {
             console.error("Failed to load data", error);
         }
@@ -212,6 +215,9 @@ const AdminDashboard = () => {
             <h1 className="title">Admin Dashboard</h1>
             {renderTabs()}
             {renderContent()}
+            {nextCursor && (
+                <button onClick={() => loadData(nextCursor)} style={{ marginTop: '1rem' }}>Load more</button>
+            )}
         </div>
     );
 };
@@ -28,7 +28,12 @@ const Login = () => {
                 window.location.href = '/properties';
             }
         } catch (error) {
-            alert('Login failed: ' + (error.response?.data || error.message));
+            const message = error.response?.data || error.message;
+            if (typeof message === 'string' && message.startsWith('Password reset required')) {
+                window.location.href = '/reset-password?email=' + encodeURIComponent(email);
+                return;
+            }
+            alert('Login failed: ' + message);
         }
     };
 
@@ -49,6 +54,9 @@ const Login = () => {
             <div style={{ marginTop: '1.5rem', textAlign: 'center', color: 'var(--text-muted)' }}>
                 Don't have an account? <a href="/register" style={{ color: 'var(--primary)', fontWeight: '600' }}>Register</a>
             </div>
+            <div style={{ marginTop: '0.5rem', textAlign: 'center' }}>
+                <a href="/reset-password" style={{ color: 'var(--primary)' }}>Forgot password?</a>
+            </div>
         </div>
     );
 };
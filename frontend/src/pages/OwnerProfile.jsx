@@ -21,7 +21,7 @@ const OwnerProfile = () => {
 
                 // Fetch Reviews
                 const reviewsRes = await api.get(`/reviews/${id}`);
-                setReviews(reviewsRes.data);
+                setReviews(reviewsRes.data.reviews);
 
                 // Fetch Listings (We need an endpoint for this, or filter on client side if we fetch all? No, inefficient)
                 // Previously we saw PropertyController has /api/properties specific searches.
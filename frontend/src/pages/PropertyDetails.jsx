@@ -40,7 +40,7 @@ const PropertyDetails = () => {
                 // Fetch reviews for the owner
                 if (response.data.ownerId) {
                     const reviewRes = await api.get(`/reviews/${response.data.ownerId}`);
-                    setReviews(reviewRes.data);
+                    setReviews(reviewRes.data.reviews);
                 }
             } catch (error) {
                 console.error('Error fetching property value', error);
@@ -51,7 +51,7 @@ const PropertyDetails = () => {
 
     const handleSendMessage = async (e) => {
         e.preventDefault();
-        console.log('Sending message:', { recipientId: property.ownerId, content: message });
+        console.log('Sending message:', { recipientId: property.ownerId, propertyId: property.id, content: message });
 
         if (!property.ownerId) {
             alert('Error: Property owner ID is missing.');
@@ -61,6 +61,7 @@ const PropertyDetails = () => {
         try {
             await api.post('/messages', {
                 recipientId: property.ownerId,
+                propertyId: property.id,
                 content: message
             }); // Header handled by interceptor
             alert('Message sent!');
@@ -85,7 +86,7 @@ const PropertyDetails = () => {
             setReview({ rating: 5, comment: '' });
             // Refresh reviews
             const reviewRes = await api.get(`/reviews/${property.ownerId}`);
-            setReviews(reviewRes.data);
+            setReviews(reviewRes.data.reviews);
         } catch (error) {
             alert('Failed to submit review: ' + (error.response?.data || error.message));
         }
@@ -0,0 +1,62 @@
+import React, { useState } from 'react';
+import api from '../api/axiosConfig';
+import { useSearchParams } from 'react-router-dom';
+
+const ResetPassword = () => {
+    const [searchParams] = useSearchParams();
+    const [email, setEmail] = useState(searchParams.get('email') || '');
+    const [code, setCode] = useState('');
+    const [newPassword, setNewPassword] = useState('');
+    const [codeSent, setCodeSent] = useState(false);
+
+    const handleRequest = async (e) => {
+        e.preventDefault();
+        try {
+            const response = await api.post('/auth/password-reset/request', { email });
+            alert(response.data);
+            setCodeSent(true);
+        } catch (error) {
+            alert('Request failed: ' + (error.response?.data || error.message));
+        }
+    };
+
+    const handleConfirm = async (e) => {
+        e.preventDefault();
+        try {
+            const response = await api.post('/auth/password-reset/confirm', { email, code, newPassword });
+            alert(response.data);
+            window.location.href = '/login';
+        } catch (error) {
+            alert('Reset failed: ' + (error.response?.data || error.message));
+        }
+    };
+
+    return (
+        <div style={{ maxWidth: '400px', margin: '3rem auto' }} className="card fade-in">
+            <h2 className="title" style={{ textAlign: 'center' }}>Reset Password</h2>
+            <form onSubmit={codeSent ? handleConfirm : handleRequest}>
+                <div>
+                    <label style={{ display: 'block', marginBottom: '0.5rem', fontWeight: '500' }}>Email</label>
+                    <input type="email" placeholder="name@example.com" value={email} onChange={(e) => setEmail(e.target.value)} required />
+                </div>
+                {codeSent && (
+                    <>
+                        <div>
+                            <label style={{ display: 'block', marginBottom: '0.5rem', fontWeight: '500' }}>Code</label>
+                            <input type="text" placeholder="123456" value={code} onChange={(e) => setCode(e.target.value)} required />
+                        </div>
+                        <div>
+                            <label style={{ display: 'block', marginBottom: '0.5rem', fontWeight: '500' }}>New Password</label>
+                            <input type="password" placeholder="••••••••" value={newPassword} onChange={(e) => setNewPassword(e.target.value)} required />
+                        </div>
+                    </>
+                )}
+                <button type="submit" style={{ width: '100%', marginTop: '1rem' }}>
+                    {codeSent ? 'Set New Password' : 'Send Reset Code'}
+                </button>
+            </form>
+        </div>
+    );
+};
+
+export default ResetPassword;